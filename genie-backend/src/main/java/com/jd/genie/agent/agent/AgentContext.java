@@ -3,6 +3,7 @@ package com.jd.genie.agent.agent;
 import com.jd.genie.agent.dto.File;
 import com.jd.genie.agent.printer.Printer;
 import com.jd.genie.agent.tool.ToolCollection;
+import com.jd.genie.model.dto.AgentCheckpoint;
 import com.jd.genie.model.dto.FileInformation;
 import com.jd.genie.model.req.AgentRequest;
 import lombok.AllArgsConstructor;
@@ -11,6 +12,7 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
 import java.util.List;
 
 @Data
@@ -33,4 +35,52 @@ public class AgentContext {
     String basePrompt;
     Integer agentType;
     List<File> taskProductFiles;
+    /**
+     * 同一会话之前轮次的对话历史，填充提示词中的 {{history_dialogue}}
+     */
+    String historyDialogue;
+    /**
+     * fork 时继承的父上下文文件数，join 时只合并之后新增的文件
+     */
+    int forkedFileCount;
+    /**
+     * 恢复执行时加载的检查点，为空表示从头执行
+     */
+    AgentCheckpoint resumeCheckpoint;
+
+    /**
+     * 为并行子任务创建子上下文
+     * 子上下文拥有独立的 task、streamMessageType、文件列表和工具集合，只由所属子任务写入，
+     * 父上下文在 join 前不会被修改，因此并行执行期间无需加锁
+     */
+    public AgentContext fork() {
+        AgentContext child = AgentContext.builder()
+                .requestId(requestId)
+                .sessionId(sessionId)
+                .query(query)
+                .task(task)
+                .printer(printer)
+                .dateInfo(dateInfo)
+                .productFiles(new ArrayList<>(productFiles))
+                .isStream(isStream)
+                .streamMessageType(streamMessageType)
+                .sopPrompt(sopPrompt)
+                .basePrompt(basePrompt)
+                .historyDialogue(historyDialogue)
+                .agentType(agentType)
+                .taskProductFiles(new ArrayList<>())
+                .forkedFileCount(productFiles.size())
+                .build();
+        child.setToolCollection(toolCollection.fork(child));
+        return child;
+    }
+
+    /**
+     * 合并子上下文的产出文件，需在所有子任务结束后按任务顺序调用
+     */
+    public void join(AgentContext child) {
+        List<File> childFiles = child.getProductFiles();
+        productFiles.addAll(childFiles.subList(child.getForkedFileCount(), childFiles.size()));
+        taskProductFiles.addAll(child.getTaskProductFiles());
+    }
 }
\ No newline at end of file
@@ -1,20 +1,26 @@
 package com.jd.genie.agent.agent;
 
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.jd.genie.agent.dto.Memory;
 import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.dto.tool.McpToolInfo;
 import com.jd.genie.agent.dto.tool.ToolCall;
 import com.jd.genie.agent.enums.AgentState;
 import com.jd.genie.agent.enums.RoleType;
 import com.jd.genie.agent.llm.LLM;
 import com.jd.genie.agent.printer.Printer;
 import com.jd.genie.agent.tool.ToolCollection;
+import com.jd.genie.agent.util.GenieMetrics;
+import com.jd.genie.agent.util.SpringContextHolder;
 import com.jd.genie.agent.util.ThreadUtil;
+import com.jd.genie.config.GenieConfig;
 import lombok.Data;
 import lombok.experimental.Accessors;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -67,12 +73,21 @@ public abstract class BaseAgent {
         }
 
         List<String> results = new ArrayList<>();
+        int executedSteps = 0;
         try {
+            StuckDetector stuckDetector = new StuckDetector(duplicateThreshold);
             while (currentStep < maxSteps && state != AgentState.FINISHED) {
                 currentStep++;
+                executedSteps++;
+                GenieMetrics.AGENT_STEPS.increment(1, getName());
                 log.info("{} {} Executing step {}/{}", context.getRequestId(), getName(), currentStep, maxSteps);
+                int memorySize = memory.size();
                 String stepResult = step();
                 results.add(stepResult);
+                if (state != AgentState.FINISHED && !checkStuck(stuckDetector, memorySize)) {
+                    results.add("Terminated: Repeated steps detected");
+                    break;
+                }
             }
 
             if (currentStep >= maxSteps) {
@@ -83,11 +98,40 @@ public abstract class BaseAgent {
         } catch (Exception e) {
             state = AgentState.ERROR;
             throw e;
+        } finally {
+            GenieMetrics.AGENT_RUN_STEPS.observe(executedSteps, getName());
         }
 
         return results.isEmpty() ? "No steps executed" : results.get(results.size() - 1);
     }
 
+    /**
+     * 检查本步是否陷入重复，重复超过阈值先注入纠正提示，仍重复则终止
+     *
+     * @return 是否继续执行
+     */
+    private boolean checkStuck(StuckDetector stuckDetector, int memorySize) {
+        if (memory.size() <= memorySize) {
+            return true;
+        }
+        List<Message> stepMessages = new ArrayList<>(memory.getMessages().subList(memorySize, memory.size()));
+        StuckDetector.Action action = stuckDetector.record(stepMessages);
+        if (action == StuckDetector.Action.CORRECT) {
+            log.warn("{} {} repeated steps detected at step {}, inject correction", context.getRequestId(), getName(), currentStep);
+            String nextStep = Objects.isNull(nextStepPrompt) ? "" : "\n" + nextStepPrompt;
+            updateMemory(RoleType.USER, StuckDetector.CORRECTION_PROMPT + nextStep, null);
+        } else if (action == StuckDetector.Action.TERMINATE) {
+            int savedSteps = maxSteps - currentStep;
+            long savedChars = stuckDetector.recordSaved(savedSteps);
+            log.warn("{} {} still repeating after correction, terminate at step {}/{}, saved steps: {}, estimated saved chars: {}",
+                    context.getRequestId(), getName(), currentStep, maxSteps, savedSteps, savedChars);
+            currentStep = 0;
+            state = AgentState.IDLE;
+            return false;
+        }
+        return true;
+    }
+
     /**
      * 更新代理记忆
      */
@@ -145,17 +189,90 @@ public abstract class BaseAgent {
     public Map<String, String> executeTools(List<ToolCall> commands) {
         Map<String, String> result = new ConcurrentHashMap<>();
         CountDownLatch taskCount = ThreadUtil.getCountDownLatch(commands.size());
-        for (ToolCall tooCall : commands) {
-            ThreadUtil.execute(() -> {
-                String toolResult = executeTool(tooCall);
-                result.put(tooCall.getId(), toolResult);
-                taskCount.countDown();
-            });
+        List<ToolCall> singleCalls = new ArrayList<>();
+        for (List<ToolCall> batch : groupMcpBatches(commands, singleCalls)) {
+            ThreadUtil.execute(() -> executeMcpBatch(batch, result, taskCount));
+        }
+        for (ToolCall tooCall : singleCalls) {
+            executeToolAsync(tooCall, result, taskCount);
         }
         ThreadUtil.await(taskCount);
         return result;
     }
 
+    private void executeToolAsync(ToolCall toolCall, Map<String, String> result, CountDownLatch taskCount) {
+        ThreadUtil.execute(() -> {
+            String toolResult = executeTool(toolCall);
+            result.put(toolCall.getId(), toolResult);
+            taskCount.countDown();
+        });
+    }
+
+    /**
+     * 开启 MCP 批量调用时，将发往同一 MCP Server 的多个调用分为一组，其余调用放入 singleCalls
+     */
+    private List<List<ToolCall>> groupMcpBatches(List<ToolCall> commands, List<ToolCall> singleCalls) {
+        GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+        if (commands.size() < 2 || !Boolean.TRUE.equals(genieConfig.getMcpBatchCall())) {
+            singleCalls.addAll(commands);
+            return new ArrayList<>();
+        }
+        Map<String, List<ToolCall>> groups = new LinkedHashMap<>();
+        for (ToolCall command : commands) {
+            McpToolInfo toolInfo = command.getFunction() == null || command.getFunction().getName() == null
+                    ? null : availableTools.getMcpTool(command.getFunction().getName());
+            if (Objects.isNull(toolInfo) || availableTools.getTool(toolInfo.getName()) != null) {
+                singleCalls.add(command);
+                continue;
+            }
+            groups.computeIfAbsent(toolInfo.getMcpServerUrl(), k -> new ArrayList<>()).add(command);
+        }
+        List<List<ToolCall>> batches = new ArrayList<>();
+        for (List<ToolCall> group : groups.values()) {
+            if (group.size() > 1) {
+                batches.add(group);
+            } else {
+                singleCalls.addAll(group);
+            }
+        }
+        return batches;
+    }
+
+    /**
+     * 批量执行同一 MCP Server 的调用，批量请求失败时改为逐个并发执行
+     */
+    private void executeMcpBatch(List<ToolCall> batch, Map<String, String> result, CountDownLatch taskCount) {
+        List<Object> toolResults = null;
+        try {
+            ObjectMapper mapper = new ObjectMapper();
+            List<String> names = new ArrayList<>();
+            List<Map<String, Object>> args = new ArrayList<>();
+            for (ToolCall toolCall : batch) {
+                names.add(toolCall.getFunction().getName());
+                args.add(mapper.readValue(toolCall.getFunction().getArguments(), new TypeReference<Map<String, Object>>() {
+                }));
+            }
+            String mcpServerUrl = availableTools.getMcpTool(names.get(0)).getMcpServerUrl();
+            toolResults = availableTools.executeMcpBatch(mcpServerUrl, names, args);
+            log.info("{} execute mcp batch: {} {} result {}", context.getRequestId(), names, args, toolResults);
+        } catch (Exception e) {
+            log.error("{} execute mcp batch failed ", context.getRequestId(), e);
+        }
+        if (Objects.isNull(toolResults)) {
+            for (ToolCall toolCall : batch) {
+                executeToolAsync(toolCall, result, taskCount);
+            }
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            ToolCall toolCall = batch.get(i);
+            Object toolResult = toolResults.get(i);
+            result.put(toolCall.getId(), Objects.nonNull(toolResult)
+                    ? (String) toolResult : "Tool" + toolCall.getFunction().getName() + " Error.");
+            taskCount.countDown();
+        }
+    }
+
 
 
 }
\ No newline at end of file
@@ -7,7 +7,7 @@ import com.jd.genie.agent.enums.AgentState;
 import com.jd.genie.agent.enums.RoleType;
 import com.jd.genie.agent.llm.LLM;
 import com.jd.genie.agent.prompt.PlanningPrompt;
-import com.jd.genie.agent.tool.BaseTool;
+import com.jd.genie.agent.prompt.PromptTemplate;
 import com.jd.genie.agent.tool.common.PlanningTool;
 import com.jd.genie.agent.util.FileUtil;
 import com.jd.genie.agent.util.SpringContextHolder;
@@ -19,7 +19,9 @@ import org.springframework.context.ApplicationContext;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 
@@ -35,8 +37,8 @@ public class PlanningAgent extends ReActAgent {
     private Integer maxObserve;
     private PlanningTool planningTool = new PlanningTool();
     private Boolean isColseUpdate;
-    private String systemPromptSnapshot;
-    private String nextStepPromptSnapshot;
+    private PromptTemplate systemPromptTemplate;
+    private PromptTemplate nextStepPromptTemplate;
     private String planId;
 
     public PlanningAgent(AgentContext context) {
@@ -45,26 +47,19 @@ public class PlanningAgent extends ReActAgent {
         ApplicationContext applicationContext = SpringContextHolder.getApplicationContext();
         GenieConfig genieConfig = applicationContext.getBean(GenieConfig.class);
 
-        StringBuilder toolPrompt = new StringBuilder();
-        for (BaseTool tool : context.getToolCollection().getToolMap().values()) {
-            toolPrompt.append(String.format("工具名：%s 工具描述：%s\n", tool.getName(), tool.getDescription()));
-        }
-
         String promptKey = "default";
         String nextPromptKey = "default";
-        setSystemPrompt(genieConfig.getPlannerSystemPromptMap().getOrDefault(promptKey, PlanningPrompt.SYSTEM_PROMPT)
-                .replace("{{tools}}", toolPrompt.toString())
-                .replace("{{query}}", context.getQuery())
-                .replace("{{date}}", context.getDateInfo())
-                .replace("{{sopPrompt}}", context.getSopPrompt()));
-        setNextStepPrompt(genieConfig.getPlannerNextStepPromptMap().getOrDefault(nextPromptKey, PlanningPrompt.NEXT_STEP_PROMPT)
-                .replace("{{tools}}", toolPrompt.toString())
-                .replace("{{query}}", context.getQuery())
-                .replace("{{date}}", context.getDateInfo())
-                .replace("{{sopPrompt}}", context.getSopPrompt()));
-
-        setSystemPromptSnapshot(getSystemPrompt());
-        setNextStepPromptSnapshot(getNextStepPrompt());
+        // 请求级变量只绑定一次，每轮 think 只渲染 {{files}}
+        Map<String, String> variables = new HashMap<>();
+        variables.put("tools", context.getToolCollection().formatToolPrompt());
+        variables.put("query", context.getQuery());
+        variables.put("date", context.getDateInfo());
+        variables.put("history_dialogue", Objects.isNull(context.getHistoryDialogue()) ? "" : context.getHistoryDialogue());
+        variables.put("sopPrompt", context.getSopPrompt());
+        setSystemPromptTemplate(PromptTemplate.compile(genieConfig.getPlannerSystemPromptMap().getOrDefault(promptKey, PlanningPrompt.SYSTEM_PROMPT)).bind(variables));
+        setNextStepPromptTemplate(PromptTemplate.compile(genieConfig.getPlannerNextStepPromptMap().getOrDefault(nextPromptKey, PlanningPrompt.NEXT_STEP_PROMPT)).bind(variables));
+        setSystemPrompt(getSystemPromptTemplate().toString());
+        setNextStepPrompt(getNextStepPromptTemplate().toString());
 
         setPrinter(context.printer);
         setMaxSteps(genieConfig.getPlannerMaxSteps());
@@ -83,8 +78,8 @@ public class PlanningAgent extends ReActAgent {
         long startTime = System.currentTimeMillis();
         // 获取文件内容
         String filesStr = FileUtil.formatFileInfo(context.getProductFiles(), false);
-        setSystemPrompt(getSystemPromptSnapshot().replace("{{files}}", filesStr));
-        setNextStepPrompt(getNextStepPromptSnapshot().replace("{{files}}", filesStr));
+        setSystemPrompt(systemPromptTemplate.render("files", filesStr));
+        setNextStepPrompt(nextStepPromptTemplate.render("files", filesStr));
         log.info("{} planer fileStr {}", context.getRequestId(), filesStr);
 
         // 关闭了动态更新Plan，直接执行下一个task
@@ -3,13 +3,15 @@ package com.jd.genie.agent.agent;
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.jd.genie.agent.dto.Message;
-import com.jd.genie.agent.tool.BaseTool;
+import com.jd.genie.agent.prompt.PromptTemplate;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -123,16 +125,12 @@ public abstract class ReActAgent extends BaseAgent {
             throw new IllegalStateException("System prompt is not configured");
         }
 
-        StringBuilder toolPrompt = new StringBuilder();
-        for (BaseTool tool : context.getToolCollection().getToolMap().values()) {
-            toolPrompt.append(String.format("工具名：%s 工具描述：%s\n", tool.getName(), tool.getDescription()));
-        }
-
         // 替换占位符
-        return digitalEmployeePrompt
-                .replace("{{task}}", task)
-                .replace("{{ToolsDesc}}", toolPrompt.toString())
-                .replace("{{query}}", context.getQuery());
+        Map<String, String> variables = new HashMap<>();
+        variables.put("task", task);
+        variables.put("ToolsDesc", context.getToolCollection().formatToolPrompt());
+        variables.put("query", context.getQuery());
+        return PromptTemplate.compile(digitalEmployeePrompt).render(variables);
     }
 
 }
\ No newline at end of file
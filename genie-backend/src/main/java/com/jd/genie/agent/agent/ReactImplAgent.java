@@ -7,8 +7,8 @@ import com.jd.genie.agent.dto.tool.ToolChoice;
 import com.jd.genie.agent.enums.AgentState;
 import com.jd.genie.agent.enums.RoleType;
 import com.jd.genie.agent.llm.LLM;
+import com.jd.genie.agent.prompt.PromptTemplate;
 import com.jd.genie.agent.prompt.ToolCallPrompt;
-import com.jd.genie.agent.tool.BaseTool;
 import com.jd.genie.agent.util.FileUtil;
 import com.jd.genie.agent.util.SpringContextHolder;
 import com.jd.genie.config.GenieConfig;
@@ -31,8 +31,8 @@ public class ReactImplAgent extends ReActAgent {
 
     private List<ToolCall> toolCalls;
     private Integer maxObserve;
-    private String systemPromptSnapshot;
-    private String nextStepPromptSnapshot;
+    private PromptTemplate systemPromptTemplate;
+    private PromptTemplate nextStepPromptTemplate;
 
     public ReactImplAgent(AgentContext context) {
         setName("react");
@@ -40,27 +40,20 @@ public class ReactImplAgent extends ReActAgent {
         ApplicationContext applicationContext = SpringContextHolder.getApplicationContext();
         GenieConfig genieConfig = applicationContext.getBean(GenieConfig.class);
 
-        StringBuilder toolPrompt = new StringBuilder();
-        for (BaseTool tool : context.getToolCollection().getToolMap().values()) {
-            toolPrompt.append(String.format("工具名：%s 工具描述：%s\n", tool.getName(), tool.getDescription()));
-        }
-
         String promptKey = "default";
         String nextPromptKey = "default";
 
-        setSystemPrompt(genieConfig.getReactSystemPromptMap().getOrDefault(promptKey, ToolCallPrompt.SYSTEM_PROMPT)
-                .replace("{{tools}}", toolPrompt.toString())
-                .replace("{{query}}", context.getQuery())
-                .replace("{{date}}", context.getDateInfo())
-                .replace("{{basePrompt}}", context.getBasePrompt()));
-        setNextStepPrompt(genieConfig.getReactNextStepPromptMap().getOrDefault(nextPromptKey, ToolCallPrompt.NEXT_STEP_PROMPT)
-                .replace("{{tools}}", toolPrompt.toString())
-                .replace("{{query}}", context.getQuery())
-                .replace("{{date}}", context.getDateInfo())
-                .replace("{{basePrompt}}", context.getBasePrompt()));
-
-        setSystemPromptSnapshot(getSystemPrompt());
-        setNextStepPromptSnapshot(getNextStepPrompt());
+        // 请求级变量只绑定一次，每轮 think 只渲染 {{files}}
+        Map<String, String> variables = new HashMap<>();
+        variables.put("tools", context.getToolCollection().formatToolPrompt());
+        variables.put("query", context.getQuery());
+        variables.put("date", context.getDateInfo());
+        variables.put("history_dialogue", Objects.isNull(context.getHistoryDialogue()) ? "" : context.getHistoryDialogue());
+        variables.put("basePrompt", context.getBasePrompt());
+        setSystemPromptTemplate(PromptTemplate.compile(genieConfig.getReactSystemPromptMap().getOrDefault(promptKey, ToolCallPrompt.SYSTEM_PROMPT)).bind(variables));
+        setNextStepPromptTemplate(PromptTemplate.compile(genieConfig.getReactNextStepPromptMap().getOrDefault(nextPromptKey, ToolCallPrompt.NEXT_STEP_PROMPT)).bind(variables));
+        setSystemPrompt(getSystemPromptTemplate().toString());
+        setNextStepPrompt(getNextStepPromptTemplate().toString());
 
         setPrinter(context.printer);
         setMaxSteps(genieConfig.getReactMaxSteps());
@@ -76,8 +69,8 @@ public class ReactImplAgent extends ReActAgent {
     public boolean think() {
         // 获取文件内容
         String filesStr = FileUtil.formatFileInfo(context.getProductFiles(), true);
-        setSystemPrompt(getSystemPromptSnapshot().replace("{{files}}", filesStr));
-        setNextStepPrompt(getNextStepPromptSnapshot().replace("{{files}}", filesStr));
+        setSystemPrompt(systemPromptTemplate.render("files", filesStr));
+        setNextStepPrompt(nextStepPromptTemplate.render("files", filesStr));
 
         if (!getMemory().getLastMessage().getRole().equals(RoleType.USER)) {
             Message userMsg = Message.userMessage(getNextStepPrompt(), null);
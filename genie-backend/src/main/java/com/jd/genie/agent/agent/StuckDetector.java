@@ -0,0 +1,183 @@
+package com.jd.genie.agent.agent;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.dto.tool.ToolCall;
+import com.jd.genie.agent.enums.RoleType;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 循环/停滞检测
+ * 1、每一步对助手消息的工具调用（工具名 + 规范化参数）和思考内容生成指纹
+ * 2、相同工具调用指纹重复、或思考内容与之前的思考高度相似，视为一次重复
+ * 3、重复次数超过阈值时，先注入纠正提示；纠正后仍重复则终止执行
+ */
+@Slf4j
+public class StuckDetector {
+    public static final String CORRECTION_PROMPT = "检测到你在重复相同的操作或思考，重复执行不会得到新的结果。"
+            + "请不要再用相同的参数调用相同的工具，换一种方法继续完成任务；如果已有信息足以完成任务，请直接总结并结束。";
+
+    /**
+     * 思考内容相似度阈值（字符二元组 Jaccard）
+     */
+    private static final double SIMILARITY_THRESHOLD = 0.9;
+
+    /**
+     * 全局统计：检测到停滞次数、纠正次数、终止次数、节省的步数与估算的消息字符数
+     */
+    private static final AtomicLong STUCK_COUNT = new AtomicLong(0);
+    private static final AtomicLong CORRECTED_COUNT = new AtomicLong(0);
+    private static final AtomicLong TERMINATED_COUNT = new AtomicLong(0);
+    private static final AtomicLong SAVED_STEPS = new AtomicLong(0);
+    private static final AtomicLong SAVED_CHARS = new AtomicLong(0);
+
+    public enum Action {
+        NONE,
+        CORRECT,
+        TERMINATE
+    }
+
+    private final int threshold;
+    private final List<String> toolFingerprints = new ArrayList<>();
+    private final List<Set<String>> thoughtShingles = new ArrayList<>();
+    private boolean corrected = false;
+    private long stepChars = 0;
+    private int steps = 0;
+
+    public StuckDetector(int threshold) {
+        this.threshold = Math.max(threshold, 1);
+    }
+
+    /**
+     * 记录一步新增的消息并判断是否停滞
+     */
+    public Action record(List<Message> stepMessages) {
+        StringBuilder tools = new StringBuilder();
+        StringBuilder thought = new StringBuilder();
+        for (Message message : stepMessages) {
+            stepChars += Objects.isNull(message.getContent()) ? 0 : message.getContent().length();
+            if (message.getRole() != RoleType.ASSISTANT) {
+                continue;
+            }
+            if (Objects.nonNull(message.getToolCalls())) {
+                for (ToolCall toolCall : message.getToolCalls()) {
+                    if (Objects.nonNull(toolCall.getFunction())) {
+                        tools.append(toolCall.getFunction().getName()).append(':')
+                                .append(canonicalArguments(toolCall.getFunction().getArguments())).append(';');
+                    }
+                }
+            }
+            if (Objects.nonNull(message.getContent())) {
+                thought.append(message.getContent());
+            }
+        }
+        steps++;
+
+        int repeats = 0;
+        if (tools.length() > 0) {
+            String fingerprint = tools.toString();
+            for (String previous : toolFingerprints) {
+                if (previous.equals(fingerprint)) {
+                    repeats++;
+                }
+            }
+            toolFingerprints.add(fingerprint);
+        } else if (thought.length() > 0) {
+            // 无工具调用时按思考内容判断（struct_parse 模式下工具调用也在内容中）
+            Set<String> shingles = shingles(thought.toString());
+            for (Set<String> previous : thoughtShingles) {
+                if (similarity(previous, shingles) >= SIMILARITY_THRESHOLD) {
+                    repeats++;
+                }
+            }
+            thoughtShingles.add(shingles);
+        }
+
+        if (repeats < threshold) {
+            return Action.NONE;
+        }
+        STUCK_COUNT.incrementAndGet();
+        if (!corrected) {
+            corrected = true;
+            CORRECTED_COUNT.incrementAndGet();
+            return Action.CORRECT;
+        }
+        TERMINATED_COUNT.incrementAndGet();
+        return Action.TERMINATE;
+    }
+
+    /**
+     * 终止时记录节省的步数和估算的消息字符数（按已执行步骤的平均消息长度估算）
+     */
+    public long recordSaved(int remainingSteps) {
+        long savedChars = steps == 0 ? 0 : stepChars / steps * remainingSteps;
+        SAVED_STEPS.addAndGet(remainingSteps);
+        SAVED_CHARS.addAndGet(savedChars);
+        return savedChars;
+    }
+
+    private static String canonicalArguments(String arguments) {
+        if (Objects.isNull(arguments)) {
+            return "";
+        }
+        try {
+            return JSON.toJSONString(JSON.parse(arguments), SerializerFeature.MapSortField, SerializerFeature.SortField);
+        } catch (Exception e) {
+            return arguments.trim();
+        }
+    }
+
+    private static Set<String> shingles(String text) {
+        String normalized = text.replaceAll("[\\s\\p{Punct}，。！？；：、“”‘’（）]", "").toLowerCase();
+        Set<String> result = new HashSet<>();
+        if (normalized.length() < 2) {
+            result.add(normalized);
+            return result;
+        }
+        for (int i = 0; i < normalized.length() - 1; i++) {
+            result.add(normalized.substring(i, i + 2));
+        }
+        return result;
+    }
+
+    private static double similarity(Set<String> a, Set<String> b) {
+        if (a.isEmpty() && b.isEmpty()) {
+            return 1.0;
+        }
+        int intersection = 0;
+        for (String s : a) {
+            if (b.contains(s)) {
+                intersection++;
+            }
+        }
+        return (double) intersection / (a.size() + b.size() - intersection);
+    }
+
+    public static long getStuckCount() {
+        return STUCK_COUNT.get();
+    }
+
+    public static long getCorrectedCount() {
+        return CORRECTED_COUNT.get();
+    }
+
+    public static long getTerminatedCount() {
+        return TERMINATED_COUNT.get();
+    }
+
+    public static long getSavedSteps() {
+        return SAVED_STEPS.get();
+    }
+
+    public static long getSavedChars() {
+        return SAVED_CHARS.get();
+    }
+}
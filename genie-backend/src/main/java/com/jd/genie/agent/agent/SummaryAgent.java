@@ -4,7 +4,12 @@ import com.jd.genie.agent.dto.File;
 import com.jd.genie.agent.dto.Message;
 import com.jd.genie.agent.dto.TaskSummaryResult;
 import com.jd.genie.agent.llm.LLM;
+import com.jd.genie.agent.llm.TokenCounter;
+import com.jd.genie.agent.prompt.PromptTemplate;
+import com.jd.genie.agent.prompt.SummaryPrompt;
 import com.jd.genie.agent.util.SpringContextHolder;
+import com.jd.genie.agent.util.StringUtil;
+import com.jd.genie.agent.util.ThreadUtil;
 import com.jd.genie.config.GenieConfig;
 import lombok.Data;
 import lombok.EqualsAndHashCode;
@@ -15,8 +20,12 @@ import org.springframework.util.CollectionUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
 import java.util.stream.Collectors;
 
 @Data
@@ -25,6 +34,14 @@ import java.util.stream.Collectors;
 public class SummaryAgent extends BaseAgent {
     private String requestId;
     private Integer messageSizeLimit;
+    private Boolean isStream;
+    /**
+     * 分片摘要阈值、分片大小与分片提示词
+     */
+    private Integer mapReduceThreshold;
+    private Integer mapReduceChunkTokens;
+    private String mapPrompt;
+    private final TokenCounter tokenCounter = new TokenCounter();
     public static final String logFlag = "summaryTaskResult";
 
     public SummaryAgent(AgentContext context) {
@@ -36,6 +53,10 @@ public class SummaryAgent extends BaseAgent {
         setRequestId(context.getRequestId());
         setLlm(new LLM(context.getAgentType() == 3 ? genieConfig.getPlannerModelName() : genieConfig.getReactModelName(), ""));
         setMessageSizeLimit(genieConfig.getMessageSizeLimit());
+        setIsStream(Boolean.TRUE.equals(genieConfig.getSummaryStream()));
+        setMapReduceThreshold(Objects.isNull(genieConfig.getSummaryMapReduceThreshold()) ? 0 : genieConfig.getSummaryMapReduceThreshold());
+        setMapReduceChunkTokens(Math.max(genieConfig.getSummaryMapReduceChunkTokens(), getMessageSizeLimit()));
+        setMapPrompt(StringUtils.isEmpty(genieConfig.getSummaryMapPrompt()) ? SummaryPrompt.MAP_PROMPT : genieConfig.getSummaryMapPrompt());
     }
 
     /**
@@ -71,10 +92,11 @@ public class SummaryAgent extends BaseAgent {
         }
 
         // 替换占位符
-        return systemPrompt
-                .replace("{{taskHistory}}", taskHistory)
-                .replace("{{fileNameDesc}}", createFileInfo())
-                .replace("{{query}}", query);
+        Map<String, String> variables = new HashMap<>();
+        variables.put("taskHistory", taskHistory);
+        variables.put("fileNameDesc", createFileInfo());
+        variables.put("query", query);
+        return PromptTemplate.compile(systemPrompt).render(variables);
     }
 
     // 提取消息创建逻辑
@@ -126,6 +148,111 @@ public class SummaryAgent extends BaseAgent {
     }
 
 
+    /**
+     * 构造任务历史
+     * 历史不超过阈值时按 messageSizeLimit 截断每条消息；超过阈值时按 token 分片并行摘要，保留被截断的内容
+     */
+    private String buildTaskHistory(List<Message> messages, String query) {
+        if (mapReduceThreshold <= 0) {
+            return truncateHistory(messages);
+        }
+        List<String> lines = new ArrayList<>(messages.size());
+        int totalTokens = 0;
+        for (Message message : messages) {
+            String line = String.format("role:%s content:%s\n", message.getRole(), message.getContent());
+            lines.add(line);
+            totalTokens += tokenCounter.countText(line);
+        }
+        if (totalTokens <= mapReduceThreshold) {
+            return truncateHistory(messages);
+        }
+
+        List<String> chunks = splitChunks(lines);
+        log.info("requestId: {} {} map reduce summary, tokens: {}, chunks: {}", requestId, logFlag, totalTokens, chunks.size());
+        String[] partials = new String[chunks.size()];
+        CountDownLatch latch = ThreadUtil.getCountDownLatch(chunks.size());
+        for (int i = 0; i < chunks.size(); i++) {
+            int index = i;
+            ThreadUtil.execute(() -> {
+                try {
+                    partials[index] = summarizeChunk(chunks.get(index), query, index + 1, chunks.size());
+                } catch (Exception e) {
+                    log.error("requestId: {} {} chunk {} summary failed", requestId, logFlag, index, e);
+                } finally {
+                    latch.countDown();
+                }
+            });
+        }
+        ThreadUtil.await(latch);
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < partials.length; i++) {
+            // 分片摘要失败时退化为截断原文
+            String partial = StringUtils.isNotEmpty(partials[i]) ? partials[i] : StringUtils.left(chunks.get(i), messageSizeLimit);
+            sb.append(String.format("### 执行记录 %d/%d\n%s\n", i + 1, partials.length, partial));
+        }
+        return sb.toString();
+    }
+
+    private String truncateHistory(List<Message> messages) {
+        StringBuilder sb = new StringBuilder();
+        for (Message message : messages) {
+            String content = message.getContent();
+            if (content != null && content.length() > getMessageSizeLimit()) {
+                log.info("requestId: {} message truncate,{}", requestId, message);
+                content = content.substring(0, getMessageSizeLimit());
+            }
+            sb.append(String.format("role:%s content:%s\n", message.getRole(), content));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 按 token 上限切分历史，单条超长消息拆到多个分片
+     */
+    private List<String> splitChunks(List<String> lines) {
+        List<String> chunks = new ArrayList<>();
+        StringBuilder chunk = new StringBuilder();
+        int chunkTokens = 0;
+        for (String line : lines) {
+            int lineTokens = tokenCounter.countText(line);
+            if (chunkTokens > 0 && chunkTokens + lineTokens > mapReduceChunkTokens) {
+                chunks.add(chunk.toString());
+                chunk.setLength(0);
+                chunkTokens = 0;
+            }
+            // countText 按字符计数，超长消息按字符切分
+            int start = 0;
+            while (line.length() - start > mapReduceChunkTokens) {
+                chunks.add(line.substring(start, start + mapReduceChunkTokens));
+                start += mapReduceChunkTokens;
+            }
+            chunk.append(line, start, line.length());
+            chunkTokens += line.length() - start;
+        }
+        if (chunk.length() > 0) {
+            chunks.add(chunk.toString());
+        }
+        return chunks;
+    }
+
+    private String summarizeChunk(String chunk, String query, int index, int total) throws Exception {
+        Map<String, String> variables = new HashMap<>();
+        variables.put("index", String.valueOf(index));
+        variables.put("total", String.valueOf(total));
+        variables.put("query", query);
+        variables.put("taskHistory", chunk);
+        String prompt = PromptTemplate.compile(mapPrompt).render(variables);
+        String partial = getLlm().ask(
+                context,
+                Collections.singletonList(Message.userMessage(prompt, null)),
+                Collections.emptyList(),
+                false,
+                0.01).get();
+        log.info("requestId: {} {} chunk {}/{} summary: {}", requestId, logFlag, index, total, partial);
+        return partial;
+    }
+
     // 总结任务
     public TaskSummaryResult summaryTaskResult(List<Message> messages, String query) {
         long startTime = System.currentTimeMillis();
@@ -138,31 +265,29 @@ public class SummaryAgent extends BaseAgent {
         try {
             // 2. 构建系统消息（提取为独立方法）
             log.info("requestId: {} summaryTaskResult: messages:{}", requestId, messages.size());
-            StringBuilder sb = new StringBuilder();
-            for (Message message : messages) {
-                String content = message.getContent();
-                if (content != null && content.length() > getMessageSizeLimit()) {
-                    log.info("requestId: {} message truncate,{}", requestId, message);
-                    content = content.substring(0, getMessageSizeLimit());
-                }
-                sb.append(String.format("role:%s content:%s\n", message.getRole(), content));
-            }
-            String formattedPrompt = formatSystemPrompt(sb.toString(), query);
+            String taskHistory = buildTaskHistory(messages, query);
+            String formattedPrompt = formatSystemPrompt(taskHistory, query);
             Message userMessage = createSystemMessage(formattedPrompt);
 
-            // 3. 调用LLM并处理结果
+            // 3. 调用LLM并处理结果，流式模式下结论增量实时输出
+            SummaryStreamParser streamParser = isStream ? new SummaryStreamParser(context.getPrinter(), StringUtil.getUUID()) : null;
             CompletableFuture<String> summaryFuture = getLlm().ask(
                     context,
                     Collections.singletonList(userMessage),
                     Collections.emptyList(),
-                    false,
-                    0.01);
+                    isStream,
+                    0.01,
+                    streamParser);
 
             // 5. 解析响应
             String llmResponse = summaryFuture.get();
             log.info("requestId: {} summaryTaskResult: {}", requestId, llmResponse);
 
-            return parseLlmResponse(llmResponse);
+            TaskSummaryResult result = parseLlmResponse(llmResponse);
+            if (Objects.nonNull(streamParser)) {
+                result.setMessageId(streamParser.getMessageId());
+            }
+            return result;
         } catch (Exception e) {
             log.error("requestId: {} in summaryTaskResult failed,", requestId, e);
 
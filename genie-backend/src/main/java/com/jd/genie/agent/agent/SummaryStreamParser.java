@@ -0,0 +1,55 @@
+package com.jd.genie.agent.agent;
+
+import com.jd.genie.agent.printer.Printer;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.function.Consumer;
+
+/**
+ * 流式总结解析：$$$ 之前为结论，作为 result 增量输出；之后为交付文件列表，在响应结束后解析
+ * 结尾的 $ 可能是分隔符的一部分，暂不输出
+ */
+class SummaryStreamParser implements Consumer<String> {
+    private static final String SEPARATOR = "$$$";
+    private final Printer printer;
+    private final String messageId;
+    private final StringBuilder pending = new StringBuilder();
+    private boolean summaryFinished = false;
+
+    SummaryStreamParser(Printer printer, String messageId) {
+        this.printer = printer;
+        this.messageId = messageId;
+    }
+
+    @Override
+    public void accept(String delta) {
+        if (summaryFinished || StringUtils.isEmpty(delta)) {
+            return;
+        }
+        pending.append(delta);
+        int sepIndex = pending.indexOf(SEPARATOR);
+        if (sepIndex >= 0) {
+            emit(pending.substring(0, sepIndex));
+            pending.setLength(0);
+            summaryFinished = true;
+            return;
+        }
+        int keep = 0;
+        while (keep < SEPARATOR.length() - 1 && keep < pending.length()
+                && pending.charAt(pending.length() - 1 - keep) == '$') {
+            keep++;
+        }
+        emit(pending.substring(0, pending.length() - keep));
+        pending.delete(0, pending.length() - keep);
+    }
+
+    String getMessageId() {
+        return messageId;
+    }
+
+    private void emit(String text) {
+        if (!text.isEmpty()) {
+            printer.send(messageId, "result", text, false);
+        }
+    }
+}
@@ -1,53 +1,148 @@
 package com.jd.genie.agent.dto;
 
 import com.jd.genie.agent.enums.RoleType;
-import lombok.Data;
 
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Objects;
 
 /**
  * 记忆类 - 管理代理的消息历史
+ * 历史由不可变的共享段链 + 本地可追加尾部组成：
+ * 1、fork 时冻结尾部为新的共享段，子记忆直接引用该段，不复制历史
+ * 2、子记忆只向自己的尾部追加，合并时按 fork 位置截取新增消息
+ * 3、clear / clearToolContext 等改写操作会物化为本地列表，并记录改写次数
  */
-@Data
 public class Memory {
-    private List<Message> messages = new ArrayList<>();
+    /**
+     * 不可变消息段，prev 指向更早的段
+     */
+    private static final class Segment {
+        private final Segment prev;
+        private final Message[] messages;
+        private final int size;
+
+        private Segment(Segment prev, List<Message> messages) {
+            this.prev = prev;
+            this.messages = messages.toArray(new Message[0]);
+            this.size = (prev == null ? 0 : prev.size) + this.messages.length;
+        }
+
+        private Message get(int index) {
+            Segment segment = this;
+            while (index < segment.size - segment.messages.length) {
+                segment = segment.prev;
+            }
+            return segment.messages[index - (segment.size - segment.messages.length)];
+        }
+    }
+
+    private Segment base;
+    private List<Message> tail = new ArrayList<>();
+    private final List<Message> view = new MessagesView();
+
+    /**
+     * fork 时共享的历史段与长度
+     */
+    private Segment forkBase;
+    private int forkSize;
+    /**
+     * 改写次数，改写后不能再按位置截取 fork 后的新增消息
+     */
+    private int rewriteCount;
+
+    /**
+     * 获取消息列表（只读视图）
+     */
+    public List<Message> getMessages() {
+        return view;
+    }
 
     /**
      * 添加消息
      */
     public void addMessage(Message message) {
-        messages.add(message);
+        tail.add(message);
     }
 
     /**
      * 添加多条消息
      */
     public void addMessages(List<Message> newMessages) {
-        messages.addAll(newMessages);
+        tail.addAll(newMessages);
     }
 
     /**
      * 获取最后一条消息
      */
     public Message getLastMessage() {
-        return messages.isEmpty() ? null : messages.get(messages.size() - 1);
+        int size = size();
+        return size == 0 ? null : get(size - 1);
+    }
+
+    /**
+     * 创建共享当前历史的子记忆，不复制消息
+     */
+    public Memory fork() {
+        if (!tail.isEmpty()) {
+            base = new Segment(base, tail);
+            tail = new ArrayList<>();
+        }
+        Memory child = new Memory();
+        child.base = base;
+        child.forkBase = base;
+        child.forkSize = size();
+        return child;
+    }
+
+    /**
+     * 获取 fork 之后新增的消息
+     */
+    public List<Message> getForkedMessages() {
+        int size = size();
+        if (rewriteCount == 0) {
+            List<Message> result = new ArrayList<>(Math.max(size - forkSize, 0));
+            for (int i = forkSize; i < size; i++) {
+                result.add(get(i));
+            }
+            return result;
+        }
+        // 历史被改写过，按引用排除 fork 时已有的消息
+        Map<Message, Boolean> forked = new IdentityHashMap<>();
+        for (int i = 0; i < forkSize; i++) {
+            forked.put(forkBase.get(i), Boolean.TRUE);
+        }
+        List<Message> result = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            Message message = get(i);
+            if (!forked.containsKey(message)) {
+                result.add(message);
+            }
+        }
+        return result;
     }
 
     /**
      * 清空记忆
      */
     public void clear() {
-        messages.clear();
+        base = null;
+        tail = new ArrayList<>();
+        rewriteCount++;
     }
 
     /**
      * 清空工具执行历史
      */
     public void clearToolContext() {
-        Iterator<Message> iterator = messages.iterator();
+        materialize();
+        Iterator<Message> iterator = tail.iterator();
         while (iterator.hasNext()) {
             Message message = iterator.next();
             if (message.getRole() == RoleType.TOOL) {
@@ -60,6 +155,7 @@ public class Memory {
                 iterator.remove();
             }
         }
+        rewriteCount++;
     }
 
     /**
@@ -67,7 +163,7 @@ public class Memory {
      */
     public String getFormatMessage() {
         StringBuilder sb = new StringBuilder();
-        for (Message message : messages) {
+        for (Message message : view) {
             sb.append(String.format("role:%s content:%s\n", message.getRole(), message.getContent()));
         }
         return sb.toString();
@@ -78,18 +174,82 @@ public class Memory {
      * 获取消息数量
      */
     public int size() {
-        return messages.size();
+        return (base == null ? 0 : base.size) + tail.size();
     }
 
     /**
      * 检查是否为空
      */
     public boolean isEmpty() {
-        return messages.isEmpty();
+        return size() == 0;
     }
 
 
     public Message get(int index) {
-        return messages.get(index);
+        int baseSize = base == null ? 0 : base.size;
+        return index < baseSize ? base.get(index) : tail.get(index - baseSize);
+    }
+
+    public int getRewriteCount() {
+        return rewriteCount;
+    }
+
+    /**
+     * 将共享段复制到本地尾部，改写操作前调用
+     */
+    private void materialize() {
+        if (base == null) {
+            return;
+        }
+        List<Message> messages = new ArrayList<>(view);
+        base = null;
+        tail = messages;
+    }
+
+    /**
+     * 消息只读视图，始终反映最新的记忆内容
+     */
+    private class MessagesView extends AbstractList<Message> {
+        @Override
+        public Message get(int index) {
+            return Memory.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return Memory.this.size();
+        }
+
+        @Override
+        public Iterator<Message> iterator() {
+            // 按段顺序遍历，避免逐个定位
+            List<Message[]> chunks = new ArrayList<>();
+            for (Segment segment = base; segment != null; segment = segment.prev) {
+                chunks.add(segment.messages);
+            }
+            Collections.reverse(chunks);
+            chunks.add(tail.toArray(new Message[0]));
+            return new Iterator<Message>() {
+                private int chunk = 0;
+                private int offset = 0;
+
+                @Override
+                public boolean hasNext() {
+                    while (chunk < chunks.size() && offset >= chunks.get(chunk).length) {
+                        chunk++;
+                        offset = 0;
+                    }
+                    return chunk < chunks.size();
+                }
+
+                @Override
+                public Message next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    return chunks.get(chunk)[offset++];
+                }
+            };
+        }
     }
-}
\ No newline at end of file
+}
@@ -6,7 +6,9 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * 计划类
@@ -37,10 +39,24 @@ public class Plan {
      */
     private List<String> notes;
 
+    /**
+     * 步骤依赖列表，第 i 项为第 i 个步骤依赖的步骤下标（0-based）
+     * 规划输入的依赖为执行顺序编号（1-based），创建和更新计划时转换为下标
+     * 为空时按步骤顺序依次执行
+     */
+    private List<List<Integer>> dependencies;
+
     /**
      * 创建新计划
      */
     public static Plan create(String title, List<String> steps) {
+        return create(title, steps, null);
+    }
+
+    /**
+     * 创建带步骤依赖的新计划
+     */
+    public static Plan create(String title, List<String> steps, List<List<Integer>> dependencies) {
         List<String> status = new ArrayList<>();
         List<String> notes = new ArrayList<>();
 
@@ -49,18 +65,27 @@ public class Plan {
             notes.add("");
         }
 
-        return Plan.builder()
+        Plan plan = Plan.builder()
                 .title(title)
                 .steps(steps)
                 .stepStatus(status)
                 .notes(notes)
                 .build();
+        plan.setDependencies(normalizeDependencies(dependencies, steps.size()));
+        return plan;
     }
 
     /**
      * 更新计划
      */
     public void update(String title, List<String> newSteps) {
+        update(title, newSteps, null);
+    }
+
+    /**
+     * 更新计划，未提供依赖且步骤数量变化时，回退为按顺序执行
+     */
+    public void update(String title, List<String> newSteps, List<List<Integer>> newDependencies) {
         if (title != null) {
             this.title = title;
         }
@@ -81,10 +106,99 @@ public class Plan {
                 }
             }
 
+            if (Objects.isNull(newDependencies) && hasDependencies() && dependencies.size() != newSteps.size()) {
+                this.dependencies = null;
+            }
             this.steps = newSteps;
             this.stepStatus = newStatuses;
             this.notes = newNotes;
         }
+
+        if (newDependencies != null) {
+            this.dependencies = normalizeDependencies(newDependencies, steps.size());
+        }
+    }
+
+    /**
+     * 是否显式声明了步骤依赖
+     */
+    public boolean hasDependencies() {
+        return dependencies != null && !dependencies.isEmpty();
+    }
+
+    /**
+     * 获取步骤的前置步骤，未声明依赖时依赖上一个步骤
+     */
+    public List<Integer> getStepDependencies(int stepIndex) {
+        if (!hasDependencies()) {
+            return stepIndex > 0 ? Collections.singletonList(stepIndex - 1) : Collections.emptyList();
+        }
+        return dependencies.get(stepIndex);
+    }
+
+    /**
+     * 步骤是否可以开始执行：自身未完成且所有前置步骤均已完成
+     */
+    public boolean isStepReady(int stepIndex) {
+        String status = stepStatus.get(stepIndex);
+        if (!"not_started".equals(status) && !"in_progress".equals(status)) {
+            return false;
+        }
+        for (Integer dependency : getStepDependencies(stepIndex)) {
+            if (!"completed".equals(stepStatus.get(dependency))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 将执行顺序编号（1-based）转换为步骤下标，校验合法且无环，缺失的项补为空依赖
+     */
+    private static List<List<Integer>> normalizeDependencies(List<List<Integer>> dependencies, int stepNum) {
+        if (dependencies == null || dependencies.isEmpty()) {
+            return null;
+        }
+        List<List<Integer>> result = new ArrayList<>();
+        for (int i = 0; i < stepNum; i++) {
+            List<Integer> stepDependencies = new ArrayList<>();
+            if (i < dependencies.size() && dependencies.get(i) != null) {
+                for (Integer stepNo : dependencies.get(i)) {
+                    if (stepNo == null || stepNo < 1 || stepNo > stepNum || stepNo == i + 1) {
+                        throw new IllegalArgumentException("Invalid dependency " + stepNo + " for step " + (i + 1));
+                    }
+                    int dependency = stepNo - 1;
+                    if (!stepDependencies.contains(dependency)) {
+                        stepDependencies.add(dependency);
+                    }
+                }
+            }
+            result.add(stepDependencies);
+        }
+
+        // 拓扑排序检查环
+        int[] inDegree = new int[stepNum];
+        for (int i = 0; i < stepNum; i++) {
+            inDegree[i] = result.get(i).size();
+        }
+        List<Integer> queue = new ArrayList<>();
+        for (int i = 0; i < stepNum; i++) {
+            if (inDegree[i] == 0) {
+                queue.add(i);
+            }
+        }
+        for (int head = 0; head < queue.size(); head++) {
+            int done = queue.get(head);
+            for (int i = 0; i < stepNum; i++) {
+                if (result.get(i).contains(done) && --inDegree[i] == 0) {
+                    queue.add(i);
+                }
+            }
+        }
+        if (queue.size() != stepNum) {
+            throw new IllegalArgumentException("Plan dependencies contain a cycle");
+        }
+        return result;
     }
 
     /**
@@ -153,6 +267,13 @@ public class Plan {
             String step = steps.get(i);
             String note = notes.get(i);
             sb.append(String.format("%d. [%s] %s\n", i + 1, status, step));
+            if (hasDependencies() && !dependencies.get(i).isEmpty()) {
+                List<Integer> displayDependencies = new ArrayList<>();
+                for (Integer dependency : dependencies.get(i)) {
+                    displayDependencies.add(dependency + 1);
+                }
+                sb.append("   Depends on: ").append(displayDependencies).append("\n");
+            }
 
             if (note != null && !note.isEmpty()) {
                 sb.append("   Notes: ").append(note).append("\n");
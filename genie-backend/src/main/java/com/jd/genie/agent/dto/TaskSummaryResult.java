@@ -14,4 +14,8 @@ import java.util.List;
 public class TaskSummaryResult {
     private String taskSummary;
     private List<File> files;
+    /**
+     * 流式总结的消息ID，最终结果复用该ID
+     */
+    private String messageId;
 }
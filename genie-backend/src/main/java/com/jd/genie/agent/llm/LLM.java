@@ -13,6 +13,7 @@ import com.jd.genie.agent.dto.tool.ToolCall;
 import com.jd.genie.agent.dto.tool.ToolChoice;
 import com.jd.genie.agent.tool.BaseTool;
 import com.jd.genie.agent.tool.ToolCollection;
+import com.jd.genie.agent.util.GenieMetrics;
 import com.jd.genie.agent.util.SpringContextHolder;
 import com.jd.genie.agent.util.StringUtil;
 import com.jd.genie.config.GenieConfig;
@@ -23,15 +24,28 @@ import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import okhttp3.*;
 import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -43,6 +57,21 @@ import java.util.regex.Pattern;
 public class LLM {
     private static final Map<String, LLM> instances = new ConcurrentHashMap<>();
 
+    /**
+     * nonblocking 模式下流式请求共用的 HTTP 客户端（连接池复用，响应体异步推送）
+     */
+    private static final HttpClient STREAM_CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(300))
+            .build();
+
+    /**
+     * nonblocking 模式下流式响应的读取超时（秒）与空闲检查线程，HttpRequest.timeout 只限制等待响应头
+     */
+    private static final long STREAM_READ_TIMEOUT_SECONDS = 300;
+    private static final ScheduledExecutorService STREAM_WATCHDOG = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder().namingPattern("llm-stream-watchdog-%d").daemon(true).build());
+
     private final String model;
     private final String llmErp;
     private final int maxTokens;
@@ -209,6 +238,20 @@ public class LLM {
             List<Message> systemMsgs,
             boolean stream,
             Double temperature
+    ) {
+        return ask(context, messages, systemMsgs, stream, temperature, null);
+    }
+
+    /**
+     * 向 LLM 发送请求并获取响应，流式请求时每个内容增量回调 onDelta
+     */
+    public CompletableFuture<String> ask(
+            AgentContext context,
+            List<Message> messages,
+            List<Message> systemMsgs,
+            boolean stream,
+            Double temperature,
+            Consumer<String> onDelta
     ) {
         try {
             List<Map<String, Object>> formattedMessages;
@@ -249,6 +292,7 @@ public class LLM {
                         // 解析响应
                         log.info("{} call llm response {}", context.getRequestId(), response);
                         JsonNode jsonResponse = objectMapper.readTree(response);
+                        recordUsage(jsonResponse);
                         JsonNode choices = jsonResponse.get("choices");
 
                         if (choices == null || choices.isEmpty() || choices.get(0).get("message").get("content") == null) {
@@ -263,8 +307,9 @@ public class LLM {
             } else {
                 // 处理流式请求
                 params.put("stream", true);
+                putStreamOptions(params);
                 // 调用流式 API
-                return callOpenAIStream(params);
+                return callOpenAIStream(params, onDelta);
             }
         } catch (Exception e) {
             log.error("{} Unexpected error in ask: {}", e.getMessage(), e);
@@ -518,6 +563,7 @@ public class LLM {
                         // 提取其他信息
                         String finishReason = choices.get(0).get("finish_reason").asText();
                         int totalTokens = jsonResponse.get("usage").get("total_tokens").asInt();
+                        recordUsage(jsonResponse);
 
                         long endTime = System.currentTimeMillis();
                         long duration = endTime - startTime;
@@ -533,6 +579,7 @@ public class LLM {
                 if (model.contains("claude")) {
                     return callClaudeFunctionCallStream(context, params);
                 }
+                putStreamOptions(params);
                 // 调用流式 API
                 return callOpenAIFunctionCallStream(context, params);
             }
@@ -557,6 +604,14 @@ public class LLM {
      */
     protected CompletableFuture<String> callOpenAI(Map<String, Object> params, int timeout) {
         CompletableFuture<String> future = new CompletableFuture<>();
+        long startNanos = System.nanoTime();
+        future.whenComplete((response, e) -> {
+            if (Objects.nonNull(e)) {
+                GenieMetrics.LLM_ERRORS.increment(1, model);
+            } else {
+                GenieMetrics.LLM_REQUEST_SECONDS.observe(GenieMetrics.seconds(System.nanoTime() - startNanos), model, "false");
+            }
+        });
 
         try {
             OkHttpClient client = new OkHttpClient.Builder()
@@ -612,210 +667,324 @@ public class LLM {
      */
     public CompletableFuture<ToolCallResponse> callOpenAIFunctionCallStream(AgentContext context, Map<String, Object> params) {
         CompletableFuture<ToolCallResponse> future = new CompletableFuture<>();
-        try {
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .connectTimeout(300, TimeUnit.SECONDS)
-                    .readTimeout(300, TimeUnit.SECONDS)
-                    .writeTimeout(300, TimeUnit.SECONDS)
-                    .build();
-
-            String apiEndpoint = baseUrl + interfaceUrl;
-            RequestBody body = RequestBody.create(
-                    MediaType.parse("application/json"),
-                    objectMapper.writeValueAsString(params)
-            );
-            Request.Builder requestBuilder = new Request.Builder()
-                    .url(apiEndpoint)
-                    .post(body);
-            // 添加适当的认证头
-            requestBuilder.addHeader("Authorization", "Bearer " + apiKey);
-            Request request = requestBuilder.build();
-
-            GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
-            String[] interval = genieConfig.getMessageInterval().getOrDefault("llm", "1,3").split(",");
-            int firstInterval = "struct_parse".equals(functionCallType) ? Math.max(3, Integer.parseInt(interval[0])) : Integer.parseInt(interval[0]);
-            int sendInterval = Integer.parseInt(interval[1]);
-
-            client.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    future.completeExceptionally(e);
-                }
-
-                @Override
-                public void onResponse(Call call, Response response) {
-                    boolean isFirstToken = true;
-                    boolean isContent = true;
-                    try (ResponseBody responseBody = response.body()) {
-                        if (!response.isSuccessful() || responseBody == null) {
-                            log.error("{} ask tool stream response error or empty", context.getRequestId());
-                            future.completeExceptionally(new IOException("Unexpected response code: " + response));
-                            return;
-                        }
-
-                        String messageId = StringUtil.getUUID();
-                        StringBuilder stringBuilder = new StringBuilder();
-                        StringBuilder stringBuilderAll = new StringBuilder();
-                        int index = 1;
-                        Map<Integer, OpenAIToolCall> openToolCallsMap = new HashMap<>();
-                        String line;
-                        BufferedReader reader = new BufferedReader(
-                                new InputStreamReader(responseBody.byteStream())
-                        );
-                        while ((line = reader.readLine()) != null) {
-                            if (line.startsWith("data: ")) {
-                                String data = line.substring(6);
-                                if (data.equals("[DONE]")) {
-                                    break;
+        streamChat(context.getRequestId(), params, future, new StreamHandler() {
+            private final String messageId = StringUtil.getUUID();
+            private final StringBuilder stringBuilder = new StringBuilder();
+            private final StringBuilder stringBuilderAll = new StringBuilder();
+            private final Map<Integer, OpenAIToolCall> openToolCallsMap = new HashMap<>();
+            private boolean isContent = true;
+
+            @Override
+            public void onData(String data) {
+                try {
+                    JsonNode chunk = objectMapper.readTree(data);
+                    if (chunk.has("choices") && !chunk.get("choices").isEmpty()) {
+                        for (JsonNode element : chunk.get("choices")) {
+                            OpenAIChoice choice = objectMapper.convertValue(element, OpenAIChoice.class);
+                            // content
+                            if (Objects.nonNull(choice.delta.content)) {
+                                String content = choice.delta.content;
+                                // log.info("{} recv content data: >>{}<<", context.getRequestId(), content);
+                                if (!isContent) { // 忽略json内容
+                                    stringBuilderAll.append(content);
+                                    continue;
                                 }
-                                if (isFirstToken) {
-                                    isFirstToken = false;
+                                stringBuilder.append(content);
+                                stringBuilderAll.append(content);
+                                if ("struct_parse".equals(functionCallType)) {
+                                    if (stringBuilderAll.toString().contains("```json")) {
+                                        isContent = false;
+                                    }
                                 }
-                                try {
-                                    JsonNode chunk = objectMapper.readTree(data);
-                                    if (chunk.has("choices") && !chunk.get("choices").isEmpty()) {
-                                        for (JsonNode element : chunk.get("choices")) {
-                                            OpenAIChoice choice = objectMapper.convertValue(element, OpenAIChoice.class);
-                                            // content
-                                            if (Objects.nonNull(choice.delta.content)) {
-                                                String content = choice.delta.content;
-                                                // log.info("{} recv content data: >>{}<<", context.getRequestId(), content);
-                                                if (!isContent) { // 忽略json内容
-                                                    stringBuilderAll.append(content);
-                                                    continue;
-                                                }
-                                                stringBuilder.append(content);
-                                                stringBuilderAll.append(content);
-                                                if ("struct_parse".equals(functionCallType)) {
-                                                    if (stringBuilderAll.toString().contains("```json")) {
-                                                        isContent = false;
-                                                    }
-                                                }
-                                                if (index == firstInterval || index % sendInterval == 0) {
-                                                    context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilder.toString(), false);
-                                                    stringBuilder.setLength(0);
-                                                }
-                                                index++;
-                                            }
-                                            // tool call
-                                            if (Objects.nonNull(choice.delta.tool_calls)) {
-                                                List<OpenAIToolCall> openAIToolCalls = choice.delta.tool_calls;
-                                                // log.info("{} recv tool call data: {}", context.getRequestId(), openAIToolCalls);
-                                                for (OpenAIToolCall toolCall : openAIToolCalls) {
-                                                    OpenAIToolCall currentToolCall = openToolCallsMap.get(toolCall.index);
-                                                    if (Objects.isNull(currentToolCall)) {
-                                                        currentToolCall = new OpenAIToolCall();
-                                                    }
-                                                    // [{"index":0,"id":"call_j74R8JMFWTC4rW5wHJ0TtmNU","type":"function","function":{"name":"planning","arguments":""}}]
-                                                    if (Objects.nonNull(toolCall.id)) {
-                                                        currentToolCall.id = toolCall.id;
-                                                    }
-                                                    if (Objects.nonNull(toolCall.type)) {
-                                                        currentToolCall.type = toolCall.type;
-                                                    }
-                                                    if (Objects.nonNull(toolCall.function)) {
-                                                        if (Objects.nonNull(toolCall.function.name)) {
-                                                            currentToolCall.function = toolCall.function;
-                                                        }
-                                                        if (Objects.nonNull(toolCall.function.arguments)) {
-                                                            currentToolCall.function.arguments += toolCall.function.arguments;
-                                                        }
-                                                    }
-                                                    openToolCallsMap.put(toolCall.index, currentToolCall);
-                                                }
-                                            }
+                                sendContentDelta(context, messageId, stringBuilder, functionCallType);
+                            }
+                            // tool call
+                            if (Objects.nonNull(choice.delta.tool_calls)) {
+                                List<OpenAIToolCall> openAIToolCalls = choice.delta.tool_calls;
+                                // log.info("{} recv tool call data: {}", context.getRequestId(), openAIToolCalls);
+                                for (OpenAIToolCall toolCall : openAIToolCalls) {
+                                    OpenAIToolCall currentToolCall = openToolCallsMap.get(toolCall.index);
+                                    if (Objects.isNull(currentToolCall)) {
+                                        currentToolCall = new OpenAIToolCall();
+                                    }
+                                    // [{"index":0,"id":"call_j74R8JMFWTC4rW5wHJ0TtmNU","type":"function","function":{"name":"planning","arguments":""}}]
+                                    if (Objects.nonNull(toolCall.id)) {
+                                        currentToolCall.id = toolCall.id;
+                                    }
+                                    if (Objects.nonNull(toolCall.type)) {
+                                        currentToolCall.type = toolCall.type;
+                                    }
+                                    if (Objects.nonNull(toolCall.function)) {
+                                        if (Objects.nonNull(toolCall.function.name)) {
+                                            currentToolCall.function = toolCall.function;
+                                        }
+                                        if (Objects.nonNull(toolCall.function.arguments)) {
+                                            currentToolCall.function.arguments += toolCall.function.arguments;
                                         }
                                     }
-                                } catch (Exception e) {
-                                    log.error("{} process response error", context.getRequestId(), e);
+                                    openToolCallsMap.put(toolCall.index, currentToolCall);
                                 }
                             }
                         }
+                    }
+                } catch (Exception e) {
+                    log.error("{} process response error", context.getRequestId(), e);
+                }
+            }
 
-                        String contentAll = stringBuilderAll.toString();
-                        if ("struct_parse".equals(functionCallType)) {
-                            int stopPos = stringBuilder.indexOf("```json");
-                            context.getPrinter().send(messageId, context.getStreamMessageType(),
-                                    stringBuilder.substring(0, stopPos >= 0 ? stopPos : stringBuilder.length()),
-                                    false);
-                            stopPos = stringBuilderAll.indexOf("```json");
-                            contentAll = stringBuilderAll.substring(0, stopPos >= 0 ? stopPos : stringBuilderAll.length());
-                            if (!contentAll.isEmpty()) {
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), contentAll, true);
-                            }
-                        } else { // function_call
-                            if (!contentAll.isEmpty()) {
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilder.toString(), false);
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilderAll.toString(), true);
+            @Override
+            public void onComplete() {
+                String contentAll = stringBuilderAll.toString();
+                if ("struct_parse".equals(functionCallType)) {
+                    int stopPos = stringBuilder.indexOf("```json");
+                    context.getPrinter().send(messageId, context.getStreamMessageType(),
+                            stringBuilder.substring(0, stopPos >= 0 ? stopPos : stringBuilder.length()),
+                            false);
+                    stopPos = stringBuilderAll.indexOf("```json");
+                    contentAll = stringBuilderAll.substring(0, stopPos >= 0 ? stopPos : stringBuilderAll.length());
+                    if (!contentAll.isEmpty()) {
+                        context.getPrinter().send(messageId, context.getStreamMessageType(), contentAll, true);
+                    }
+                } else { // function_call
+                    if (!contentAll.isEmpty()) {
+                        context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilder.toString(), false);
+                        context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilderAll.toString(), true);
+                    }
+                }
+
+                List<ToolCall> toolCalls = new ArrayList<>();
+                if ("struct_parse".equals(functionCallType)) {
+                    // 匹配方式: 直接匹配 ```json ... ``` 代码块
+                    String pattern = "```json\\s*([\\s\\S]*?)\\s*```";
+                    List<String> matches = findMatches(stringBuilderAll.toString(), pattern);
+                    if (!matches.isEmpty()) {
+                        for (String match : matches) {
+                            ToolCall oneToolCall = parseToolCall(context, match);
+                            if (Objects.nonNull(oneToolCall)) {
+                                toolCalls.add(oneToolCall);
                             }
                         }
+                    }
+                } else { // function call
+                    for (OpenAIToolCall toolCall : openToolCallsMap.values()) {
+                        toolCalls.add(ToolCall.builder()
+                                .id(toolCall.id)
+                                .type(toolCall.type)
+                                .function(ToolCall.Function.builder()
+                                        .name(toolCall.function.name)
+                                        .arguments(toolCall.function.arguments)
+                                        .build())
+                                .build());
+                    }
+                }
 
-                        List<ToolCall> toolCalls = new ArrayList<>();
+                log.info("{} call llm stream response {} {}", context.getRequestId(), stringBuilderAll, JSON.toJSONString(toolCalls));
+
+                ToolCallResponse fullResponse = ToolCallResponse.builder()
+                        .toolCalls(toolCalls)
+                        .content(contentAll)
+                        .build();
+                future.complete(fullResponse);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 调用 OpenAI 流式 API（抽象方法，实际实现需要在子类中提供）
+     */
+    public CompletableFuture<ToolCallResponse> callClaudeFunctionCallStream(AgentContext context, Map<String, Object> params) {
+        CompletableFuture<ToolCallResponse> future = new CompletableFuture<>();
+        streamChat(context.getRequestId(), params, future, new StreamHandler() {
+            private final String messageId = StringUtil.getUUID();
+            private final StringBuilder stringBuilder = new StringBuilder();
+            private final StringBuilder stringBuilderAll = new StringBuilder();
+            private final StringBuilder stringBuilderTool = new StringBuilder();
+            private final Map<Integer, OpenAIToolCall> openToolCallsMap = new HashMap<>();
+            private boolean isContent = true;
+            private String id = "";
+
+            @Override
+            public void onData(String data) {
+                try {
+                    // log.info("{} recv data: >>{}<<", context.getRequestId(), data);
+                    JsonNode chunk = objectMapper.readTree(data);
+                    ClaudeResponse claudeResponse = objectMapper.convertValue(chunk, ClaudeResponse.class);
+
+                    if (Objects.isNull(claudeResponse.delta)) {
+                        return;
+                    }
+
+                    // content
+                    if ("text_delta".equals(claudeResponse.delta.type)) {
+                        String content = claudeResponse.delta.text;
+
+                        if (!isContent) { // 忽略json内容
+                            stringBuilderAll.append(content);
+                            return;
+                        }
+                        // log.info("{} recv content data: >>{}<<", context.getRequestId(), content);
+                        stringBuilder.append(content);
+                        stringBuilderAll.append(content);
                         if ("struct_parse".equals(functionCallType)) {
-                            // 匹配方式: 直接匹配 ```json ... ``` 代码块
-                            String pattern = "```json\\s*([\\s\\S]*?)\\s*```";
-                            List<String> matches = findMatches(stringBuilderAll.toString(), pattern);
-                            if (!matches.isEmpty()) {
-                                for (String match : matches) {
-                                    ToolCall oneToolCall = parseToolCall(context, match);
-                                    if (Objects.nonNull(oneToolCall)) {
-                                        toolCalls.add(oneToolCall);
-                                    }
-                                }
-                            }
-                        } else { // function call
-                            for (OpenAIToolCall toolCall : openToolCallsMap.values()) {
-                                toolCalls.add(ToolCall.builder()
-                                        .id(toolCall.id)
-                                        .type(toolCall.type)
-                                        .function(ToolCall.Function.builder()
-                                                .name(toolCall.function.name)
-                                                .arguments(toolCall.function.arguments)
-                                                .build())
-                                        .build());
+                            if (stringBuilderAll.toString().contains("```json")) {
+                                isContent = false;
                             }
                         }
+                        sendContentDelta(context, messageId, stringBuilder, functionCallType);
+                    }
+                    // tool call
+                    if ("input_json_delta".equals(claudeResponse.delta.type)) {
+                        String content = claudeResponse.delta.partial_json;
+                        // log.info("{} recv tool call data: >>{}<<", context.getRequestId(), content);
+                        stringBuilderTool.append(content);
+                    }
+                    // id
+                    id = claudeResponse.id;
 
-                        log.info("{} call llm stream response {} {}", context.getRequestId(), stringBuilderAll, JSON.toJSONString(toolCalls));
-
-                        ToolCallResponse fullResponse = ToolCallResponse.builder()
-                                .toolCalls(toolCalls)
-                                .content(contentAll)
-                                .build();
-                        future.complete(fullResponse);
+                } catch (Exception e) {
+                    log.error("{} process response error", context.getRequestId(), e);
+                }
+            }
 
-                    } catch (Exception e) {
-                        log.error("{} ask tool stream error", context.getRequestId(), e);
-                        future.completeExceptionally(e);
+            @Override
+            public void onComplete() throws Exception {
+                String contentAll = stringBuilderAll.toString();
+                if ("struct_parse".equals(functionCallType)) {
+                    int stopPos = stringBuilder.indexOf("```json");
+                    context.getPrinter().send(messageId, context.getStreamMessageType(),
+                            stringBuilder.substring(0, stopPos >= 0 ? stopPos : stringBuilder.length()),
+                            false);
+                    stopPos = stringBuilderAll.indexOf("```json");
+                    contentAll = stringBuilderAll.substring(0, stopPos >= 0 ? stopPos : stringBuilderAll.length());
+                    if (!contentAll.isEmpty()) {
+                        context.getPrinter().send(messageId, context.getStreamMessageType(), contentAll, true);
+                    }
+                } else { // function call
+                    if (!contentAll.isEmpty()) {
+                        context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilder.toString(), false);
+                        context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilderAll.toString(), true);
+                    }
+                }
+                List<ToolCall> toolCalls = new ArrayList<>();
+                if ("struct_parse".equals(functionCallType)) {
+                    // 匹配方式: 直接匹配 ```json ... ``` 代码块
+                    String pattern = "```json\\s*([\\s\\S]*?)\\s*```";
+                    List<String> matches = findMatches(stringBuilderAll.toString(), pattern);
+                    if (!matches.isEmpty()) {
+                        for (String match : matches) {
+                            ToolCall oneToolCall = parseToolCall(context, match);
+                            if (Objects.nonNull(oneToolCall)) {
+                                toolCalls.add(oneToolCall);
+                            }
+                        }
+                    }
+                } else { // function_call
+                    JsonNode arguments = objectMapper.readTree(stringBuilderTool.toString());
+                    if (!stringBuilderTool.toString().isEmpty() && arguments.hasNonNull("function_name")) {
+                        OpenAIToolCall currentToolCall = new OpenAIToolCall();
+                        currentToolCall.id = id;
+                        currentToolCall.type = "function";
+                        currentToolCall.function = new OpenAIFunction();
+                        currentToolCall.function.name = arguments.get("function_name").asText();
+                        currentToolCall.function.arguments = stringBuilderTool.toString();
+                        openToolCallsMap.put(0, currentToolCall); // claude only call one function
+                        for (OpenAIToolCall toolCall : openToolCallsMap.values()) {
+                            toolCalls.add(ToolCall.builder()
+                                    .id(toolCall.id)
+                                    .type(toolCall.type)
+                                    .function(ToolCall.Function.builder()
+                                            .name(toolCall.function.name)
+                                            .arguments(toolCall.function.arguments)
+                                            .build())
+                                    .build());
+                        }
                     }
                 }
-            });
 
-        } catch (Exception e) {
-            log.error("{} ask tool stream error", context.getRequestId(), e);
-            future.completeExceptionally(e);
-        }
+                log.info("{} call llm stream response {} tool calls {}", context.getRequestId(), stringBuilderAll, JSON.toJSONString(toolCalls));
 
+                future.complete(ToolCallResponse.builder()
+                        .content(contentAll)
+                        .toolCalls(toolCalls)
+                        .build());
+            }
+        });
         return future;
     }
 
     /**
      * 调用 OpenAI 流式 API（抽象方法，实际实现需要在子类中提供）
      */
-    public CompletableFuture<ToolCallResponse> callClaudeFunctionCallStream(AgentContext context, Map<String, Object> params) {
-        CompletableFuture<ToolCallResponse> future = new CompletableFuture<>();
+    protected CompletableFuture<String> callOpenAIStream(Map<String, Object> params, Consumer<String> onDelta) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        StringBuilder collectedMessages = new StringBuilder();
+        streamChat(null, params, future, new StreamHandler() {
+            @Override
+            public void onData(String data) {
+                try {
+                    JsonNode chunk = objectMapper.readTree(data);
+                    if (chunk.has("choices") && !chunk.get("choices").isEmpty()) {
+                        JsonNode choice = chunk.get("choices").get(0);
+                        if (choice.has("delta") && choice.get("delta").has("content")) {
+                            String content = choice.get("delta").get("content").asText();
+                            collectedMessages.append(content);
+                            if (Objects.nonNull(onDelta)) {
+                                onDelta.accept(content);
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    // 忽略非 JSON 数据
+                }
+            }
+
+            @Override
+            public void onComplete() {
+                String fullResponse = collectedMessages.toString().trim();
+                if (fullResponse.isEmpty()) {
+                    future.completeExceptionally(
+                            new IllegalArgumentException("Empty response from streaming LLM")
+                    );
+                } else {
+                    future.complete(fullResponse);
+                }
+            }
+        });
+        return future;
+    }
+
+    /**
+     * 流式响应处理：逐条处理 data 内容，流结束后汇总结果并完成 future
+     */
+    private interface StreamHandler {
+        void onData(String data);
+
+        void onComplete() throws Exception;
+    }
+
+    /**
+     * 发起流式请求并逐行解析 SSE 响应
+     * blocking 模式：每个流在 OkHttp 回调线程上阻塞读取响应体
+     * nonblocking 模式：共享的 HTTP 客户端异步推送响应行，逐行请求下一行（处理慢时暂停读取上游），等待 token 期间不占用线程
+     */
+    private void streamChat(String requestId, Map<String, Object> params, CompletableFuture<?> future, StreamHandler streamHandler) {
+        StreamHandler handler = meter(future, streamHandler);
         try {
+            String apiEndpoint = baseUrl + interfaceUrl;
+            String payload = objectMapper.writeValueAsString(params);
+            GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+            if ("nonblocking".equals(genieConfig.getLlmStreamClient())) {
+                streamChatAsync(requestId, apiEndpoint, payload, future, handler);
+                return;
+            }
+
             OkHttpClient client = new OkHttpClient.Builder()
                     .connectTimeout(300, TimeUnit.SECONDS)
                     .readTimeout(300, TimeUnit.SECONDS)
                     .writeTimeout(300, TimeUnit.SECONDS)
                     .build();
-
-            String apiEndpoint = baseUrl + interfaceUrl;
-            RequestBody body = RequestBody.create(
-                    MediaType.parse("application/json"),
-                    objectMapper.writeValueAsString(params)
-            );
+            RequestBody body = RequestBody.create(MediaType.parse("application/json"), payload);
             Request.Builder requestBuilder = new Request.Builder()
                     .url(apiEndpoint)
                     .post(body);
@@ -823,11 +992,6 @@ public class LLM {
             requestBuilder.addHeader("Authorization", "Bearer " + apiKey);
             Request request = requestBuilder.build();
 
-            GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
-            String[] interval = genieConfig.getMessageInterval().getOrDefault("llm", "1,3").split(",");
-            int firstInterval = "struct_parse".equals(functionCallType) ? Math.max(3, Integer.parseInt(interval[0])) : Integer.parseInt(interval[0]);
-            int sendInterval = Integer.parseInt(interval[1]);
-
             client.newCall(request).enqueue(new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
@@ -836,261 +1000,268 @@ public class LLM {
 
                 @Override
                 public void onResponse(Call call, Response response) {
-                    boolean isFirstToken = true;
-                    boolean isContent = true;
                     try (ResponseBody responseBody = response.body()) {
                         if (!response.isSuccessful() || responseBody == null) {
-                            log.error("{} ask tool stream response error or empty", context.getRequestId());
+                            log.error("{} ask tool stream response error or empty", requestId);
                             future.completeExceptionally(new IOException("Unexpected response code: " + response));
                             return;
                         }
-
-                        String messageId = StringUtil.getUUID();
-                        StringBuilder stringBuilder = new StringBuilder();
-                        StringBuilder stringBuilderAll = new StringBuilder();
-                        StringBuilder stringBuilderTool = new StringBuilder();
-
-                        Integer index = 1;
-                        Map<Integer, OpenAIToolCall> openToolCallsMap = new HashMap<>();
                         String line;
                         BufferedReader reader = new BufferedReader(
                                 new InputStreamReader(responseBody.byteStream())
                         );
-                        String id = "";
                         while ((line = reader.readLine()) != null) {
                             if (line.startsWith("data: ")) {
                                 String data = line.substring(6);
                                 if (data.equals("[DONE]")) {
                                     break;
                                 }
-
-                                try {
-                                    // log.info("{} recv data: >>{}<<", context.getRequestId(), data);
-                                    JsonNode chunk = objectMapper.readTree(data);
-                                    ClaudeResponse claudeResponse = objectMapper.convertValue(chunk, ClaudeResponse.class);
-
-                                    if (Objects.isNull(claudeResponse.delta)) {
-                                        continue;
-                                    }
-
-                                    if (isFirstToken) {
-                                        isFirstToken = false;
-                                    }
-
-                                    // content
-                                    if ("text_delta".equals(claudeResponse.delta.type)) {
-                                        String content = claudeResponse.delta.text;
-
-                                        if (!isContent) { // 忽略json内容
-                                            stringBuilderAll.append(content);
-                                            continue;
-                                        }
-                                        // log.info("{} recv content data: >>{}<<", context.getRequestId(), content);
-                                        stringBuilder.append(content);
-                                        stringBuilderAll.append(content);
-                                        if ("struct_parse".equals(functionCallType)) {
-                                            if (stringBuilderAll.toString().contains("```json")) {
-                                                isContent = false;
-                                            }
-                                        }
-                                        if (index == firstInterval || index % sendInterval == 0) {
-                                            context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilder.toString(), false);
-                                            stringBuilder.setLength(0);
-                                        }
-                                        index++;
-                                    }
-                                    // tool call
-                                    if ("input_json_delta".equals(claudeResponse.delta.type)) {
-                                        String content = claudeResponse.delta.partial_json;
-                                        // log.info("{} recv tool call data: >>{}<<", context.getRequestId(), content);
-                                        stringBuilderTool.append(content);
-                                    }
-                                    // id
-                                    id = claudeResponse.id;
-
-                                } catch (Exception e) {
-                                    log.error("{} process response error", context.getRequestId(), e);
-                                }
-                            }
-                        }
-
-                        String contentAll = stringBuilderAll.toString();
-                        if ("struct_parse".equals(functionCallType)) {
-                            int stopPos = stringBuilder.indexOf("```json");
-                            context.getPrinter().send(messageId, context.getStreamMessageType(),
-                                    stringBuilder.substring(0, stopPos >= 0 ? stopPos : stringBuilder.length()),
-                                    false);
-                            stopPos = stringBuilderAll.indexOf("```json");
-                            contentAll = stringBuilderAll.substring(0, stopPos >= 0 ? stopPos : stringBuilderAll.length());
-                            if (!contentAll.isEmpty()) {
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), contentAll, true);
-                            }
-                        } else { // function call
-                            if (!contentAll.isEmpty()) {
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilder.toString(), false);
-                                context.getPrinter().send(messageId, context.getStreamMessageType(), stringBuilderAll.toString(), true);
-                            }
-                        }
-                        List<ToolCall> toolCalls = new ArrayList<>();
-                        if ("struct_parse".equals(functionCallType)) {
-                            // 匹配方式: 直接匹配 ```json ... ``` 代码块
-                            String pattern = "```json\\s*([\\s\\S]*?)\\s*```";
-                            List<String> matches = findMatches(stringBuilderAll.toString(), pattern);
-                            if (!matches.isEmpty()) {
-                                for (String match : matches) {
-                                    ToolCall oneToolCall = parseToolCall(context, match);
-                                    if (Objects.nonNull(oneToolCall)) {
-                                        toolCalls.add(oneToolCall);
-                                    }
-                                }
-                            }
-                        } else { // function_call
-                            JsonNode arguments = objectMapper.readTree(stringBuilderTool.toString());
-                            if (!stringBuilderTool.toString().isEmpty() && arguments.hasNonNull("function_name")) {
-                                OpenAIToolCall currentToolCall = new OpenAIToolCall();
-                                currentToolCall.id = id;
-                                currentToolCall.type = "function";
-                                currentToolCall.function = new OpenAIFunction();
-                                currentToolCall.function.name = arguments.get("function_name").asText();
-                                currentToolCall.function.arguments = stringBuilderTool.toString();
-                                openToolCallsMap.put(0, currentToolCall); // claude only call one function
-                                for (OpenAIToolCall toolCall : openToolCallsMap.values()) {
-                                    toolCalls.add(ToolCall.builder()
-                                            .id(toolCall.id)
-                                            .type(toolCall.type)
-                                            .function(ToolCall.Function.builder()
-                                                    .name(toolCall.function.name)
-                                                    .arguments(toolCall.function.arguments)
-                                                    .build())
-                                            .build());
-                                }
+                                handler.onData(data);
                             }
                         }
-
-                        log.info("{} call llm stream response {} tool calls {}", context.getRequestId(), stringBuilderAll, JSON.toJSONString(toolCalls));
-
-                        future.complete(ToolCallResponse.builder()
-                                .content(contentAll)
-                                .toolCalls(toolCalls)
-                                .build());
-
+                        handler.onComplete();
                     } catch (Exception e) {
-                        log.error("{} ask tool stream error", context.getRequestId(), e);
+                        log.error("{} ask tool stream error", requestId, e);
                         future.completeExceptionally(e);
                     }
                 }
             });
-
         } catch (Exception e) {
-            log.error("{} ask tool stream error", context.getRequestId(), e);
+            log.error("{} ask tool stream error", requestId, e);
             future.completeExceptionally(e);
         }
-
-        return future;
     }
 
     /**
-     * 调用 OpenAI 流式 API（抽象方法，实际实现需要在子类中提供）
+     * 配置开启时请求最后一个块返回 usage，用于统计输出 token 数
+     * 默认不发送：不支持 stream_options 的 OpenAI 兼容服务会拒绝该参数
      */
-    protected CompletableFuture<String> callOpenAIStream(Map<String, Object> params) {
-        // 这里是一个简化的流式请求实现示例
-        CompletableFuture<String> future = new CompletableFuture<>();
-        StringBuilder collectedMessages = new StringBuilder();
+    private void putStreamOptions(Map<String, Object> params) {
+        GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+        if (Boolean.TRUE.equals(genieConfig.getLlmStreamIncludeUsage())) {
+            params.put("stream_options", Collections.singletonMap("include_usage", true));
+        }
+    }
 
-        try {
-            OkHttpClient client = new OkHttpClient.Builder()
-                    .connectTimeout(300, TimeUnit.SECONDS)
-                    .readTimeout(300, TimeUnit.SECONDS)
-                    .writeTimeout(300, TimeUnit.SECONDS)
-                    .build();
+    /**
+     * 流式请求指标：首个增量耗时、总耗时、增量块数和块速度
+     * 输出 token 数只取响应中的 usage（开启 llm_stream_include_usage 后最后一个块携带），不用块数近似
+     */
+    private StreamHandler meter(CompletableFuture<?> future, StreamHandler handler) {
+        long startNanos = System.nanoTime();
+        future.whenComplete((response, e) -> {
+            if (Objects.nonNull(e)) {
+                GenieMetrics.LLM_ERRORS.increment(1, model);
+            }
+        });
+        return new StreamHandler() {
+            private long firstNanos = 0;
+            private long chunks = 0;
+            private long completionTokens = -1;
+
+            @Override
+            public void onData(String data) {
+                if (chunks++ == 0) {
+                    firstNanos = System.nanoTime();
+                    GenieMetrics.LLM_FIRST_TOKEN_SECONDS.observe(GenieMetrics.seconds(firstNanos - startNanos), model);
+                }
+                if (data.contains("\"completion_tokens\"")) {
+                    try {
+                        JsonNode usage = objectMapper.readTree(data).get("usage");
+                        if (Objects.nonNull(usage) && usage.has("completion_tokens")) {
+                            completionTokens = usage.get("completion_tokens").asLong();
+                        }
+                    } catch (Exception e) {
+                        log.warn("parse stream usage error: {}", e.getMessage());
+                    }
+                }
+                handler.onData(data);
+            }
 
-            String apiEndpoint = baseUrl + interfaceUrl;
+            @Override
+            public void onComplete() throws Exception {
+                long endNanos = System.nanoTime();
+                GenieMetrics.LLM_REQUEST_SECONDS.observe(GenieMetrics.seconds(endNanos - startNanos), model, "true");
+                GenieMetrics.LLM_STREAM_CHUNKS.increment(chunks, model);
+                if (chunks > 1 && endNanos > firstNanos) {
+                    double seconds = GenieMetrics.seconds(endNanos - firstNanos);
+                    GenieMetrics.LLM_STREAM_CHUNKS_PER_SECOND.observe((chunks - 1) / seconds, model);
+                    if (completionTokens > 0) {
+                        GenieMetrics.LLM_TOKENS_PER_SECOND.observe(completionTokens / seconds, model);
+                    }
+                }
+                if (completionTokens >= 0) {
+                    GenieMetrics.LLM_OUTPUT_TOKENS.increment(completionTokens, model);
+                }
+                handler.onComplete();
+            }
+        };
+    }
 
-            RequestBody body = RequestBody.create(
-                    MediaType.parse("application/json"),
-                    objectMapper.writeValueAsString(params)
-            );
+    /**
+     * 非流式响应按 usage 记录输出 token 数
+     */
+    private void recordUsage(JsonNode jsonResponse) {
+        JsonNode usage = jsonResponse.get("usage");
+        if (Objects.nonNull(usage) && usage.has("completion_tokens")) {
+            GenieMetrics.LLM_OUTPUT_TOKENS.increment(usage.get("completion_tokens").asLong(), model);
+        }
+    }
 
-            Request.Builder requestBuilder = new Request.Builder()
-                    .url(apiEndpoint)
-                    .post(body);
+    private void streamChatAsync(String requestId, String apiEndpoint, String payload, CompletableFuture<?> future, StreamHandler handler) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(apiEndpoint))
+                .timeout(Duration.ofSeconds(300))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + apiKey)
+                .POST(HttpRequest.BodyPublishers.ofString(payload))
+                .build();
+        StreamLineSubscriber subscriber = new StreamLineSubscriber(requestId, future, handler);
+        STREAM_CLIENT.sendAsync(request, responseInfo -> {
+            if (responseInfo.statusCode() != 200) {
+                return HttpResponse.BodySubscribers.replacing(null);
+            }
+            return HttpResponse.BodySubscribers.fromLineSubscriber(subscriber);
+        }).whenComplete((response, e) -> {
+            if (Objects.nonNull(e)) {
+                log.error("{} ask tool stream error", requestId, e);
+                future.completeExceptionally(e);
+            } else if (response.statusCode() != 200) {
+                log.error("{} ask tool stream response error or empty", requestId);
+                future.completeExceptionally(new IOException("Unexpected response code: " + response.statusCode()));
+            }
+        });
+    }
 
-            // 添加适当的认证头
-            requestBuilder.addHeader("Authorization", "Bearer " + apiKey);
+    /**
+     * 逐行解析 SSE 响应，每处理完一行再请求下一行
+     * 响应开始后超过读取超时没有新行（上游停滞）时取消订阅并以超时失败，与 OkHttp 的 readTimeout 一致
+     */
+    private static class StreamLineSubscriber implements Flow.Subscriber<String> {
+        private final String requestId;
+        private final CompletableFuture<?> future;
+        private final StreamHandler handler;
+        private final long readTimeoutNanos = TimeUnit.SECONDS.toNanos(STREAM_READ_TIMEOUT_SECONDS);
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private volatile Flow.Subscription subscription;
+        private volatile long lastReadNanos;
+        private volatile ScheduledFuture<?> watchdog;
+
+        private StreamLineSubscriber(String requestId, CompletableFuture<?> future, StreamHandler handler) {
+            this.requestId = requestId;
+            this.future = future;
+            this.handler = handler;
+        }
 
-            Request request = requestBuilder.build();
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            this.lastReadNanos = System.nanoTime();
+            armWatchdog(readTimeoutNanos);
+            subscription.request(1);
+        }
 
-            client.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(Call call, IOException e) {
-                    future.completeExceptionally(e);
+        @Override
+        public void onNext(String line) {
+            if (done.get()) {
+                return;
+            }
+            lastReadNanos = System.nanoTime();
+            if (line.startsWith("data: ")) {
+                String data = line.substring(6);
+                if (data.equals("[DONE]")) {
+                    finish();
+                    subscription.cancel();
+                    return;
                 }
+                handler.onData(data);
+            }
+            subscription.request(1);
+        }
 
-                @Override
-                public void onResponse(Call call, Response response) throws IOException {
-                    try (ResponseBody responseBody = response.body()) {
-                        if (!response.isSuccessful()) {
-                            future.completeExceptionally(
-                                    new IOException("Unexpected response code: " + response)
-                            );
-                            return;
-                        }
+        @Override
+        public void onError(Throwable throwable) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            cancelWatchdog();
+            log.error("{} ask tool stream error", requestId, throwable);
+            future.completeExceptionally(throwable);
+        }
 
-                        if (responseBody != null) {
-                            String line;
+        @Override
+        public void onComplete() {
+            finish();
+        }
 
-                            BufferedReader reader = new BufferedReader(
-                                    new InputStreamReader(responseBody.byteStream())
-                            );
+        private void finish() {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            cancelWatchdog();
+            try {
+                handler.onComplete();
+            } catch (Exception e) {
+                log.error("{} ask tool stream error", requestId, e);
+                future.completeExceptionally(e);
+            }
+        }
 
-                            while ((line = reader.readLine()) != null) {
-                                if (line.startsWith("data: ")) {
-                                    String data = line.substring(6);
-                                    if (data.equals("[DONE]")) {
-                                        break;
-                                    }
+        /**
+         * 到期时检查距上一行的时间，未超时则按剩余时间重新计时，每个流只有一个待执行的检查
+         */
+        private void armWatchdog(long delayNanos) {
+            watchdog = STREAM_WATCHDOG.schedule(this::checkIdle, delayNanos, TimeUnit.NANOSECONDS);
+        }
 
-                                    try {
-                                        JsonNode chunk = objectMapper.readTree(data);
-                                        if (chunk.has("choices") && !chunk.get("choices").isEmpty()) {
-                                            JsonNode choice = chunk.get("choices").get(0);
-                                            if (choice.has("delta") && choice.get("delta").has("content")) {
-                                                String content = choice.get("delta").get("content").asText();
-                                                collectedMessages.append(content);
-                                                log.info("recv data: {}", content);
-                                            }
-                                        }
-                                    } catch (Exception e) {
-                                        // 忽略非 JSON 数据
-                                    }
-                                }
-                            }
+        private void checkIdle() {
+            if (done.get()) {
+                return;
+            }
+            long idleNanos = System.nanoTime() - lastReadNanos;
+            if (idleNanos < readTimeoutNanos) {
+                armWatchdog(readTimeoutNanos - idleNanos);
+                return;
+            }
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            subscription.cancel();
+            log.error("{} ask tool stream idle for {}s, cancelled", requestId, TimeUnit.NANOSECONDS.toSeconds(idleNanos));
+            future.completeExceptionally(new TimeoutException("LLM stream read timeout after " + STREAM_READ_TIMEOUT_SECONDS + "s"));
+        }
 
-                            String fullResponse = collectedMessages.toString().trim();
+        private void cancelWatchdog() {
+            ScheduledFuture<?> current = watchdog;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
+    }
 
-                            if (fullResponse.isEmpty()) {
-                                future.completeExceptionally(
-                                        new IllegalArgumentException("Empty response from streaming LLM")
-                                );
-                            } else {
-                                future.complete(fullResponse);
-                            }
-                        } else {
-                            future.completeExceptionally(
-                                    new IOException("Empty response body")
-                            );
-                        }
-                    }
+
+    /**
+     * 逐 token 下发内容增量，合并由 Printer 链路统一处理
+     * struct_parse 模式下保留可能是 ```json 起始的尾部内容，避免工具调用 JSON 泄露到思考输出中
+     */
+    private void sendContentDelta(AgentContext context, String messageId, StringBuilder buffer, String functionCallType) {
+        int end = buffer.length();
+        if ("struct_parse".equals(functionCallType)) {
+            int tick = buffer.indexOf("`");
+            while (tick >= 0) {
+                String rest = buffer.substring(tick);
+                if (rest.startsWith("```json") || "```json".startsWith(rest)) {
+                    end = tick;
+                    break;
                 }
-            });
-        } catch (Exception e) {
-            future.completeExceptionally(e);
+                tick = buffer.indexOf("`", tick + 1);
+            }
+        }
+        if (end > 0) {
+            context.getPrinter().send(messageId, context.getStreamMessageType(), buffer.substring(0, end), false);
+            buffer.delete(0, end);
         }
-
-        return future;
     }
 
-
     /**
      * 查找匹配的工具调用
      */
@@ -0,0 +1,193 @@
+package com.jd.genie.agent.printer;
+
+import com.jd.genie.agent.dto.CodeInterpreterResponse;
+import com.jd.genie.agent.dto.DeepSearchrResponse;
+import com.jd.genie.agent.enums.AgentType;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式增量合并输出
+ * 同一条流式消息（messageId）的增量先缓存，按 时间 / 字节数 / 句子边界 任一条件满足时合并下发；
+ * 最终消息及非增量消息下发前，先按顺序刷出所有缓存的增量
+ */
+@Slf4j
+public class CoalescingPrinter implements Printer {
+    private static final ScheduledExecutorService FLUSH_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder().namingPattern("stream-coalesce-%d").daemon(true).build());
+    private static final String SENTENCE_ENDINGS = "。！？；!?;\n";
+
+    private final Printer delegate;
+    private final Map<String, StreamCoalescePolicy> policies;
+    private final Map<String, Pending> pendingMap = new LinkedHashMap<>();
+
+    private static class Pending {
+        private final String messageType;
+        private final StringBuilder text = new StringBuilder();
+        private Object message;
+        private String digitalEmployee;
+        private int bytes;
+
+        private Pending(String messageType) {
+            this.messageType = messageType;
+        }
+    }
+
+    public CoalescingPrinter(Printer delegate, Map<String, StreamCoalescePolicy> policies) {
+        this.delegate = delegate;
+        this.policies = Objects.nonNull(policies) ? policies : new LinkedHashMap<>();
+    }
+
+    @Override
+    public void send(String messageId, String messageType, Object message, String digitalEmployee, Boolean isFinal) {
+        String text = Boolean.FALSE.equals(isFinal) ? deltaText(message) : null;
+        synchronized (this) {
+            if (Objects.isNull(messageId) || Objects.isNull(text)) {
+                flushAll();
+                delegate.send(messageId, messageType, message, digitalEmployee, isFinal);
+                return;
+            }
+            Pending pending = pendingMap.get(messageId);
+            if (Objects.nonNull(pending) && !pending.messageType.equals(messageType)) {
+                flush(messageId);
+                pending = null;
+            }
+            StreamCoalescePolicy policy = getPolicy(messageType);
+            if (Objects.isNull(pending)) {
+                pending = new Pending(messageType);
+                pendingMap.put(messageId, pending);
+                scheduleFlush(messageId, pending, policy.getIntervalMs());
+            }
+            pending.text.append(text);
+            pending.bytes += utf8Length(text);
+            pending.message = message;
+            pending.digitalEmployee = digitalEmployee;
+
+            if (pending.bytes >= policy.getMaxBytes()
+                    || (Boolean.TRUE.equals(policy.getSentenceBoundary()) && endsWithSentence(text))) {
+                flush(messageId);
+            }
+        }
+    }
+
+    @Override
+    public void send(String messageType, Object message) {
+        send(null, messageType, message, null, true);
+    }
+
+    @Override
+    public void send(String messageType, Object message, String digitalEmployee) {
+        send(null, messageType, message, digitalEmployee, true);
+    }
+
+    @Override
+    public void send(String messageId, String messageType, Object message, Boolean isFinal) {
+        send(messageId, messageType, message, null, isFinal);
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            flushAll();
+        }
+        delegate.close();
+    }
+
+    @Override
+    public void updateAgentType(AgentType agentType) {
+        delegate.updateAgentType(agentType);
+    }
+
+    private StreamCoalescePolicy getPolicy(String messageType) {
+        StreamCoalescePolicy policy = policies.getOrDefault(messageType, policies.get("default"));
+        return Objects.nonNull(policy) ? policy : StreamCoalescePolicy.DEFAULT;
+    }
+
+    private void scheduleFlush(String messageId, Pending pending, long intervalMs) {
+        FLUSH_SCHEDULER.schedule(() -> {
+            synchronized (this) {
+                // 缓存已被刷出（或被新的缓存替换）时跳过
+                if (pendingMap.get(messageId) == pending) {
+                    flush(messageId);
+                }
+            }
+        }, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void flushAll() {
+        for (String messageId : new ArrayList<>(pendingMap.keySet())) {
+            flush(messageId);
+        }
+    }
+
+    private void flush(String messageId) {
+        Pending pending = pendingMap.remove(messageId);
+        if (Objects.isNull(pending) || pending.text.length() == 0) {
+            return;
+        }
+        try {
+            delegate.send(messageId, pending.messageType, withText(pending.message, pending.text.toString()),
+                    pending.digitalEmployee, false);
+        } catch (Exception e) {
+            log.error("coalescing printer flush error ", e);
+        }
+    }
+
+    /**
+     * 提取可合并增量的文本，不可合并返回 null
+     */
+    private static String deltaText(Object message) {
+        if (message instanceof String) {
+            return (String) message;
+        }
+        if (message instanceof DeepSearchrResponse) {
+            return ((DeepSearchrResponse) message).getAnswer();
+        }
+        if (message instanceof CodeInterpreterResponse) {
+            return ((CodeInterpreterResponse) message).getData();
+        }
+        return null;
+    }
+
+    private static Object withText(Object message, String text) {
+        if (message instanceof DeepSearchrResponse) {
+            ((DeepSearchrResponse) message).setAnswer(text);
+            return message;
+        }
+        if (message instanceof CodeInterpreterResponse) {
+            ((CodeInterpreterResponse) message).setData(text);
+            return message;
+        }
+        return text;
+    }
+
+    private static boolean endsWithSentence(String text) {
+        return !text.isEmpty() && SENTENCE_ENDINGS.indexOf(text.charAt(text.length() - 1)) >= 0;
+    }
+
+    private static int utf8Length(String text) {
+        int length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length += 1;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c)) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
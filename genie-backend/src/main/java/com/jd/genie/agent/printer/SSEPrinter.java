@@ -2,9 +2,12 @@ package com.jd.genie.agent.printer;
 
 import com.alibaba.fastjson.JSON;
 import com.jd.genie.agent.enums.AgentType;
+import com.jd.genie.agent.util.SpringContextHolder;
 import com.jd.genie.agent.util.StringUtil;
+import com.jd.genie.config.GenieConfig;
 import com.jd.genie.model.req.AgentRequest;
 import com.jd.genie.model.response.AgentResponse;
+import com.jd.genie.util.SseEventQueue;
 import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
@@ -18,14 +21,36 @@ import java.util.Objects;
 @Slf4j
 @Setter
 public class SSEPrinter implements Printer {
+    private static final String HEARTBEAT = "heartbeat";
+
     private SseEmitter emitter;
     private AgentRequest request;
     private Integer agentType;
+    // 所有线程的输出统一入队，由单个写线程写出
+    private SseEventQueue eventQueue;
 
     public SSEPrinter(SseEmitter emitter, AgentRequest request, Integer agentType) {
+        this(SseEventQueue.emitterSink(emitter), request, agentType);
         this.emitter = emitter;
+    }
+
+    /**
+     * 事件写入指定写出端，同进程派发时直接交给响应处理链，不经过 HTTP
+     */
+    public SSEPrinter(SseEventQueue.Sink sink, AgentRequest request, Integer agentType) {
         this.request = request;
         this.agentType = agentType;
+        GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+        this.eventQueue = new SseEventQueue(request.getRequestId(), genieConfig.getSseQueueCapacity(),
+                sink, SSEPrinter::mergeDelta);
+        this.eventQueue.setLagThresholdMs(genieConfig.getSseLagThresholdMs());
+    }
+
+    /**
+     * 是否为心跳事件
+     */
+    public static boolean isHeartbeat(Object event) {
+        return HEARTBEAT.equals(event);
     }
 
     @Override
@@ -35,7 +60,8 @@ public class SSEPrinter implements Printer {
                 messageId = StringUtil.getUUID();
             }
             log.info("{} sse send {} {} {}", request.getRequestId(), messageType, message, digitalEmployee);
-            boolean finish = "result".equals(messageType);
+            // 流式总结的增量不代表结束
+            boolean finish = "result".equals(messageType) && !Boolean.FALSE.equals(isFinal);
             Map<String, Object> resultMap = new HashMap<>();
             resultMap.put("agentType", agentType);
             AgentResponse response = AgentResponse.builder()
@@ -113,7 +139,8 @@ public class SSEPrinter implements Printer {
                     break;
             }
 
-            emitter.send(response);
+            // 仅显式标记为非最终的消息视为增量，可被合并
+            eventQueue.offer(response, messageId, !Boolean.FALSE.equals(isFinal));
 
         } catch (Exception e) {
             log.error("sse send error ", e);
@@ -135,9 +162,89 @@ public class SSEPrinter implements Printer {
         send(messageId, messageType, message, null, isFinal);
     }
 
+    /**
+     * 发送心跳，写线程积压时多个心跳合并为一个
+     */
+    public void sendHeartbeat() {
+        eventQueue.offer(HEARTBEAT, HEARTBEAT, false);
+    }
+
     @Override
     public void close() {
-        emitter.complete();
+        eventQueue.close();
+    }
+
+    public SseEventQueue getEventQueue() {
+        return eventQueue;
+    }
+
+    /**
+     * 合并同一条流式消息的两个增量，无法合并时返回 null
+     */
+    private static Object mergeDelta(Object pending, Object incoming) {
+        if (HEARTBEAT.equals(pending) && HEARTBEAT.equals(incoming)) {
+            return pending;
+        }
+        if (!(pending instanceof AgentResponse) || !(incoming instanceof AgentResponse)) {
+            return null;
+        }
+        AgentResponse prev = (AgentResponse) pending;
+        AgentResponse next = (AgentResponse) incoming;
+        if (!Objects.equals(prev.getMessageType(), next.getMessageType())) {
+            return null;
+        }
+        switch (next.getMessageType()) {
+            case "tool_thought":
+                prev.setToolThought(concat(prev.getToolThought(), next.getToolThought()));
+                break;
+            case "plan_thought":
+                prev.setPlanThought(concat(prev.getPlanThought(), next.getPlanThought()));
+                break;
+            case "agent_stream":
+            case "result":
+                prev.setResult(concat(prev.getResult(), next.getResult()));
+                break;
+            case "html":
+            case "markdown":
+            case "ppt":
+                if (!mergeResultField(prev, next, "data")) {
+                    return null;
+                }
+                break;
+            case "deep_search":
+                if (!mergeResultField(prev, next, "answer")) {
+                    return null;
+                }
+                break;
+            default:
+                return null;
+        }
+        prev.setMessageTime(next.getMessageTime());
+        return prev;
+    }
+
+    private static boolean mergeResultField(AgentResponse prev, AgentResponse next, String field) {
+        Map<String, Object> prevMap = prev.getResultMap();
+        Map<String, Object> nextMap = next.getResultMap();
+        if (Objects.isNull(prevMap) || Objects.isNull(nextMap)) {
+            return false;
+        }
+        Object prevValue = prevMap.get(field);
+        Object nextValue = nextMap.get(field);
+        if (!(prevValue instanceof String) || !(nextValue instanceof String)) {
+            return false;
+        }
+        // 以最新的增量为准，拼接累积的字段内容
+        nextMap.put(field, prevValue + (String) nextValue);
+        prev.setResultMap(nextMap);
+        return true;
+    }
+
+    private static String concat(String prev, String next) {
+        if (Objects.isNull(prev)) {
+            return next;
+        }
+        return Objects.isNull(next) ? prev : prev + next;
     }
 
     @Override
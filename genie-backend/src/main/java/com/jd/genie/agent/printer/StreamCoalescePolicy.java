@@ -0,0 +1,36 @@
+package com.jd.genie.agent.printer;
+
+import com.alibaba.fastjson.annotation.JSONField;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 流式增量合并策略，满足任一条件即下发
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StreamCoalescePolicy {
+    public static final StreamCoalescePolicy DEFAULT = new StreamCoalescePolicy(80, 256, true);
+
+    /**
+     * 首个增量缓存后的最长等待时间（毫秒）
+     */
+    @JSONField(name = "interval_ms")
+    private Integer intervalMs;
+
+    /**
+     * 缓存内容达到的字节数（UTF-8）
+     */
+    @JSONField(name = "max_bytes")
+    private Integer maxBytes;
+
+    /**
+     * 增量以句子结束符结尾时是否立即下发
+     */
+    @JSONField(name = "sentence_boundary")
+    private Boolean sentenceBoundary;
+}
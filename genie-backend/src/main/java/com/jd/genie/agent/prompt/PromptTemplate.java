@@ -0,0 +1,148 @@
+package com.jd.genie.agent.prompt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 提示词模板
+ * 1、模板按 {{name}} 占位符一次性解析为文本段与变量段，解析结果按原文缓存，跨请求共享
+ * 2、render 单次遍历、预估长度写入，替换值中的 {{xx}} 不会被再次替换
+ * 3、未提供值的占位符原样保留，可先 bind 请求级变量，再在每轮 think 时只渲染剩余变量
+ */
+public final class PromptTemplate {
+    private static final String OPEN = "{{";
+    private static final String CLOSE = "}}";
+    /**
+     * 缓存上限，配置中的模板数量有限，超出后不再缓存，避免动态模板撑满内存
+     */
+    private static final int MAX_CACHE_SIZE = 256;
+    private static final Map<String, PromptTemplate> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * 文本段与变量段，names[i] 为 null 表示 parts[i] 是文本
+     */
+    private final String[] parts;
+    private final String[] names;
+    private final int literalLength;
+
+    private PromptTemplate(List<String> parts, List<String> names) {
+        this.parts = parts.toArray(new String[0]);
+        this.names = names.toArray(new String[0]);
+        int length = 0;
+        for (int i = 0; i < this.parts.length; i++) {
+            if (this.names[i] == null) {
+                length += this.parts[i].length();
+            }
+        }
+        this.literalLength = length;
+    }
+
+    /**
+     * 获取编译后的模板，相同原文只解析一次
+     */
+    public static PromptTemplate compile(String template) {
+        String source = Objects.isNull(template) ? "" : template;
+        PromptTemplate cached = CACHE.get(source);
+        if (cached != null) {
+            return cached;
+        }
+        PromptTemplate compiled = parse(source);
+        if (CACHE.size() < MAX_CACHE_SIZE) {
+            CACHE.putIfAbsent(source, compiled);
+        }
+        return compiled;
+    }
+
+    private static PromptTemplate parse(String source) {
+        List<String> parts = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        int pos = 0;
+        while (pos < source.length()) {
+            int open = source.indexOf(OPEN, pos);
+            int close = open < 0 ? -1 : source.indexOf(CLOSE, open + OPEN.length());
+            if (open < 0 || close < 0) {
+                break;
+            }
+            if (open > pos) {
+                parts.add(source.substring(pos, open));
+                names.add(null);
+            }
+            String name = source.substring(open + OPEN.length(), close);
+            parts.add(source.substring(open, close + CLOSE.length()));
+            names.add(name);
+            pos = close + CLOSE.length();
+        }
+        if (pos < source.length()) {
+            parts.add(source.substring(pos));
+            names.add(null);
+        }
+        return new PromptTemplate(parts, names);
+    }
+
+    /**
+     * 渲染模板，未提供值的占位符原样保留
+     */
+    public String render(Map<String, String> variables) {
+        int capacity = literalLength;
+        for (int i = 0; i < parts.length; i++) {
+            if (names[i] != null) {
+                String value = variables.get(names[i]);
+                capacity += value == null ? parts[i].length() : value.length();
+            }
+        }
+        StringBuilder sb = new StringBuilder(capacity);
+        for (int i = 0; i < parts.length; i++) {
+            if (names[i] == null) {
+                sb.append(parts[i]);
+            } else {
+                String value = variables.get(names[i]);
+                sb.append(value == null ? parts[i] : value);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 渲染单个变量，用于每轮只替换 {{files}} 的场景
+     */
+    public String render(String name, String value) {
+        return render(Collections.singletonMap(name, value));
+    }
+
+    /**
+     * 绑定部分变量，返回只剩未绑定占位符的新模板（不进入缓存）
+     */
+    public PromptTemplate bind(Map<String, String> variables) {
+        List<String> boundParts = new ArrayList<>();
+        List<String> boundNames = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < parts.length; i++) {
+            String value = names[i] == null ? null : variables.get(names[i]);
+            if (names[i] == null || value != null) {
+                literal.append(names[i] == null ? parts[i] : value);
+                continue;
+            }
+            if (literal.length() > 0) {
+                boundParts.add(literal.toString());
+                boundNames.add(null);
+                literal.setLength(0);
+            }
+            boundParts.add(parts[i]);
+            boundNames.add(names[i]);
+        }
+        if (literal.length() > 0) {
+            boundParts.add(literal.toString());
+            boundNames.add(null);
+        }
+        return new PromptTemplate(boundParts, boundNames);
+    }
+
+    @Override
+    public String toString() {
+        return render(Collections.emptyMap());
+    }
+}
@@ -0,0 +1,8 @@
+package com.jd.genie.agent.prompt;
+
+/**
+ * 总结代理的提示词常量
+ */
+public class SummaryPrompt {
+    public static final String MAP_PROMPT = "# 角色\n你是任务执行记录的摘要助手。\n\n# 说明\n下面是为完成用户任务<query>而执行的过程记录的第 {{index}}/{{total}} 部分<taskHistory>，请从中提炼与用户任务相关的信息，供后续汇总成最终回答。\n\n# 要求\n- 保留关键事实、数据、结论以及生成的文件名，数字和专有名词保持原样\n- 忽略与用户任务无关的思考过程和重复内容\n- 只能依据记录内容，不要编造\n- 以纯文本输出，不超过800字\n\n# 用户任务\n<query>{{query}}</query>\n\n# 执行记录\n<taskHistory>\n{{taskHistory}}\n</taskHistory>";
+}
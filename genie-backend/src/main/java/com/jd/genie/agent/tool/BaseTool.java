@@ -1,5 +1,7 @@
 package com.jd.genie.agent.tool;
 
+import com.jd.genie.agent.agent.AgentContext;
+
 import java.util.Map;
 
 /**
@@ -13,4 +15,19 @@ public interface BaseTool {
     Map<String, Object> toParams();
 
     Object execute(Object input);
-}
\ No newline at end of file
+
+    /**
+     * 获取绑定到指定上下文的工具实例，并行子任务 fork 上下文时使用
+     * 不持有上下文的工具直接返回自身
+     */
+    default BaseTool withContext(AgentContext context) {
+        return this;
+    }
+
+    /**
+     * 相同参数的调用是否可以复用结果，默认不复用，只读且无副作用的工具覆盖为 true
+     */
+    default boolean isIdempotent() {
+        return false;
+    }
+}
@@ -0,0 +1,141 @@
+package com.jd.genie.agent.tool;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.serializer.SerializerFeature;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 工具调用合并（single-flight），一个请求内共享
+ * 1、按 工具名 + 规范化参数 作为键，相同调用并发时只有第一个真正执行，其余等待并复用其结果
+ * 2、执行成功的结果在 ttl 窗口内可被后续相同调用直接复用
+ * 3、执行失败或返回空时不缓存，下次调用重新执行
+ * 4、只有声明为幂等的工具（BaseTool#isIdempotent 返回 true）和配置允许的 MCP 工具参与合并
+ */
+@Slf4j
+public class ToolCallCoalescer {
+    private static class Flight {
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+        private volatile long doneTime = 0;
+
+        private boolean isExpired(long ttlMs) {
+            return doneTime > 0 && System.currentTimeMillis() - doneTime > ttlMs;
+        }
+    }
+
+    private final String requestId;
+    private final long ttlMs;
+    private final Set<String> allowedMcpTools;
+    private final Map<String, Flight> flights = new ConcurrentHashMap<>();
+    private final AtomicLong coalescedCount = new AtomicLong(0);
+
+    public ToolCallCoalescer(String requestId, long ttlMs, Set<String> allowedMcpTools) {
+        this.requestId = requestId;
+        this.ttlMs = Math.max(ttlMs, 0);
+        this.allowedMcpTools = allowedMcpTools == null ? Collections.emptySet() : allowedMcpTools;
+    }
+
+    /**
+     * MCP 工具是否被配置为只读、允许合并
+     */
+    public boolean isMcpToolAllowed(String toolName) {
+        return allowedMcpTools.contains(toolName);
+    }
+
+    /**
+     * 生成调用键，参数中的 Map（含嵌套）按 key 排序，保证字段顺序不同的相同参数得到相同的键
+     */
+    public static String buildKey(String toolName, Object toolInput) {
+        return toolName + ":" + JSON.toJSONString(canonicalize(toolInput), SerializerFeature.SortField);
+    }
+
+    /**
+     * MapSortField 对 LinkedHashMap 不生效，这里递归转换为 TreeMap
+     */
+    private static Object canonicalize(Object value) {
+        if (value instanceof Map) {
+            Map<String, Object> sorted = new TreeMap<>();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                sorted.put(String.valueOf(entry.getKey()), canonicalize(entry.getValue()));
+            }
+            return sorted;
+        }
+        if (value instanceof Collection) {
+            List<Object> list = new ArrayList<>();
+            for (Object item : (Collection<?>) value) {
+                list.add(canonicalize(item));
+            }
+            return list;
+        }
+        return value;
+    }
+
+    /**
+     * 执行调用，相同键的在途或近期调用直接复用结果
+     */
+    public Object execute(String key, Supplier<Object> call) {
+        while (true) {
+            Flight flight = new Flight();
+            Flight existing = flights.putIfAbsent(key, flight);
+            if (existing != null) {
+                if (existing.isExpired(ttlMs)) {
+                    flights.remove(key, existing);
+                    continue;
+                }
+                coalescedCount.incrementAndGet();
+                log.info("{} tool call coalesced {}", requestId, key);
+                return await(existing);
+            }
+            return run(key, flight, call);
+        }
+    }
+
+    private Object run(String key, Flight flight, Supplier<Object> call) {
+        Object result;
+        try {
+            result = call.get();
+        } catch (Throwable e) {
+            // Error 也要结束在途调用，否则等待中的相同调用会一直阻塞
+            flights.remove(key, flight);
+            flight.future.completeExceptionally(e);
+            throw e;
+        }
+        if (result == null || ttlMs == 0) {
+            flights.remove(key, flight);
+        } else {
+            flight.doneTime = System.currentTimeMillis();
+        }
+        flight.future.complete(result);
+        return result;
+    }
+
+    private Object await(Flight flight) {
+        try {
+            return flight.future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+}
@@ -4,12 +4,19 @@ import com.alibaba.fastjson.JSONObject;
 import com.jd.genie.agent.agent.AgentContext;
 import com.jd.genie.agent.dto.tool.McpToolInfo;
 import com.jd.genie.agent.tool.mcp.McpTool;
+import com.jd.genie.agent.util.GenieMetrics;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * 工具集合类 - 管理可用的工具
@@ -23,23 +30,76 @@ public class ToolCollection {
 
     /**
      * 数字员工列表
-     * task未并发的情况下
      * 1、每一个task，执行时，数字员工列表就会更新
-     * TODO 并发情况下需要处理
+     * 2、task并发执行时，每个task使用 fork 出的独立工具集合，互不覆盖
      */
     private String currentTask;
     private JSONObject digitalEmployees;
 
+    /**
+     * 工具描述提示词缓存，工具集合变化时失效，fork 出的集合工具相同可直接复用
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private String toolPrompt;
+
+    /**
+     * 相同工具调用合并，同一请求 fork 出的工具集合共享，为空则不合并
+     */
+    @Getter(AccessLevel.NONE)
+    private ToolCallCoalescer callCoalescer;
+
+    /**
+     * MCP 调用复用同一个实例，不再每次调用新建
+     */
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private McpTool mcpTool;
+
     public ToolCollection() {
         this.toolMap = new HashMap<>();
         this.mcpToolMap = new HashMap<>();
     }
 
+    /**
+     * 为子上下文创建工具集合：工具重新绑定到子上下文，MCP 工具定义只读共享
+     */
+    public ToolCollection fork(AgentContext context) {
+        ToolCollection child = new ToolCollection();
+        child.setAgentContext(context);
+        for (BaseTool tool : toolMap.values()) {
+            child.addTool(tool.withContext(context));
+        }
+        child.setMcpToolMap(mcpToolMap);
+        child.setCurrentTask(currentTask);
+        child.setDigitalEmployees(digitalEmployees);
+        child.toolPrompt = toolPrompt;
+        child.callCoalescer = callCoalescer;
+        return child;
+    }
+
     /**
      * 添加工具
      */
     public void addTool(BaseTool tool) {
         toolMap.put(tool.getName(), tool);
+        toolPrompt = null;
+    }
+
+    /**
+     * 格式化工具描述，用于填充提示词中的 {{tools}}
+     */
+    public String formatToolPrompt() {
+        String prompt = toolPrompt;
+        if (prompt == null) {
+            StringBuilder sb = new StringBuilder();
+            for (BaseTool tool : toolMap.values()) {
+                sb.append("工具名：").append(tool.getName()).append(" 工具描述：").append(tool.getDescription()).append("\n");
+            }
+            prompt = sb.toString();
+            toolPrompt = prompt;
+        }
+        return prompt;
     }
 
     /**
@@ -73,20 +133,83 @@ public class ToolCollection {
      * 执行工具
      */
     public Object execute(String name, Object toolInput) {
+        if (Objects.nonNull(callCoalescer) && isIdempotent(name)) {
+            return callCoalescer.execute(ToolCallCoalescer.buildKey(name, toolInput), () -> doExecute(name, toolInput));
+        }
+        return doExecute(name, toolInput);
+    }
+
+    /**
+     * 工具是否可以合并相同调用，内置工具由自身声明，MCP 工具需在配置中显式允许
+     */
+    private boolean isIdempotent(String name) {
+        if (toolMap.containsKey(name)) {
+            return toolMap.get(name).isIdempotent();
+        }
+        return mcpToolMap.containsKey(name) && callCoalescer.isMcpToolAllowed(name);
+    }
+
+    /**
+     * 记录工具调用耗时，抛出异常或无结果计为失败
+     */
+    private Object doExecute(String name, Object toolInput) {
+        long startNanos = System.nanoTime();
+        Object result = null;
+        try {
+            result = invoke(name, toolInput);
+            return result;
+        } finally {
+            String tool = toolMap.containsKey(name) || mcpToolMap.containsKey(name) ? name : "unknown";
+            GenieMetrics.TOOL_SECONDS.observe(GenieMetrics.seconds(System.nanoTime() - startNanos), tool);
+            if (Objects.isNull(result)) {
+                GenieMetrics.TOOL_ERRORS.increment(1, tool);
+            }
+        }
+    }
+
+    private Object invoke(String name, Object toolInput) {
         if (toolMap.containsKey(name)) {
             BaseTool tool = getTool(name);
             return tool.execute(toolInput);
         } else if (mcpToolMap.containsKey(name)) {
             McpToolInfo toolInfo = mcpToolMap.get(name);
-            McpTool mcpTool = new McpTool();
-            mcpTool.setAgentContext(agentContext);
-            return mcpTool.callTool(toolInfo.getMcpServerUrl(), name, toolInput);
+            return mcpTool().callTool(toolInfo.getMcpServerUrl(), name, toolInput);
         } else {
             log.error("Error: Unknown tool {}", name);
         }
         return null;
     }
 
+    /**
+     * 批量执行同一 MCP Server 上的多个工具调用，不参与相同调用合并
+     * 批量请求失败时返回 null，由调用方逐个执行
+     */
+    public List<Object> executeMcpBatch(String mcpServerUrl, List<String> names, List<Map<String, Object>> toolInputs) {
+        long startNanos = System.nanoTime();
+        List<String> results = mcpTool().batchCallTool(mcpServerUrl, names, toolInputs);
+        if (Objects.isNull(results)) {
+            return null;
+        }
+        double seconds = GenieMetrics.seconds(System.nanoTime() - startNanos);
+        for (int i = 0; i < names.size(); i++) {
+            GenieMetrics.TOOL_SECONDS.observe(seconds, names.get(i));
+            if (StringUtils.isEmpty(results.get(i))) {
+                GenieMetrics.TOOL_ERRORS.increment(1, names.get(i));
+            }
+        }
+        return new ArrayList<>(results);
+    }
+
+    private McpTool mcpTool() {
+        McpTool tool = mcpTool;
+        if (Objects.isNull(tool) || tool.getAgentContext() != agentContext) {
+            tool = new McpTool();
+            tool.setAgentContext(agentContext);
+            mcpTool = tool;
+        }
+        return tool;
+    }
+
     /**
      * 设置数字员工
      */
@@ -61,6 +61,13 @@ public class CodeInterpreterTool implements BaseTool {
         return parameters;
     }
 
+    @Override
+    public BaseTool withContext(AgentContext context) {
+        CodeInterpreterTool tool = new CodeInterpreterTool();
+        tool.setAgentContext(context);
+        return tool;
+    }
+
     @Override
     public Object execute(Object input) {
         try {
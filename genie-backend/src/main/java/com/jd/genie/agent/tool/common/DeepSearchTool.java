@@ -65,6 +65,13 @@ public class DeepSearchTool implements BaseTool {
         return parameters;
     }
 
+    @Override
+    public BaseTool withContext(AgentContext context) {
+        DeepSearchTool tool = new DeepSearchTool();
+        tool.setAgentContext(context);
+        return tool;
+    }
+
     @Override
     public Object execute(Object input) {
         long startTime = System.currentTimeMillis();
@@ -127,9 +134,6 @@ public class DeepSearchTool implements BaseTool {
                     .post(body);
             Request request = requestBuilder.build();
 
-            String[] interval = genieConfig.getMessageInterval().getOrDefault("search", "5,20").split(",");
-            int firstInterval = Integer.parseInt(interval[0]);
-            int sendInterval = Integer.parseInt(interval[1]);
 
             client.newCall(request).enqueue(new Callback() {
                 @Override
@@ -150,7 +154,6 @@ public class DeepSearchTool implements BaseTool {
                         }
 
                         int index = 1;
-                        StringBuilder stringBuilderIncr = new StringBuilder();
                         StringBuilder stringBuilderAll = new StringBuilder();
                         String line;
                         BufferedReader reader = new BufferedReader(new InputStreamReader(responseBody.byteStream()));
@@ -220,13 +223,8 @@ public class DeepSearchTool implements BaseTool {
                                         if (index == 1) {
                                             messageId = StringUtil.getUUID();
                                         }
-                                        stringBuilderIncr.append(searchResponse.getAnswer());
                                         stringBuilderAll.append(searchResponse.getAnswer());
-                                        if (index == firstInterval || index % sendInterval == 0) {
-                                            searchResponse.setAnswer(stringBuilderIncr.toString());
-                                            agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployee, false);
-                                            stringBuilderIncr.setLength(0);
-                                        }
+                                        agentContext.getPrinter().send(messageId, "deep_search", searchResponse, digitalEmployee, false);
                                         index++;
                                     }
                                 }
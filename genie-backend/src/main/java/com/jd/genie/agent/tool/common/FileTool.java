@@ -74,6 +74,13 @@ public class FileTool implements BaseTool {
         return parameters;
     }
 
+    @Override
+    public BaseTool withContext(AgentContext context) {
+        FileTool tool = new FileTool();
+        tool.setAgentContext(context);
+        return tool;
+    }
+
     @Override
     public Object execute(Object input) {
         try {
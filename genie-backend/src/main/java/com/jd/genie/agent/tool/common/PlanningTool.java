@@ -66,6 +66,7 @@ public class PlanningTool implements BaseTool {
         properties.put("step_index", getStepIndexProperty());
         properties.put("step_status", getStepStatusProperty());
         properties.put("step_notes", getStepNotesProperty());
+        properties.put("dependencies", getDependenciesProperty());
         return properties;
     }
 
@@ -116,6 +117,19 @@ public class PlanningTool implements BaseTool {
         return stepNotes;
     }
 
+    private Map<String, Object> getDependenciesProperty() {
+        Map<String, Object> indexItems = new HashMap<>();
+        indexItems.put("type", "integer");
+        Map<String, Object> items = new HashMap<>();
+        items.put("type", "array");
+        items.put("items", indexItems);
+        Map<String, Object> dependencies = new HashMap<>();
+        dependencies.put("type", "array");
+        dependencies.put("items", items);
+        dependencies.put("description", "Dependencies of each step. The i-th element lists the step numbers (1-based, matching the 执行顺序 labels) of steps that must be completed before the i-th step starts; use [] for steps without prerequisites. Optional for create and update command.");
+        return dependencies;
+    }
+
     @Override
     public Object execute(Object input) {
         if (!(input instanceof Map)) {
@@ -149,7 +163,7 @@ public class PlanningTool implements BaseTool {
             throw new IllegalStateException("A plan already exists. Delete the current plan first.");
         }
 
-        plan = Plan.create(title, steps);
+        plan = Plan.create(title, steps, parseDependencies(params));
         return "我已创建plan";
     }
 
@@ -161,10 +175,30 @@ public class PlanningTool implements BaseTool {
             throw new IllegalStateException("No plan exists. Create a plan first.");
         }
 
-        plan.update(title, steps);
+        plan.update(title, steps, parseDependencies(params));
         return "我已更新plan";
     }
 
+    private List<List<Integer>> parseDependencies(Map<String, Object> params) {
+        Object value = params.get("dependencies");
+        if (!(value instanceof List)) {
+            return null;
+        }
+        List<List<Integer>> dependencies = new ArrayList<>();
+        for (Object item : (List<?>) value) {
+            List<Integer> stepDependencies = new ArrayList<>();
+            if (item instanceof List) {
+                for (Object index : (List<?>) item) {
+                    if (index instanceof Number) {
+                        stepDependencies.add(((Number) index).intValue());
+                    }
+                }
+            }
+            dependencies.add(stepDependencies);
+        }
+        return dependencies;
+    }
+
     private String markStep(Map<String, Object> params) {
         Integer stepIndex = (Integer) params.get("step_index");
         String stepStatus = (String) params.get("step_status");
@@ -62,6 +62,13 @@ public class ReportTool implements BaseTool {
         return parameters;
     }
 
+    @Override
+    public BaseTool withContext(AgentContext context) {
+        ReportTool tool = new ReportTool();
+        tool.setAgentContext(context);
+        return tool;
+    }
+
     @Override
     public Object execute(Object input) {
         long startTime = System.currentTimeMillis();
@@ -135,9 +142,6 @@ public class ReportTool implements BaseTool {
                     .post(body);
             Request request = requestBuilder.build();
 
-            String[] interval = genieConfig.getMessageInterval().getOrDefault("report", "1,4").split(",");
-            int firstInterval = Integer.parseInt(interval[0]);
-            int sendInterval = Integer.parseInt(interval[1]);
             client.newCall(request).enqueue(new Callback() {
                 @Override
                 public void onFailure(Call call, IOException e) {
@@ -161,7 +165,6 @@ public class ReportTool implements BaseTool {
                         }
 
                         int index = 1;
-                        StringBuilder stringBuilderIncr = new StringBuilder();
                         String line;
                         String messageId = StringUtil.getUUID();
                         // 获取数字人名称
@@ -198,12 +201,7 @@ public class ReportTool implements BaseTool {
                                     }
                                     agentContext.getPrinter().send(messageId, codeRequest.getFileType(), codeResponse, digitalEmployee, true);
                                 } else {
-                                    stringBuilderIncr.append(codeResponse.getData());
-                                    if (index == firstInterval || index % sendInterval == 0) {
-                                        codeResponse.setData(stringBuilderIncr.toString());
-                                        agentContext.getPrinter().send(messageId, codeRequest.getFileType(), codeResponse, digitalEmployee, false);
-                                        stringBuilderIncr.setLength(0);
-                                    }
+                                    agentContext.getPrinter().send(messageId, codeRequest.getFileType(), codeResponse, digitalEmployee, false);
                                 }
                                 index++;
                             }
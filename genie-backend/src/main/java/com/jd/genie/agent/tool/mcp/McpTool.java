@@ -1,8 +1,11 @@
 package com.jd.genie.agent.tool.mcp;
 
 import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
 import com.jd.genie.agent.agent.AgentContext;
 import com.jd.genie.agent.tool.BaseTool;
+import com.jd.genie.agent.util.GenieMetrics;
 import com.jd.genie.agent.util.OkHttpUtil;
 import com.jd.genie.agent.util.SpringContextHolder;
 import com.jd.genie.config.GenieConfig;
@@ -11,12 +14,25 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 @Slf4j
 @Data
 public class McpTool implements BaseTool {
+    /**
+     * 各 MCP Server 的并发许可，进程内共享
+     */
+    private static final Map<String, Semaphore> SERVER_PERMITS = new ConcurrentHashMap<>();
+
     private AgentContext agentContext;
 
     @Data
@@ -29,6 +45,15 @@ public class McpTool implements BaseTool {
         private Map<String, Object> arguments;
     }
 
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class McpToolBatchRequest {
+        private String server_url;
+        private List<McpToolRequest> calls;
+    }
+
     @Data
     @Builder
     @NoArgsConstructor
@@ -60,8 +85,14 @@ public class McpTool implements BaseTool {
     }
 
     public String listTool(String mcpServerUrl) {
+        return listTool(SpringContextHolder.getApplicationContext().getBean(GenieConfig.class), mcpServerUrl);
+    }
+
+    /**
+     * 使用指定配置获取工具列表，启动阶段（SpringContextHolder 可能尚未就绪）由调用方传入注入的配置
+     */
+    public String listTool(GenieConfig genieConfig, String mcpServerUrl) {
         try {
-            GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
             String mcpClientUrl = genieConfig.getMcpClientUrl() + "/v1/tool/list";
             McpToolRequest mcpToolRequest = McpToolRequest.builder()
                     .server_url(mcpServerUrl)
@@ -70,27 +101,116 @@ public class McpTool implements BaseTool {
             log.info("list tool request: {} response: {}", JSON.toJSONString(mcpToolRequest), response);
             return response;
         } catch (Exception e) {
-            log.error("{} list tool error", agentContext.getRequestId(), e);
+            log.error("{} list tool error", mcpServerUrl, e);
         }
         return "";
     }
 
     public String callTool(String mcpServerUrl, String toolName, Object input) {
+        long startNanos = System.nanoTime();
+        String response = null;
         try {
             GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
-            String mcpClientUrl = genieConfig.getMcpClientUrl() + "/v1/tool/call";
             Map<String, Object> params = (Map<String, Object>) input;
             McpToolRequest mcpToolRequest = McpToolRequest.builder()
                     .name(toolName)
                     .server_url(mcpServerUrl)
                     .arguments(params)
                     .build();
-            String response = OkHttpUtil.postJson(mcpClientUrl, JSON.toJSONString(mcpToolRequest), null, 30L);
+            response = post(genieConfig, mcpServerUrl, "/v1/tool/call", JSON.toJSONString(mcpToolRequest), 1);
             log.info("call tool request: {} response: {}", JSON.toJSONString(mcpToolRequest), response);
             return response;
         } catch (Exception e) {
-            log.error("{} call tool error ", agentContext.getRequestId(), e);
+            log.error("{} call tool error ", requestId(), e);
+        } finally {
+            record(mcpServerUrl, toolName, startNanos, response);
         }
         return "";
     }
-}
\ No newline at end of file
+
+    /**
+     * 批量调用同一 MCP Server 上的多个工具，genie-client 在一个会话内并发执行
+     * 返回结果与调用一一对应，格式与单次调用相同；批量请求本身失败（如 genie-client 不支持）时返回 null，由调用方逐个调用
+     */
+    public List<String> batchCallTool(String mcpServerUrl, List<String> toolNames, List<Map<String, Object>> inputs) {
+        long startNanos = System.nanoTime();
+        List<McpToolRequest> calls = new ArrayList<>();
+        for (int i = 0; i < toolNames.size(); i++) {
+            calls.add(McpToolRequest.builder()
+                    .name(toolNames.get(i))
+                    .arguments(inputs.get(i))
+                    .build());
+        }
+        McpToolBatchRequest batchRequest = McpToolBatchRequest.builder()
+                .server_url(mcpServerUrl)
+                .calls(calls)
+                .build();
+        String response = null;
+        try {
+            GenieConfig genieConfig = SpringContextHolder.getApplicationContext().getBean(GenieConfig.class);
+            response = post(genieConfig, mcpServerUrl, "/v1/tool/batch_call", JSON.toJSONString(batchRequest), calls.size());
+            log.info("{} batch call tool request: {} response: {}", requestId(), JSON.toJSONString(batchRequest), response);
+            JSONObject batchResponse = StringUtils.isEmpty(response) ? null : JSON.parseObject(response);
+            JSONArray data = Objects.isNull(batchResponse) ? null : batchResponse.getJSONArray("data");
+            if (Objects.isNull(data) || data.size() != calls.size()) {
+                log.warn("{} batch call tool {} unsupported or failed, fallback to single call", requestId(), mcpServerUrl);
+                return null;
+            }
+            List<String> results = new ArrayList<>();
+            for (int i = 0; i < data.size(); i++) {
+                String result = JSON.toJSONString(data.get(i));
+                record(mcpServerUrl, toolNames.get(i), startNanos, result);
+                results.add(result);
+            }
+            return results;
+        } catch (Exception e) {
+            log.error("{} batch call tool error ", requestId(), e);
+        }
+        return null;
+    }
+
+    /**
+     * 经共享连接池请求 genie-client，并按 MCP Server 限制并发：一次请求占用的许可数为其中的调用数（不超过上限）
+     * 等待许可的时间计入调用超时
+     */
+    private static String post(GenieConfig genieConfig, String mcpServerUrl, String path, String body, int calls) throws Exception {
+        int maxConcurrency = Math.max(genieConfig.getMcpServerMaxConcurrency(), 1);
+        Semaphore semaphore = SERVER_PERMITS.computeIfAbsent(mcpServerUrl, k -> new Semaphore(maxConcurrency, true));
+        int permits = Math.min(calls, maxConcurrency);
+        long timeout = genieConfig.getMcpCallTimeout();
+        long waitStart = System.nanoTime();
+        if (!semaphore.tryAcquire(permits, timeout, TimeUnit.SECONDS)) {
+            throw new TimeoutException("mcp server " + mcpServerUrl + " busy, max concurrency " + maxConcurrency);
+        }
+        long waitNanos = System.nanoTime() - waitStart;
+        GenieMetrics.MCP_QUEUE_SECONDS.observe(GenieMetrics.seconds(waitNanos), mcpServerUrl);
+        try {
+            long remaining = Math.max(timeout - TimeUnit.NANOSECONDS.toSeconds(waitNanos), 1L);
+            return OkHttpUtil.postJson(genieConfig.getMcpClientUrl() + path, body, null, remaining);
+        } finally {
+            semaphore.release(permits);
+        }
+    }
+
+    /**
+     * 记录单个工具调用耗时，无结果或返回码非 200 计为失败
+     */
+    private static void record(String mcpServerUrl, String toolName, long startNanos, String response) {
+        GenieMetrics.MCP_CALL_SECONDS.observe(GenieMetrics.seconds(System.nanoTime() - startNanos), mcpServerUrl, toolName);
+        boolean success = false;
+        if (StringUtils.isNotEmpty(response)) {
+            try {
+                success = JSON.parseObject(response).getIntValue("code") == 200;
+            } catch (Exception e) {
+                log.warn("mcp tool {} response parse error: {}", toolName, e.getMessage());
+            }
+        }
+        if (!success) {
+            GenieMetrics.MCP_CALL_ERRORS.increment(1, mcpServerUrl, toolName);
+        }
+    }
+
+    private String requestId() {
+        return Objects.isNull(agentContext) ? "" : agentContext.getRequestId();
+    }
+}
@@ -0,0 +1,290 @@
+package com.jd.genie.agent.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * 进程内指标，按 Prometheus 文本格式导出（/actuator/prometheus）
+ * 1、计数器和直方图按标签值分序列，记录时只有一次 ConcurrentHashMap 查找和 LongAdder 累加，不加锁；高频路径可先 labels() 缓存序列
+ * 2、直方图使用固定分桶，记录时只累加所在桶，导出时再累加为累计桶，不保存样本
+ * 3、仪表在导出时回调取值，用于线程池、队列、执行中请求数等当前状态
+ */
+public class GenieMetrics {
+    /**
+     * 延迟分桶（秒），覆盖工具调用的毫秒级到 LLM 长输出的分钟级
+     */
+    public static final double[] SECONDS_BUCKETS = {0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300};
+    public static final double[] RATE_BUCKETS = {1, 2, 5, 10, 20, 30, 50, 75, 100, 150, 200, 500};
+    public static final double[] COUNT_BUCKETS = {1, 2, 3, 5, 8, 13, 20, 30, 50, 100};
+
+    private static final Map<String, Metric> METRICS = new ConcurrentHashMap<>();
+
+    // LLM
+    public static final Histogram LLM_REQUEST_SECONDS = histogram("genie_llm_request_seconds",
+            "LLM 请求总耗时", SECONDS_BUCKETS, "model", "stream");
+    public static final Histogram LLM_FIRST_TOKEN_SECONDS = histogram("genie_llm_first_token_seconds",
+            "LLM 流式请求首个增量到达耗时", SECONDS_BUCKETS, "model");
+    public static final Histogram LLM_TOKENS_PER_SECOND = histogram("genie_llm_tokens_per_second",
+            "LLM 流式输出速度（首个增量之后），仅统计返回了 usage 的流", RATE_BUCKETS, "model");
+    public static final Counter LLM_OUTPUT_TOKENS = counter("genie_llm_output_tokens_total",
+            "LLM 输出 token 数，取自响应的 usage.completion_tokens", "model");
+    public static final Counter LLM_STREAM_CHUNKS = counter("genie_llm_stream_chunks_total",
+            "LLM 流式响应的增量块数", "model");
+    public static final Histogram LLM_STREAM_CHUNKS_PER_SECOND = histogram("genie_llm_stream_chunks_per_second",
+            "LLM 流式增量块速度（首个增量之后）", RATE_BUCKETS, "model");
+    public static final Counter LLM_ERRORS = counter("genie_llm_errors_total",
+            "LLM 请求失败数", "model");
+
+    // 工具
+    public static final Histogram TOOL_SECONDS = histogram("genie_tool_seconds",
+            "工具调用耗时", SECONDS_BUCKETS, "tool");
+    public static final Counter TOOL_ERRORS = counter("genie_tool_errors_total",
+            "工具调用失败数（抛出异常或无结果）", "tool");
+
+    // MCP
+    public static final Histogram MCP_CALL_SECONDS = histogram("genie_mcp_call_seconds",
+            "MCP 工具调用耗时（含排队），批量调用按整批耗时计入每个工具", SECONDS_BUCKETS, "server", "tool");
+    public static final Counter MCP_CALL_ERRORS = counter("genie_mcp_call_errors_total",
+            "MCP 工具调用失败数（请求异常或返回码非 200）", "server", "tool");
+    public static final Histogram MCP_QUEUE_SECONDS = histogram("genie_mcp_queue_seconds",
+            "MCP 调用等待单 Server 并发许可的耗时", SECONDS_BUCKETS, "server");
+
+    // 智能体
+    public static final Counter AGENT_STEPS = counter("genie_agent_steps_total",
+            "智能体执行步数", "agent");
+    public static final Histogram AGENT_RUN_STEPS = histogram("genie_agent_run_steps",
+            "智能体单次运行的步数", COUNT_BUCKETS, "agent");
+
+    // SSE
+    public static final Counter SSE_FRAMES = counter("genie_sse_frames_total",
+            "SSE 输出帧数（按请求计，不含心跳）");
+    public static final Counter SSE_FRAME_BYTES = counter("genie_sse_frame_bytes_total",
+            "SSE 输出帧字节数（压缩前，按请求计）");
+    public static final Counter SSE_QUEUE_EVENTS = counter("genie_sse_queue_events_total",
+            "SSE 写队列事件数，按结果区分（所有队列合计）", "result");
+
+    private GenieMetrics() {
+    }
+
+    private abstract static class Metric {
+        protected final String name;
+        protected final String help;
+        protected final String type;
+        protected final String[] labelNames;
+
+        private Metric(String name, String help, String type, String[] labelNames) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelNames = labelNames;
+        }
+
+        protected abstract void write(StringBuilder sb);
+
+        protected String labelKey(String[] labelValues) {
+            if (labelValues.length != labelNames.length) {
+                throw new IllegalArgumentException(name + " expects labels " + String.join(",", labelNames));
+            }
+            return labelValues.length == 0 ? "" : String.join("\u0001", labelValues);
+        }
+    }
+
+    /**
+     * 计数器
+     */
+    public static class Counter extends Metric {
+        private final Map<String, CounterChild> children = new ConcurrentHashMap<>();
+
+        private Counter(String name, String help, String[] labelNames) {
+            super(name, help, "counter", labelNames);
+        }
+
+        public CounterChild labels(String... labelValues) {
+            return children.computeIfAbsent(labelKey(labelValues), k -> new CounterChild(labelValues.clone()));
+        }
+
+        public void increment(double amount, String... labelValues) {
+            labels(labelValues).increment(amount);
+        }
+
+        @Override
+        protected void write(StringBuilder sb) {
+            for (CounterChild child : new TreeMap<>(children).values()) {
+                sample(sb, name, labelNames, child.labelValues, null, child.value.sum());
+            }
+        }
+    }
+
+    public static class CounterChild {
+        private final String[] labelValues;
+        private final DoubleAdder value = new DoubleAdder();
+
+        private CounterChild(String[] labelValues) {
+            this.labelValues = labelValues;
+        }
+
+        public void increment(double amount) {
+            value.add(amount);
+        }
+    }
+
+    /**
+     * 固定分桶直方图
+     */
+    public static class Histogram extends Metric {
+        private final double[] buckets;
+        private final Map<String, HistogramChild> children = new ConcurrentHashMap<>();
+
+        private Histogram(String name, String help, double[] buckets, String[] labelNames) {
+            super(name, help, "histogram", labelNames);
+            this.buckets = buckets;
+        }
+
+        public HistogramChild labels(String... labelValues) {
+            return children.computeIfAbsent(labelKey(labelValues), k -> new HistogramChild(buckets, labelValues.clone()));
+        }
+
+        public void observe(double value, String... labelValues) {
+            labels(labelValues).observe(value);
+        }
+
+        @Override
+        protected void write(StringBuilder sb) {
+            for (HistogramChild child : new TreeMap<>(children).values()) {
+                long cumulative = 0;
+                for (int i = 0; i < buckets.length; i++) {
+                    cumulative += child.counts[i].sum();
+                    sample(sb, name + "_bucket", labelNames, child.labelValues, format(buckets[i]), cumulative);
+                }
+                cumulative += child.counts[buckets.length].sum();
+                sample(sb, name + "_bucket", labelNames, child.labelValues, "+Inf", cumulative);
+                sample(sb, name + "_sum", labelNames, child.labelValues, null, child.sum.sum());
+                sample(sb, name + "_count", labelNames, child.labelValues, null, cumulative);
+            }
+        }
+    }
+
+    public static class HistogramChild {
+        private final double[] buckets;
+        private final String[] labelValues;
+        private final LongAdder[] counts;
+        private final DoubleAdder sum = new DoubleAdder();
+
+        private HistogramChild(double[] buckets, String[] labelValues) {
+            this.buckets = buckets;
+            this.labelValues = labelValues;
+            this.counts = new LongAdder[buckets.length + 1];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+
+        public void observe(double value) {
+            int i = 0;
+            while (i < buckets.length && value > buckets[i]) {
+                i++;
+            }
+            counts[i].increment();
+            sum.add(value);
+        }
+    }
+
+    /**
+     * 导出时取值的仪表，type 为 counter 时用于导出其他模块已有的累计值
+     */
+    private static class FunctionMetric extends Metric {
+        private final Supplier<Number> supplier;
+
+        private FunctionMetric(String name, String help, String type, Supplier<Number> supplier) {
+            super(name, help, type, new String[0]);
+            this.supplier = supplier;
+        }
+
+        @Override
+        protected void write(StringBuilder sb) {
+            Number value = supplier.get();
+            sample(sb, name, labelNames, labelNames, null, value == null ? 0 : value.doubleValue());
+        }
+    }
+
+    public static Counter counter(String name, String help, String... labelNames) {
+        return (Counter) METRICS.computeIfAbsent(name, k -> new Counter(name, help, labelNames));
+    }
+
+    public static Histogram histogram(String name, String help, double[] buckets, String... labelNames) {
+        return (Histogram) METRICS.computeIfAbsent(name, k -> new Histogram(name, help, buckets, labelNames));
+    }
+
+    /**
+     * 注册仪表，同名仪表重复注册时替换取值函数
+     */
+    public static void gauge(String name, String help, Supplier<Number> supplier) {
+        METRICS.put(name, new FunctionMetric(name, help, "gauge", supplier));
+    }
+
+    /**
+     * 注册取值函数形式的计数器
+     */
+    public static void counterFunction(String name, String help, Supplier<Number> supplier) {
+        METRICS.put(name, new FunctionMetric(name, help, "counter", supplier));
+    }
+
+    public static double seconds(long nanos) {
+        return nanos / 1_000_000_000.0;
+    }
+
+    /**
+     * 按 Prometheus 文本格式（0.0.4）导出全部指标
+     */
+    public static String scrape() {
+        StringBuilder sb = new StringBuilder();
+        List<Metric> metrics = new ArrayList<>(new TreeMap<>(METRICS).values());
+        for (Metric metric : metrics) {
+            sb.append("# HELP ").append(metric.name).append(' ').append(metric.help).append('\n');
+            sb.append("# TYPE ").append(metric.name).append(' ').append(metric.type).append('\n');
+            metric.write(sb);
+        }
+        return sb.toString();
+    }
+
+    private static void sample(StringBuilder sb, String name, String[] labelNames, String[] labelValues, String le, double value) {
+        sb.append(name);
+        if (labelNames.length > 0 || le != null) {
+            sb.append('{');
+            for (int i = 0; i < labelNames.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(labelNames[i]).append("=\"").append(escape(labelValues[i])).append('"');
+            }
+            if (le != null) {
+                if (labelNames.length > 0) {
+                    sb.append(',');
+                }
+                sb.append("le=\"").append(le).append('"');
+            }
+            sb.append('}');
+        }
+        sb.append(' ').append(format(value)).append('\n');
+    }
+
+    private static String format(double value) {
+        if (value == Math.rint(value) && !Double.isInfinite(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        return String.valueOf(value);
+    }
+
+    private static String escape(String value) {
+        if (value == null) {
+            return "";
+        }
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -15,7 +15,23 @@ public class OkHttpUtil {
     private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
     /**
-     * 创建带有超时设置的 OkHttpClient
+     * 共享的连接池和调度器，各超时配置的客户端均由此派生，避免每次请求重新建立连接
+     * 异步请求（SSE）同样走该调度器，放开默认每个 host 5 个并发的限制
+     */
+    private static final OkHttpClient BASE_CLIENT;
+
+    static {
+        Dispatcher dispatcher = new Dispatcher();
+        dispatcher.setMaxRequests(256);
+        dispatcher.setMaxRequestsPerHost(256);
+        BASE_CLIENT = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(64, 5, TimeUnit.MINUTES))
+                .dispatcher(dispatcher)
+                .build();
+    }
+
+    /**
+     * 创建带有超时设置的 OkHttpClient，与其他客户端共享连接池
      *
      * @param connectTimeout 连接超时时间
      * @param readTimeout    读取超时时间
@@ -23,7 +39,7 @@ public class OkHttpUtil {
      * @return 配置好超时的 OkHttpClient 实例
      */
     private static OkHttpClient createClient(long connectTimeout, long readTimeout, long writeTimeout) {
-        return new OkHttpClient.Builder()
+        return BASE_CLIENT.newBuilder()
                 .connectTimeout(connectTimeout, TimeUnit.SECONDS)
                 .readTimeout(readTimeout, TimeUnit.SECONDS)
                 .writeTimeout(writeTimeout, TimeUnit.SECONDS)
@@ -1,5 +1,8 @@
 package com.jd.genie.agent.util;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.*;
 import java.util.regex.Matcher;
@@ -135,6 +138,18 @@ public class StringUtil {
         return uuid.toString();
     }
 
+    /**
+     * SHA-256 十六进制摘要，用于把请求中的ID转换为安全且一一对应的文件名
+     */
+    public static String sha256Hex(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(value.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public static void main(String[] args) {
 
         System.out.println(getUUID());
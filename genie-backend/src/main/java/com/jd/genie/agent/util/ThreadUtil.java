@@ -3,9 +3,11 @@ package com.jd.genie.agent.util;
 import org.apache.commons.lang3.concurrent.BasicThreadFactory;
 
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
 
 public class ThreadUtil {
     private static ThreadPoolExecutor executor = null;
+    private static final LongAdder rejectedCount = new LongAdder();
 
     private ThreadUtil() {
     }
@@ -14,6 +16,10 @@ public class ThreadUtil {
         if (executor == null) {
             ThreadFactory threadFactory = (new BasicThreadFactory.Builder()).namingPattern("exe-pool-%d").daemon(true).build();
             RejectedExecutionHandler handler = (r, executor) -> {
+                rejectedCount.increment();
+                if (r instanceof TrackedTask) {
+                    ((TrackedTask) r).rejected = true;
+                }
             };
             int maxPoolSize = Math.max(poolSize, 1000);
             executor = new ThreadPoolExecutor(poolSize, maxPoolSize, 60000L, TimeUnit.MILLISECONDS, new SynchronousQueue(), threadFactory, handler);
@@ -29,6 +35,19 @@ public class ThreadUtil {
         executor.execute(runnable);
     }
 
+    /**
+     * 提交任务，线程数达到上限被拒绝（丢弃）时返回 false，由调用方处理
+     */
+    public static boolean tryExecute(Runnable runnable) {
+        if (executor == null) {
+            initPool(100);
+        }
+
+        TrackedTask task = new TrackedTask(runnable);
+        executor.execute(task);
+        return !task.rejected;
+    }
+
     public static CountDownLatch getCountDownLatch(int count) {
         return new CountDownLatch(count);
     }
@@ -40,6 +59,42 @@ public class ThreadUtil {
         }
     }
 
+    public static int getActiveCount() {
+        return executor == null ? 0 : executor.getActiveCount();
+    }
+
+    public static int getPoolSize() {
+        return executor == null ? 0 : executor.getPoolSize();
+    }
+
+    public static int getMaxPoolSize() {
+        return executor == null ? 0 : executor.getMaximumPoolSize();
+    }
+
+    /**
+     * 线程数达到上限后被拒绝（丢弃）的任务数
+     */
+    public static long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    /**
+     * 拒绝策略在提交线程中同步执行，通过标记告知 tryExecute 任务已被丢弃
+     */
+    private static final class TrackedTask implements Runnable {
+        private final Runnable runnable;
+        private volatile boolean rejected;
+
+        private TrackedTask(Runnable runnable) {
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            runnable.run();
+        }
+    }
+
     public static void sleep(long millis) {
         try {
             Thread.sleep(millis);
@@ -4,6 +4,7 @@ import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
 import com.alibaba.fastjson.TypeReference;
 import com.jd.genie.agent.llm.LLMSettings;
+import com.jd.genie.agent.printer.StreamCoalescePolicy;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -180,6 +181,12 @@ public class GenieConfig {
     @Value("${autobots.autoagent.planner.max_steps:40}")
     private Integer plannerMaxSteps;
 
+    /**
+     * 按依赖调度计划步骤时的最大并行数
+     */
+    @Value("${autobots.autoagent.planner.max_parallel:3}")
+    private Integer plannerMaxParallel;
+
     @Value("${autobots.autoagent.executor.max_steps:40}")
     private Integer executorMaxSteps;
 
@@ -201,6 +208,30 @@ public class GenieConfig {
     @Value("${autobots.autoagent.mcp_server_url:}")
     private String[] mcpServerUrlArr;
 
+    /**
+     * MCP 工具列表缓存时长（毫秒），到期后后台重新发现
+     */
+    @Value("${autobots.autoagent.mcp_tool_ttl_ms:300000}")
+    private Long mcpToolTtlMs;
+
+    /**
+     * 单个 MCP Server 同时执行的调用数上限，超出的调用排队等待
+     */
+    @Value("${autobots.autoagent.mcp_server_max_concurrency:8}")
+    private Integer mcpServerMaxConcurrency;
+
+    /**
+     * MCP 工具调用超时（秒），包含排队等待时间
+     */
+    @Value("${autobots.autoagent.mcp_call_timeout:30}")
+    private Long mcpCallTimeout;
+
+    /**
+     * 同一步中发往同一 MCP Server 的多个调用合并为一次批量调用，需要 genie-client 支持 /v1/tool/batch_call
+     */
+    @Value("${autobots.autoagent.mcp_batch_call:false}")
+    private Boolean mcpBatchCall;
+
     @Value("${autobots.autoagent.summary.system_prompt:}")
     private String summarySystemPrompt;
 
@@ -210,6 +241,27 @@ public class GenieConfig {
     @Value("${autobots.autoagent.summary.message_size_limit:1000}")
     private Integer messageSizeLimit;
 
+    /**
+     * 是否流式输出最终总结
+     */
+    @Value("${autobots.autoagent.summary.stream:false}")
+    private Boolean summaryStream;
+
+    /**
+     * 总结历史超过该 token 数时分片并行摘要再汇总，0 表示关闭
+     */
+    @Value("${autobots.autoagent.summary.map_reduce.threshold_tokens:0}")
+    private Integer summaryMapReduceThreshold;
+
+    /**
+     * 分片摘要时每个分片的 token 上限
+     */
+    @Value("${autobots.autoagent.summary.map_reduce.chunk_tokens:8000}")
+    private Integer summaryMapReduceChunkTokens;
+
+    @Value("${autobots.autoagent.summary.map_reduce.map_prompt:}")
+    private String summaryMapPrompt;
+
     private Map<String, String> sensitivePatterns = new HashMap<>();
     @Value("${autobots.autoagent.sensitive_patterns:{}}")
     public void setSensitivePatterns(String jsonStr) {
@@ -224,11 +276,27 @@ public class GenieConfig {
         });
     }
 
-    private Map<String, String> messageInterval = new HashMap<>();
-    @Value("${autobots.autoagent.message_interval:{}}")
-    public void setMessageInterval(String jsonStr) {
-        this.messageInterval = JSON.parseObject(jsonStr, new TypeReference<Map<String, String>>() {
+    /**
+     * 流式增量合并策略，key 为消息类型，default 为缺省策略；未配置的字段取 StreamCoalescePolicy.DEFAULT
+     */
+    private Map<String, StreamCoalescePolicy> streamCoalescePolicies = new HashMap<>();
+    @Value("${autobots.autoagent.stream_coalesce:{}}")
+    public void setStreamCoalescePolicies(String jsonStr) {
+        Map<String, StreamCoalescePolicy> policies = JSON.parseObject(jsonStr, new TypeReference<Map<String, StreamCoalescePolicy>>() {
         });
+        Map<String, StreamCoalescePolicy> filled = new HashMap<>();
+        if (policies != null) {
+            for (Map.Entry<String, StreamCoalescePolicy> entry : policies.entrySet()) {
+                StreamCoalescePolicy policy = entry.getValue() == null ? new StreamCoalescePolicy() : entry.getValue();
+                StreamCoalescePolicy defaults = StreamCoalescePolicy.DEFAULT;
+                filled.put(entry.getKey(), StreamCoalescePolicy.builder()
+                        .intervalMs(policy.getIntervalMs() == null ? defaults.getIntervalMs() : policy.getIntervalMs())
+                        .maxBytes(policy.getMaxBytes() == null ? defaults.getMaxBytes() : policy.getMaxBytes())
+                        .sentenceBoundary(policy.getSentenceBoundary() == null ? defaults.getSentenceBoundary() : policy.getSentenceBoundary())
+                        .build());
+            }
+        }
+        this.streamCoalescePolicies = filled;
     }
 
     private String structParseToolSystemPrompt = "";
@@ -243,6 +311,38 @@ public class GenieConfig {
 	@Value("${autobots.multiagent.sseClient.connectTimeout:1800}")
 	private Integer sseClientConnectTimeout;
 
+	/**
+	 * 远程智能体服务地址（如 http://agent-host:8080），为空时在本进程内直接派发
+	 */
+	@Value("${autobots.multiagent.agentUrl:}")
+	private String multiAgentUrl;
+
+	/**
+	 * 智能体工作节点地址列表（逗号分隔），配置后按负载最低派发，优先于 agentUrl；节点探活间隔和超时（毫秒）
+	 */
+	@Value("${autobots.multiagent.workers:}")
+	private String multiAgentWorkers;
+
+	@Value("${autobots.multiagent.worker_health_interval_ms:5000}")
+	private Long workerHealthIntervalMs;
+
+	@Value("${autobots.multiagent.worker_health_timeout_ms:2000}")
+	private Long workerHealthTimeoutMs;
+
+	/**
+	 * 上游 LLM 流式请求的 HTTP 客户端：blocking 为每个 LLM 流占用一个阻塞读线程；nonblocking 由共享客户端异步推送 LLM 流，逐行背压
+	 * 只影响调用 LLM 的方式，对外的 SSE 接口不变
+	 */
+	@Value("${autobots.autoagent.llm_stream_client:blocking}")
+	private String llmStreamClient;
+
+	/**
+	 * 流式请求是否发送 stream_options.include_usage，开启后才统计输出 token 数与输出速度
+	 * 默认关闭，上游不支持该参数时会拒绝请求
+	 */
+	@Value("${autobots.autoagent.llm_stream_include_usage:false}")
+	private Boolean llmStreamIncludeUsage;
+
 	@Value("${autobots.autoagent.genie_sop_prompt:}")
 	private String genieSopPrompt;
 
@@ -252,5 +352,76 @@ public class GenieConfig {
     @Value("${autobots.autoagent.tool.task_complete_desc:当前task完成，请将当前task标记为 completed}")
     private String taskCompleteDesc;
 
+    /**
+     * SSE 单请求写队列容量，超出后中间增量消息合并或丢弃，最终消息始终保留
+     */
+    @Value("${autobots.autoagent.sse.queue_capacity:1024}")
+    private Integer sseQueueCapacity;
+
+    /**
+     * SSE 连接写出延迟阈值（毫秒），超过后非最终的增量消息合并或丢弃，0 表示关闭
+     */
+    @Value("${autobots.autoagent.sse.lag_threshold_ms:3000}")
+    private Long sseLagThresholdMs;
+
+    /**
+     * SSE 断线重连回放缓冲：单请求内存中保留的字节数，超出部分转存到本地分段文件；请求结束后缓冲保留时长
+     */
+    @Value("${autobots.autoagent.sse.replay_memory_bytes:4194304}")
+    private Long sseReplayMemoryBytes;
+
+    @Value("${autobots.autoagent.sse.replay_spill_dir:./sse_replay}")
+    private String sseReplaySpillDir;
+
+    @Value("${autobots.autoagent.sse.replay_spill_max_bytes:268435456}")
+    private Long sseReplaySpillMaxBytes;
+
+    /**
+     * 进程内所有回放日志（SSE 回放与全量结果）转存文件的总大小上限
+     */
+    @Value("${autobots.autoagent.sse.replay_spill_global_max_bytes:4294967296}")
+    private Long sseReplaySpillGlobalMaxBytes;
+
+    @Value("${autobots.autoagent.sse.replay_retain_ms:600000}")
+    private Long sseReplayRetainMs;
+
+    /**
+     * plan-solve 检查点，开启后每轮执行覆盖保存最新快照，可通过 /AutoAgent/resume 恢复
+     */
+    @Value("${autobots.autoagent.checkpoint.enable:false}")
+    private Boolean checkpointEnable;
+
+    @Value("${autobots.autoagent.checkpoint.dir:./checkpoint}")
+    private String checkpointDir;
+
+    /**
+     * 检查点超过该时长（毫秒）未更新视为已放弃，由后台清理
+     */
+    @Value("${autobots.autoagent.checkpoint.ttl_ms:86400000}")
+    private Long checkpointTtlMs;
+
+    /**
+     * 多轮对话会话存储目录、总大小上限（字节）与单会话历史长度上限（字符）
+     */
+    @Value("${autobots.autoagent.session.dir:./session}")
+    private String sessionDir;
+
+    @Value("${autobots.autoagent.session.max_bytes:268435456}")
+    private Long sessionMaxBytes;
+
+    @Value("${autobots.autoagent.session.max_history_chars:20000}")
+    private Integer sessionMaxHistoryChars;
+
+    /**
+     * 相同工具调用结果的复用窗口（毫秒），0 表示只合并并发中的调用
+     */
+    @Value("${autobots.autoagent.tool.single_flight.ttl_ms:30000}")
+    private Long toolSingleFlightTtlMs;
+
+    /**
+     * 允许合并调用的 MCP 工具名，逗号分隔，只应配置只读、无副作用的工具
+     */
+    @Value("${autobots.autoagent.tool.single_flight.mcp_allow:}")
+    private String toolSingleFlightMcpAllow;
 
 }
@@ -0,0 +1,42 @@
+package com.jd.genie.config;
+
+import com.jd.genie.agent.agent.StuckDetector;
+import com.jd.genie.agent.util.GenieMetrics;
+import com.jd.genie.agent.util.ThreadUtil;
+import com.jd.genie.util.SpillableFrameLog;
+import com.jd.genie.util.SseEventQueue;
+import jakarta.annotation.PostConstruct;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * 注册进程级仪表：线程池、SSE 写队列积压与延迟、回放日志转存大小、重复步骤检测计数
+ */
+@Configuration
+public class MetricsConfig {
+
+    @PostConstruct
+    public void registerGauges() {
+        // 智能体执行线程池，线程数到达上限后新任务被丢弃
+        GenieMetrics.gauge("genie_executor_active_threads", "智能体执行线程池活跃线程数", ThreadUtil::getActiveCount);
+        GenieMetrics.gauge("genie_executor_pool_size", "智能体执行线程池当前线程数", ThreadUtil::getPoolSize);
+        GenieMetrics.gauge("genie_executor_max_pool_size", "智能体执行线程池线程数上限", ThreadUtil::getMaxPoolSize);
+        GenieMetrics.counterFunction("genie_executor_rejected_total", "智能体执行线程池拒绝的任务数", ThreadUtil::getRejectedCount);
+
+        // SSE 写队列
+        GenieMetrics.gauge("genie_sse_writer_pool_size", "SSE 写线程数", SseEventQueue::getWriterPoolSize);
+        GenieMetrics.gauge("genie_sse_writer_active_threads", "SSE 写线程中正在写出的线程数", SseEventQueue::getWriterActiveCount);
+        GenieMetrics.gauge("genie_sse_active_queues", "活跃的 SSE 写队列数", () -> SseEventQueue.getActiveQueues().size());
+        GenieMetrics.gauge("genie_sse_queue_backlog", "所有 SSE 写队列积压的事件数",
+                () -> SseEventQueue.getActiveQueues().stream().mapToInt(SseEventQueue::size).sum());
+        GenieMetrics.gauge("genie_sse_queue_max_lag_seconds", "SSE 写队列当前最大写出延迟",
+                () -> SseEventQueue.getActiveQueues().stream().mapToLong(SseEventQueue::currentLagMs).max().orElse(0) / 1000.0);
+        GenieMetrics.gauge("genie_replay_spilled_bytes", "所有回放日志转存文件的总字节数", SpillableFrameLog::getGlobalSpilledBytes);
+
+        // 重复步骤检测
+        GenieMetrics.counterFunction("genie_agent_stuck_total", "检测到重复步骤的次数", StuckDetector::getStuckCount);
+        GenieMetrics.counterFunction("genie_agent_stuck_corrected_total", "重复步骤注入纠正提示的次数", StuckDetector::getCorrectedCount);
+        GenieMetrics.counterFunction("genie_agent_stuck_terminated_total", "重复步骤提前终止的次数", StuckDetector::getTerminatedCount);
+        GenieMetrics.counterFunction("genie_agent_stuck_saved_steps_total", "提前终止节省的步数", StuckDetector::getSavedSteps);
+        GenieMetrics.counterFunction("genie_agent_stuck_saved_chars_total", "提前终止节省的消息字符数（按平均每步消息长度估算）", StuckDetector::getSavedChars);
+    }
+}
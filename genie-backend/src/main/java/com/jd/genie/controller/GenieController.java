@@ -1,76 +1,51 @@
 package com.jd.genie.controller;
 
 import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONArray;
-import com.alibaba.fastjson.JSONObject;
-import com.jd.genie.agent.agent.AgentContext;
-import com.jd.genie.agent.printer.Printer;
 import com.jd.genie.agent.printer.SSEPrinter;
-import com.jd.genie.agent.tool.ToolCollection;
-import com.jd.genie.agent.tool.common.CodeInterpreterTool;
-import com.jd.genie.agent.tool.common.DeepSearchTool;
-import com.jd.genie.agent.tool.common.FileTool;
-import com.jd.genie.agent.tool.common.ReportTool;
-import com.jd.genie.agent.tool.mcp.McpTool;
-import com.jd.genie.agent.util.DateUtil;
-import com.jd.genie.agent.util.ThreadUtil;
+import com.jd.genie.agent.util.GenieMetrics;
 import com.jd.genie.config.GenieConfig;
+import com.jd.genie.model.dto.AgentCheckpoint;
+import com.jd.genie.model.dto.WorkerStatus;
 import com.jd.genie.model.req.AgentRequest;
 import com.jd.genie.model.req.GptQueryReq;
-import com.jd.genie.service.AgentHandlerService;
+import com.jd.genie.service.IAutoAgentService;
+import com.jd.genie.service.ICheckpointService;
 import com.jd.genie.service.IGptProcessService;
-import com.jd.genie.service.impl.AgentHandlerFactory;
+import com.jd.genie.service.IWorkerPoolService;
 import lombok.extern.slf4j.Slf4j;
-import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.io.UnsupportedEncodingException;
-import java.time.LocalDateTime;
-import java.util.*;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
+import java.util.List;
+import java.util.Objects;
 import java.util.concurrent.ScheduledFuture;
-import java.util.concurrent.TimeUnit;
 
 @Slf4j
 @RestController
 @RequestMapping("/")
 public class GenieController {
-    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(5);
-    private static final long HEARTBEAT_INTERVAL = 10_000L; // 10秒心跳间隔
     @Autowired
     protected GenieConfig genieConfig;
     @Autowired
-    private AgentHandlerFactory agentHandlerFactory;
+    private IAutoAgentService autoAgentService;
     @Autowired
     private IGptProcessService gptProcessService;
-
-    /**
-     * 开启SSE心跳
-     * @param emitter
-     * @param requestId
-     * @return
-     */
-    private ScheduledFuture<?> startHeartbeat(SseEmitter emitter, String requestId) {
-        return executor.scheduleAtFixedRate(() -> {
-            try {
-                // 发送心跳消息
-                log.info("{} send heartbeat", requestId);
-                emitter.send("heartbeat");
-            } catch (Exception e) {
-                // 发送心跳失败，关闭连接
-                log.error("{} heartbeat failed, closing connection", requestId, e);
-                emitter.completeWithError(e);
-            }
-        }, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
-    }
+    @Autowired
+    private ICheckpointService checkpointService;
+    @Autowired
+    private IWorkerPoolService workerPoolService;
 
     /**
      * 注册SSE事件
@@ -110,141 +85,83 @@ public class GenieController {
     public SseEmitter AutoAgent(@RequestBody AgentRequest request) throws UnsupportedEncodingException {
 
         log.info("{} auto agent request: {}", request.getRequestId(), JSON.toJSONString(request));
+        // 拼接输出类型
+        request.setQuery(autoAgentService.handleOutputStyle(request));
+        return startAgent(request, null);
+    }
 
+    /**
+     * 从最近的检查点恢复执行 plan-solve 任务
+     * @param request 只需 requestId
+     * @return
+     */
+    @PostMapping("/AutoAgent/resume")
+    public synchronized SseEmitter resumeAutoAgent(@RequestBody AgentRequest request) {
+        // 仍在执行的请求不能恢复，否则两次执行会写同一个检查点
+        if (autoAgentService.isRunning(request.getRequestId())) {
+            log.warn("{} still running, reject resume", request.getRequestId());
+            throw new ResponseStatusException(HttpStatus.CONFLICT, "request still running: " + request.getRequestId());
+        }
+        AgentCheckpoint checkpoint = checkpointService.loadLatest(request.getRequestId());
+        if (Objects.isNull(checkpoint) || Objects.isNull(checkpoint.getRequest())) {
+            log.warn("{} no checkpoint to resume", request.getRequestId());
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "checkpoint not found: " + request.getRequestId());
+        }
+        log.info("{} resume auto agent from step {}", request.getRequestId(), checkpoint.getStepIdx());
+        // 检查点中保存的请求已拼接过输出类型
+        return startAgent(checkpoint.getRequest(), checkpoint);
+    }
+
+    private SseEmitter startAgent(AgentRequest request, AgentCheckpoint checkpoint) {
+        // 排空中的节点拒绝新请求，网关改派其他节点
+        if (autoAgentService.isDraining()) {
+            log.warn("{} worker draining, reject request", request.getRequestId());
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "worker draining");
+        }
         Long AUTO_AGENT_SSE_TIMEOUT = 60 * 60 * 1000L;
 
         SseEmitter emitter = new SseEmitter(AUTO_AGENT_SSE_TIMEOUT);
-        // SSE心跳
-        ScheduledFuture<?> heartbeatFuture = startHeartbeat(emitter, request.getRequestId());
+        SSEPrinter ssePrinter = new SSEPrinter(emitter, request, request.getAgentType());
+        // 执行调度引擎
+        ScheduledFuture<?> heartbeatFuture = autoAgentService.startAgent(request, checkpoint, ssePrinter);
         // 监听SSE事件
         registerSSEMonitor(emitter, request.getRequestId(), heartbeatFuture);
-        // 拼接输出类型
-        request.setQuery(handleOutputStyle(request));
-        // 执行调度引擎
-        ThreadUtil.execute(() -> {
-            try {
-                Printer printer = new SSEPrinter(emitter, request, request.getAgentType());
-                AgentContext agentContext = AgentContext.builder()
-                        .requestId(request.getRequestId())
-                        .sessionId(request.getRequestId())
-                        .printer(printer)
-                        .query(request.getQuery())
-                        .task("")
-                        .dateInfo(DateUtil.CurrentDateInfo())
-                        .productFiles(new ArrayList<>())
-                        .taskProductFiles(new ArrayList<>())
-                        .sopPrompt(request.getSopPrompt())
-                        .basePrompt(request.getBasePrompt())
-                        .agentType(request.getAgentType())
-                        .isStream(Objects.nonNull(request.getIsStream()) ? request.getIsStream() : false)
-                        .build();
-
-                // 构建工具列表
-                agentContext.setToolCollection(buildToolCollection(agentContext, request));
-                // 根据数据类型获取对应的处理器
-                AgentHandlerService handler = agentHandlerFactory.getHandler(agentContext, request);
-                // 执行处理逻辑
-                handler.handle(agentContext, request);
-                // 关闭连接
-                emitter.complete();
-
-            } catch (Exception e) {
-                log.error("{} auto agent error", request.getRequestId(), e);
-            }
-        });
 
         return emitter;
     }
 
-
     /**
-     * html模式： query+以 html展示
-     * docs模式：query+以 markdown展示
-     * table 模式: query+以 excel 展示
+     * 工作节点负载上报，网关据此探活和选择节点
      */
-    private String handleOutputStyle(AgentRequest request) {
-        String query = request.getQuery();
-        Map<String, String> outputStyleMap = genieConfig.getOutputStylePrompts();
-        if (!StringUtils.isEmpty(request.getOutputStyle())) {
-            query += outputStyleMap.computeIfAbsent(request.getOutputStyle(), k -> "");
-        }
-        return query;
+    @GetMapping("/worker/status")
+    public WorkerStatus workerStatus() {
+        return autoAgentService.getWorkerStatus();
     }
 
-
     /**
-     * 构建工具列表
-     *
-     * @param agentContext
-     * @param request
-     * @return
+     * 排空节点：不再接收新请求，执行中的请求继续完成，activeRuns 为 0 后可安全下线
+     * @param draining false 时恢复接收请求
      */
-    private ToolCollection buildToolCollection(AgentContext agentContext, AgentRequest request) {
-
-        ToolCollection toolCollection = new ToolCollection();
-        toolCollection.setAgentContext(agentContext);
-        // file
-        FileTool fileTool = new FileTool();
-        fileTool.setAgentContext(agentContext);
-        toolCollection.addTool(fileTool);
-
-        // default tool
-        List<String> agentToolList = Arrays.asList(genieConfig.getMultiAgentToolListMap()
-                .getOrDefault("default", "search,code,report").split(","));
-        if (!agentToolList.isEmpty()) {
-            if (agentToolList.contains("code")) {
-                CodeInterpreterTool codeTool = new CodeInterpreterTool();
-                codeTool.setAgentContext(agentContext);
-                toolCollection.addTool(codeTool);
-            }
-            if (agentToolList.contains("report")) {
-                ReportTool htmlTool = new ReportTool();
-                htmlTool.setAgentContext(agentContext);
-                toolCollection.addTool(htmlTool);
-            }
-            if (agentToolList.contains("search")) {
-                DeepSearchTool deepSearchTool = new DeepSearchTool();
-                deepSearchTool.setAgentContext(agentContext);
-                toolCollection.addTool(deepSearchTool);
-            }
-        }
-
-        // mcp tool
-        try {
-            McpTool mcpTool = new McpTool();
-            mcpTool.setAgentContext(agentContext);
-            for (String mcpServer : genieConfig.getMcpServerUrlArr()) {
-                String listToolResult = mcpTool.listTool(mcpServer);
-                if (listToolResult.isEmpty()) {
-                    log.error("{} mcp server {} invalid", agentContext.getRequestId(), mcpServer);
-                    continue;
-                }
+    @PostMapping("/worker/drain")
+    public WorkerStatus drainWorker(@RequestParam(value = "draining", defaultValue = "true") boolean draining) {
+        autoAgentService.setDraining(draining);
+        return autoAgentService.getWorkerStatus();
+    }
 
-                JSONObject resp = JSON.parseObject(listToolResult);
-                if (resp.getIntValue("code") != 200) {
-                    log.error("{} mcp serve {} code: {}, message: {}", agentContext.getRequestId(), mcpServer,
-                            resp.getIntValue("code"), resp.getString("message"));
-                    continue;
-                }
-                JSONArray data = resp.getJSONArray("data");
-                if (data.isEmpty()) {
-                    log.error("{} mcp serve {} code: {}, message: {}", agentContext.getRequestId(), mcpServer,
-                            resp.getIntValue("code"), resp.getString("message"));
-                    continue;
-                }
-                for (int i = 0; i < data.size(); i++) {
-                    JSONObject tool = data.getJSONObject(i);
-                    String method = tool.getString("name");
-                    String description = tool.getString("description");
-                    String inputSchema = tool.getString("inputSchema");
-                    toolCollection.addMcpTool(method, description, inputSchema, mcpServer);
-                }
-            }
-        } catch (Exception e) {
-            log.error("{} add mcp tool failed", agentContext.getRequestId(), e);
-        }
+    /**
+     * 网关视角的工作节点池状态
+     */
+    @GetMapping("/worker/pool")
+    public List<WorkerStatus> workerPool() {
+        return workerPoolService.listWorkers();
+    }
 
-        return toolCollection;
+    /**
+     * Prometheus 指标导出
+     */
+    @GetMapping(value = "/actuator/prometheus", produces = "text/plain; version=0.0.4; charset=utf-8")
+    public String prometheus() {
+        return GenieMetrics.scrape();
     }
 
     /**
@@ -264,8 +181,25 @@ public class GenieController {
      * @return 返回SSE事件发射器，用于流式传输增量响应结果
      */
     @RequestMapping(value = "/web/api/v1/gpt/queryAgentStreamIncr", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    public SseEmitter queryAgentStreamIncr(@RequestBody GptQueryReq params) {
-        return gptProcessService.queryMultiAgentIncrStream(params);
+    public SseEmitter queryAgentStreamIncr(@RequestBody GptQueryReq params,
+                                           @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return gptProcessService.queryMultiAgentIncrStream(params, lastEventId);
+    }
+
+    /**
+     * 断线重连，回放 Last-Event-ID 之后的事件并接入实时流
+     * @param traceId 请求的 traceId
+     * @param lastEventId 客户端最后收到的事件 id
+     * @return
+     */
+    @RequestMapping(value = "/web/api/v1/gpt/reconnectAgentStreamIncr", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter reconnectAgentStreamIncr(@RequestParam("traceId") String traceId,
+                                               @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        SseEmitter emitter = gptProcessService.reconnectMultiAgentIncrStream(traceId, lastEventId);
+        if (Objects.isNull(emitter)) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "stream not found: " + traceId);
+        }
+        return emitter;
     }
 
 }
@@ -1,7 +1,5 @@
 package com.jd.genie.handler;
 
-import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
 import com.jd.genie.agent.enums.ResponseTypeEnum;
 import com.jd.genie.model.multi.EventMessage;
 import com.jd.genie.model.multi.EventResult;
@@ -25,8 +23,12 @@ public class BaseAgentResponseHandler {
         streamResult.setStatus(agentResponse.getFinish() ? SUCCESS : RUNNING);
         streamResult.setFinished(agentResponse.getFinish());
         if ("result".equals(agentResponse.getMessageType())) {
+            // 流式结论：response 为增量，responseAll 为累积内容
+            String responseAll = Boolean.FALSE.equals(agentResponse.getIsFinal())
+                    ? eventResult.appendResult(agentResponse.getResult())
+                    : agentResponse.getResult();
             streamResult.setResponse(agentResponse.getResult());
-            streamResult.setResponseAll(agentResponse.getResult());
+            streamResult.setResponseAll(responseAll);
         }
         streamResult.setReqId(request.getRequestId());
 
@@ -53,9 +55,9 @@ public class BaseAgentResponseHandler {
             case "plan_thought":
                 message.setMessageType(agentResponse.getMessageType());
                 message.setMessageOrder(eventResult.getAndIncrOrder(agentResponse.getMessageType()));
-                message.setResultMap(JSON.parseObject(JSONObject.toJSONString(agentResponse)));
-                if (isFinal && !eventResult.getResultMap().containsKey("plan_thought")) {
-                    eventResult.getResultMap().put("plan_thought", agentResponse.getPlanThought());
+                message.setResultMap(agentResponse);
+                if (isFinal) {
+                    eventResult.setResultMapPlanThought(agentResponse.getPlanThought());
                 }
                 break;
             case "plan":
@@ -65,7 +67,7 @@ public class BaseAgentResponseHandler {
                     message.setMessageOrder(1);
                     message.setResultMap(agentResponse.getPlan());
                     if (isFinal) {
-                        eventResult.getResultMap().put("plan", agentResponse.getPlan());
+                        eventResult.setResultMapPlan(agentResponse.getPlan());
                     }
                 } else {
                     // plan 更新，需要关联 task
@@ -73,7 +75,7 @@ public class BaseAgentResponseHandler {
                     message.setTaskOrder(eventResult.getTaskOrder().getAndIncrement());
                     message.setMessageType("task");
                     message.setMessageOrder(1);
-                    message.setResultMap(JSON.parseObject(JSONObject.toJSONString(agentResponse)));
+                    message.setResultMap(agentResponse);
                     if (isFinal) {
                         eventResult.setResultMapSubTask(message.getResultMap());
                     }
@@ -84,7 +86,7 @@ public class BaseAgentResponseHandler {
                 message.setTaskOrder(eventResult.getTaskOrder().getAndIncrement());
                 message.setMessageType(agentResponse.getMessageType());
                 message.setMessageOrder(1);
-                message.setResultMap(JSON.parseObject(JSONObject.toJSONString(agentResponse)));
+                message.setResultMap(agentResponse);
                 if (isFinal) {
                     List<Object> task = new ArrayList<>();
                     task.add(message.getResultMap());
@@ -100,15 +102,15 @@ public class BaseAgentResponseHandler {
                     String orderKey = eventResult.getTaskId() + ":" + agentResponse.getMessageType();
                     message.setMessageOrder(eventResult.getAndIncrOrder(orderKey));
                 }
-                message.setResultMap(JSON.parseObject(JSONObject.toJSONString(agentResponse)));
+                message.setResultMap(agentResponse);
                 if (isFinal && !isFilterFinal) {
                     eventResult.setResultMapSubTask(message.getResultMap());
                 }
                 break;
         }
 
-        // 增量缓存
-        resultMap.put("eventData", JSONObject.parseObject(JSON.toJSONString(message)));
+        // 增量数据保持类型化对象，写出时统一序列化一次
+        resultMap.put("eventData", message);
         streamResult.setResultMap(resultMap);
         return streamResult;
     }
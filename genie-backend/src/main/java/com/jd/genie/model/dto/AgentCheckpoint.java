@@ -0,0 +1,40 @@
+package com.jd.genie.model.dto;
+
+import com.jd.genie.agent.dto.File;
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.dto.Plan;
+import com.jd.genie.model.req.AgentRequest;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * plan-solve 执行检查点，每轮执行后覆盖保存，用于失败或中断后恢复
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AgentCheckpoint {
+    private String requestId;
+    /**
+     * 原始请求（已拼接输出类型）
+     */
+    private AgentRequest request;
+    /**
+     * 已完成的迭代轮数
+     */
+    private Integer stepIdx;
+    /**
+     * 规划输出的下一轮任务，恢复后从这些任务继续执行
+     */
+    private String planningResult;
+    private Plan plan;
+    private List<Message> planningMessages;
+    private List<Message> executorMessages;
+    private List<File> productFiles;
+    private Long timestamp;
+}
@@ -0,0 +1,28 @@
+package com.jd.genie.model.dto;
+
+import com.jd.genie.agent.dto.File;
+import com.jd.genie.agent.dto.Message;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/**
+ * 多轮对话会话，保存压缩后的历史消息和产出文件，下一轮对话时加载
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class AgentSession {
+    private String sessionId;
+    /**
+     * 压缩后的历史：用户问题、工具结果摘录和每轮最终回答
+     */
+    private List<Message> messages;
+    private List<File> productFiles;
+    private Integer turns;
+    private Long updateTime;
+}
@@ -0,0 +1,38 @@
+package com.jd.genie.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 智能体工作节点负载状态：节点通过 /worker/status 上报，网关据此选择负载最低的节点
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class WorkerStatus {
+    /**
+     * 节点地址，节点自身上报时为空
+     */
+    private String workerUrl;
+    /**
+     * 执行中的智能体数
+     */
+    private Integer activeRuns;
+    /**
+     * 已提交未开始执行的智能体数
+     */
+    private Integer queueDepth;
+    /**
+     * 排空中：不再接收新请求，执行中的请求继续完成
+     */
+    private Boolean draining;
+    /**
+     * 以下由网关维护：最近一次探活是否成功、本网关派发到该节点且未结束的请求数、最近探活时间
+     */
+    private Boolean healthy;
+    private Integer inFlight;
+    private Long lastCheckTime;
+}
@@ -1,11 +1,15 @@
 package com.jd.genie.model.multi;
 
+import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.jd.genie.util.SpillableFrameLog;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -14,6 +18,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 @NoArgsConstructor
 @AllArgsConstructor
 public class EventResult {
+    private static final long DEFAULT_REPLAY_MEMORY_BYTES = 1024 * 1024;
+
     /**
      * 增量消息计数
      */
@@ -77,40 +83,105 @@ public class EventResult {
     }};
 
     /**
-     * 全量结果（回放）
+     * 全量结果（回放）：最终的 plan_thought、plan、task、子任务结果按顺序序列化追加到日志，
+     * 内存超过上限时转存到本地分段文件，需要时再惰性读取重建，避免整轮结果常驻堆内存；分段文件不淘汰，保证结果完整
      */
-    private Map<String, Object> resultMap = new HashMap<>();
+    private SpillableFrameLog replayLog;
+    private boolean planThoughtRecorded;
 
-    public List<Object> getResulMapTask() {
-        if (this.resultMap.containsKey("tasks")) {
-            Object obj = this.resultMap.get("tasks");
-            return (List<Object>) obj;
+    private SpillableFrameLog replayLog() {
+        if (Objects.isNull(this.replayLog)) {
+            this.replayLog = new SpillableFrameLog("event-result", DEFAULT_REPLAY_MEMORY_BYTES,
+                    Paths.get(System.getProperty("java.io.tmpdir"), "genie-replay"), Long.MAX_VALUE);
         }
-        return null;
+        return this.replayLog;
     }
 
-    public void setResultMapTask(List<Object> task) {
-        List<Object> tasks = this.getResulMapTask();
-        if (Objects.isNull(tasks)) {
-            tasks = new ArrayList<Object>() {{
-                add(task);
-            }};
-            this.resultMap.put("tasks", tasks);
+    private void appendReplay(String type, Object data) {
+        JSONObject record = new JSONObject();
+        record.put("type", type);
+        record.put("data", data);
+        replayLog().append(JSON.toJSONBytes(record));
+    }
+
+    public void setResultMapPlanThought(String planThought) {
+        if (this.planThoughtRecorded) {
             return;
         }
-        tasks.add(task);
+        this.planThoughtRecorded = true;
+        appendReplay("plan_thought", planThought);
+    }
+
+    public void setResultMapPlan(Object plan) {
+        appendReplay("plan", plan);
+    }
+
+    public void setResultMapTask(List<Object> task) {
+        appendReplay("task", task);
     }
 
     public void setResultMapSubTask(Object subTask) {
-        List<Object> tasks = this.getResulMapTask();
-        if (Objects.isNull(tasks)) {
-            tasks = new ArrayList<Object>() {{
-                add(new ArrayList<>());
-            }};
-            this.resultMap.put("tasks", tasks);
+        appendReplay("sub_task", subTask);
+    }
+
+    /**
+     * 从回放日志重建全量结果
+     */
+    public Map<String, Object> getResultMap() {
+        Map<String, Object> resultMap = new HashMap<>();
+        List<Object> tasks = new ArrayList<>();
+        try {
+            replayLog().snapshot().read(0, (id, data) -> {
+                JSONObject record = JSON.parseObject(new String(data, StandardCharsets.UTF_8));
+                Object value = record.get("data");
+                switch (record.getString("type")) {
+                    case "task":
+                        tasks.add(value);
+                        break;
+                    case "sub_task":
+                        if (tasks.isEmpty()) {
+                            tasks.add(new ArrayList<>());
+                        }
+                        ((List<Object>) tasks.get(tasks.size() - 1)).add(value);
+                        break;
+                    default:
+                        resultMap.put(record.getString("type"), value);
+                        break;
+                }
+                return true;
+            });
+        } catch (Exception e) {
+            throw new IllegalStateException("read event result replay log failed", e);
+        }
+        // 全量结果必须完整，记录转存失败（读取时抛出）或分段被淘汰时直接报错，不返回缺少任务的结果
+        if (replayLog().getFirstId() > 1) {
+            throw new IllegalStateException("event result replay log lost records before id " + replayLog().getFirstId());
+        }
+        if (!tasks.isEmpty()) {
+            resultMap.put("tasks", tasks);
+        }
+        return resultMap;
+    }
+
+    /**
+     * 释放回放日志的内存和分段文件
+     */
+    public void closeReplay() {
+        if (Objects.nonNull(this.replayLog)) {
+            this.replayLog.close();
+        }
+    }
+
+    /**
+     * 流式结论累积内容
+     */
+    private StringBuilder resultBuffer = new StringBuilder();
+
+    public String appendResult(String delta) {
+        if (Objects.nonNull(delta)) {
+            this.resultBuffer.append(delta);
         }
-        List<Object> subTasks = (List<Object>) tasks.get(tasks.size() - 1);
-        subTasks.add(subTask);
+        return this.resultBuffer.toString();
     }
 
     /**
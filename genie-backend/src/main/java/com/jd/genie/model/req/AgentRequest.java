@@ -19,6 +19,10 @@ import java.util.Map;
 @AllArgsConstructor
 public class AgentRequest {
     private String requestId;
+    /**
+     * 多轮对话会话ID，为空时以 requestId 作为会话
+     */
+    private String sessionId;
     private String erp;
     private String query;
     private Integer agentType;
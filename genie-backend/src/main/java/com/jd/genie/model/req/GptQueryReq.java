@@ -20,4 +20,8 @@ public class GptQueryReq {
     private String outputStyle;
     private String traceId;
     private String user;
+    /**
+     * 紧凑消息格式：省略取默认值的固定字段（空 response、finished=false、packageType=result 等），减少流式传输字节
+     */
+    private Boolean compactEnvelope;
 }
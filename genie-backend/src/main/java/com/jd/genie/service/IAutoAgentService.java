@@ -0,0 +1,42 @@
+package com.jd.genie.service;
+
+import com.jd.genie.agent.printer.SSEPrinter;
+import com.jd.genie.model.dto.AgentCheckpoint;
+import com.jd.genie.model.dto.WorkerStatus;
+import com.jd.genie.model.req.AgentRequest;
+
+import java.util.concurrent.ScheduledFuture;
+
+public interface IAutoAgentService {
+
+    /**
+     * 拼接输出类型到 query.
+     */
+    String handleOutputStyle(AgentRequest request);
+
+    /**
+     * 异步执行智能体调度，执行期间定时发送心跳，结束后关闭 printer.
+     * @param request 请求
+     * @param checkpoint 恢复用检查点，可为空
+     * @param ssePrinter 事件输出
+     * @return 心跳任务，连接断开时可提前取消
+     */
+    ScheduledFuture<?> startAgent(AgentRequest request, AgentCheckpoint checkpoint, SSEPrinter ssePrinter);
+
+    /**
+     * 当前节点的负载状态，供网关选择工作节点.
+     */
+    WorkerStatus getWorkerStatus();
+
+    /**
+     * 设置排空状态：排空中不再接收新请求，执行中的请求继续完成.
+     */
+    void setDraining(boolean draining);
+
+    boolean isDraining();
+
+    /**
+     * 请求是否仍在本节点执行中.
+     */
+    boolean isRunning(String requestId);
+}
@@ -0,0 +1,26 @@
+package com.jd.genie.service;
+
+import com.jd.genie.model.dto.AgentCheckpoint;
+
+public interface ICheckpointService {
+
+    /**
+     * 是否开启检查点
+     */
+    boolean isEnabled();
+
+    /**
+     * 保存检查点，覆盖同一请求之前的检查点
+     */
+    void save(AgentCheckpoint checkpoint);
+
+    /**
+     * 读取请求最新的检查点，不存在返回 null
+     */
+    AgentCheckpoint loadLatest(String requestId);
+
+    /**
+     * 任务成功结束后删除检查点，失败的检查点保留供恢复
+     */
+    void remove(String requestId);
+}
@@ -6,7 +6,12 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 public interface IGptProcessService {
 
     /**
-     * 单智能体，多智能体 Agent 增量接口.
+     * 单智能体，多智能体 Agent 增量接口，携带 lastEventId 且请求仍在回放缓冲中时续传而不是重新执行.
      */
-    SseEmitter queryMultiAgentIncrStream(GptQueryReq req);
+    SseEmitter queryMultiAgentIncrStream(GptQueryReq req, String lastEventId);
+
+    /**
+     * 断线重连：回放 lastEventId 之后的事件并接入实时流，请求不存在或缓冲已清理时返回 null.
+     */
+    SseEmitter reconnectMultiAgentIncrStream(String traceId, String lastEventId);
 }
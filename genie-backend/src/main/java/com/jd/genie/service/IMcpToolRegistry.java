@@ -0,0 +1,18 @@
+package com.jd.genie.service;
+
+import com.jd.genie.agent.dto.tool.McpToolInfo;
+
+import java.util.Map;
+
+public interface IMcpToolRegistry {
+
+    /**
+     * 当前 MCP 工具快照（工具名 -> 工具定义），只读，后台刷新时整体替换.
+     */
+    Map<String, McpToolInfo> getTools();
+
+    /**
+     * 立即重新发现所有 MCP 服务的工具.
+     */
+    void refresh();
+}
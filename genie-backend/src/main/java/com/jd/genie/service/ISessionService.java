@@ -0,0 +1,25 @@
+package com.jd.genie.service;
+
+import com.jd.genie.agent.agent.AgentContext;
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.model.dto.AgentSession;
+
+import java.util.List;
+
+public interface ISessionService {
+
+    /**
+     * 读取会话，不存在返回 null
+     */
+    AgentSession load(String sessionId);
+
+    /**
+     * 将本轮执行历史压缩后追加到会话并保存
+     */
+    void saveTurn(AgentContext agentContext, String query, List<Message> messages, String answer);
+
+    /**
+     * 格式化会话历史，用于填充提示词中的 {{history_dialogue}}
+     */
+    String formatHistory(AgentSession session);
+}
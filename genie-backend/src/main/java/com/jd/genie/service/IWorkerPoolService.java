@@ -0,0 +1,32 @@
+package com.jd.genie.service;
+
+import com.jd.genie.model.dto.WorkerStatus;
+
+import java.util.List;
+
+public interface IWorkerPoolService {
+
+    /**
+     * 是否配置了远程智能体工作节点，未配置时在本进程内派发.
+     */
+    boolean isEnabled();
+
+    /**
+     * 选择健康、未排空且负载最低的节点.
+     * @param requestId 请求ID
+     * @return 节点地址，无可用节点时返回 null
+     */
+    String acquire(String requestId);
+
+    /**
+     * 派发结束后归还节点.
+     * @param workerUrl 节点地址
+     * @param failed 派发失败时节点标记为不可用，直到下一次探活成功
+     */
+    void release(String workerUrl, boolean failed);
+
+    /**
+     * 各节点最近一次上报的负载和健康状态.
+     */
+    List<WorkerStatus> listWorkers();
+}
@@ -0,0 +1,248 @@
+package com.jd.genie.service.impl;
+
+import com.jd.genie.agent.agent.AgentContext;
+import com.jd.genie.agent.dto.File;
+import com.jd.genie.agent.printer.CoalescingPrinter;
+import com.jd.genie.agent.printer.Printer;
+import com.jd.genie.agent.printer.SSEPrinter;
+import com.jd.genie.agent.tool.ToolCallCoalescer;
+import com.jd.genie.agent.tool.ToolCollection;
+import com.jd.genie.agent.tool.common.CodeInterpreterTool;
+import com.jd.genie.agent.tool.common.DeepSearchTool;
+import com.jd.genie.agent.tool.common.FileTool;
+import com.jd.genie.agent.tool.common.ReportTool;
+import com.jd.genie.agent.util.DateUtil;
+import com.jd.genie.agent.util.GenieMetrics;
+import com.jd.genie.agent.util.ThreadUtil;
+import com.jd.genie.config.GenieConfig;
+import com.jd.genie.model.dto.AgentCheckpoint;
+import com.jd.genie.model.dto.AgentSession;
+import com.jd.genie.model.dto.WorkerStatus;
+import com.jd.genie.model.req.AgentRequest;
+import com.jd.genie.service.AgentHandlerService;
+import com.jd.genie.service.IAutoAgentService;
+import com.jd.genie.service.IMcpToolRegistry;
+import com.jd.genie.service.ISessionService;
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * 智能体调度执行，HTTP 接口与同进程派发共用
+ */
+@Slf4j
+@Service
+public class AutoAgentServiceImpl implements IAutoAgentService {
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(5);
+    private static final long HEARTBEAT_INTERVAL = 10_000L; // 10秒心跳间隔
+    @Autowired
+    protected GenieConfig genieConfig;
+    @Autowired
+    private AgentHandlerFactory agentHandlerFactory;
+    @Autowired
+    private ISessionService sessionService;
+    @Autowired
+    private IMcpToolRegistry mcpToolRegistry;
+
+    /**
+     * 节点负载：执行中和已提交未开始的智能体数
+     */
+    private final AtomicInteger activeRuns = new AtomicInteger();
+    private final AtomicInteger queuedRuns = new AtomicInteger();
+    private volatile boolean draining = false;
+
+    /**
+     * 执行中的请求及其执行数，执行中的请求不允许从检查点恢复
+     */
+    private final Map<String, Integer> runningRequests = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void registerGauges() {
+        GenieMetrics.gauge("genie_agent_active_runs", "执行中的智能体数", activeRuns::get);
+        GenieMetrics.gauge("genie_agent_queued_runs", "已提交未开始执行的智能体数", queuedRuns::get);
+    }
+
+    /**
+     * 开启SSE心跳，心跳与业务消息经同一写队列发送
+     * @param printer
+     * @param requestId
+     * @return
+     */
+    private ScheduledFuture<?> startHeartbeat(SSEPrinter printer, String requestId) {
+        return executor.scheduleAtFixedRate(() -> {
+            // 发送心跳消息
+            log.info("{} send heartbeat", requestId);
+            printer.sendHeartbeat();
+        }, HEARTBEAT_INTERVAL, HEARTBEAT_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public ScheduledFuture<?> startAgent(AgentRequest request, AgentCheckpoint checkpoint, SSEPrinter ssePrinter) {
+        // 流式增量按时间/字节数/句子边界合并后再写出
+        Printer printer = new CoalescingPrinter(ssePrinter, genieConfig.getStreamCoalescePolicies());
+        // SSE心跳
+        ScheduledFuture<?> heartbeatFuture = startHeartbeat(ssePrinter, request.getRequestId());
+        // 执行调度引擎
+        // 提交前计数，保证提交后立即可见为执行中；线程池拒绝时回滚
+        runningRequests.merge(request.getRequestId(), 1, Integer::sum);
+        queuedRuns.incrementAndGet();
+        boolean submitted = ThreadUtil.tryExecute(() -> {
+            queuedRuns.decrementAndGet();
+            activeRuns.incrementAndGet();
+            try {
+                // 多轮对话：加载同一会话之前轮次的历史和产出文件
+                String sessionId = StringUtils.isNotEmpty(request.getSessionId()) ? request.getSessionId() : request.getRequestId();
+                AgentSession session = sessionId.equals(request.getRequestId()) ? null : sessionService.load(sessionId);
+                List<File> productFiles = new ArrayList<>();
+                if (Objects.nonNull(checkpoint) && Objects.nonNull(checkpoint.getProductFiles())) {
+                    productFiles.addAll(checkpoint.getProductFiles());
+                } else if (Objects.nonNull(session) && Objects.nonNull(session.getProductFiles())) {
+                    productFiles.addAll(session.getProductFiles());
+                }
+                AgentContext agentContext = AgentContext.builder()
+                        .requestId(request.getRequestId())
+                        .sessionId(sessionId)
+                        .printer(printer)
+                        .query(request.getQuery())
+                        .task("")
+                        .dateInfo(DateUtil.CurrentDateInfo())
+                        .productFiles(productFiles)
+                        .historyDialogue(sessionService.formatHistory(session))
+                        .taskProductFiles(new ArrayList<>())
+                        .sopPrompt(request.getSopPrompt())
+                        .basePrompt(request.getBasePrompt())
+                        .agentType(request.getAgentType())
+                        .isStream(Objects.nonNull(request.getIsStream()) ? request.getIsStream() : false)
+                        .resumeCheckpoint(checkpoint)
+                        .build();
+
+                // 构建工具列表
+                agentContext.setToolCollection(buildToolCollection(agentContext, request));
+                // 根据数据类型获取对应的处理器
+                AgentHandlerService handler = agentHandlerFactory.getHandler(agentContext, request);
+                // 执行处理逻辑
+                handler.handle(agentContext, request);
+
+            } catch (Exception e) {
+                log.error("{} auto agent error", request.getRequestId(), e);
+            } finally {
+                activeRuns.decrementAndGet();
+                // 检查点只在任务成功结束时删除，失败或异常时保留供恢复
+                runningRequests.computeIfPresent(request.getRequestId(), (k, v) -> v > 1 ? v - 1 : null);
+                heartbeatFuture.cancel(true);
+                // 待写队列中的消息全部发送后关闭连接
+                printer.close();
+            }
+        });
+        if (!submitted) {
+            log.error("{} auto agent rejected by thread pool", request.getRequestId());
+            queuedRuns.decrementAndGet();
+            runningRequests.computeIfPresent(request.getRequestId(), (k, v) -> v > 1 ? v - 1 : null);
+            heartbeatFuture.cancel(true);
+            printer.send("result", "任务执行异常，请联系管理员，任务终止。");
+            printer.close();
+        }
+
+        return heartbeatFuture;
+    }
+
+    @Override
+    public WorkerStatus getWorkerStatus() {
+        return WorkerStatus.builder()
+                .activeRuns(activeRuns.get())
+                .queueDepth(queuedRuns.get())
+                .draining(draining)
+                .build();
+    }
+
+    @Override
+    public void setDraining(boolean draining) {
+        this.draining = draining;
+        log.info("agent worker draining: {}, active runs: {}", draining, activeRuns.get());
+    }
+
+    @Override
+    public boolean isDraining() {
+        return draining;
+    }
+
+    @Override
+    public boolean isRunning(String requestId) {
+        return runningRequests.containsKey(requestId);
+    }
+
+    /**
+     * html模式： query+以 html展示
+     * docs模式：query+以 markdown展示
+     * table 模式: query+以 excel 展示
+     */
+    @Override
+    public String handleOutputStyle(AgentRequest request) {
+        String query = request.getQuery();
+        Map<String, String> outputStyleMap = genieConfig.getOutputStylePrompts();
+        if (!StringUtils.isEmpty(request.getOutputStyle())) {
+            query += outputStyleMap.computeIfAbsent(request.getOutputStyle(), k -> "");
+        }
+        return query;
+    }
+
+    /**
+     * 构建工具列表
+     *
+     * @param agentContext
+     * @param request
+     * @return
+     */
+    private ToolCollection buildToolCollection(AgentContext agentContext, AgentRequest request) {
+
+        ToolCollection toolCollection = new ToolCollection();
+        toolCollection.setAgentContext(agentContext);
+        Set<String> singleFlightMcpAllow = Arrays.stream(genieConfig.getToolSingleFlightMcpAllow().split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .collect(Collectors.toSet());
+        toolCollection.setCallCoalescer(new ToolCallCoalescer(agentContext.getRequestId(),
+                genieConfig.getToolSingleFlightTtlMs(), singleFlightMcpAllow));
+        // file
+        FileTool fileTool = new FileTool();
+        fileTool.setAgentContext(agentContext);
+        toolCollection.addTool(fileTool);
+
+        // default tool
+        List<String> agentToolList = Arrays.asList(genieConfig.getMultiAgentToolListMap()
+                .getOrDefault("default", "search,code,report").split(","));
+        if (!agentToolList.isEmpty()) {
+            if (agentToolList.contains("code")) {
+                CodeInterpreterTool codeTool = new CodeInterpreterTool();
+                codeTool.setAgentContext(agentContext);
+                toolCollection.addTool(codeTool);
+            }
+            if (agentToolList.contains("report")) {
+                ReportTool htmlTool = new ReportTool();
+                htmlTool.setAgentContext(agentContext);
+                toolCollection.addTool(htmlTool);
+            }
+            if (agentToolList.contains("search")) {
+                DeepSearchTool deepSearchTool = new DeepSearchTool();
+                deepSearchTool.setAgentContext(agentContext);
+                toolCollection.addTool(deepSearchTool);
+            }
+        }
+
+        // mcp tool：引用注册表的只读快照，不在请求路径上请求 MCP 服务
+        toolCollection.setMcpToolMap(mcpToolRegistry.getTools());
+
+        return toolCollection;
+    }
+}
@@ -0,0 +1,158 @@
+package com.jd.genie.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.jd.genie.agent.util.StringUtil;
+import com.jd.genie.config.GenieConfig;
+import com.jd.genie.model.dto.AgentCheckpoint;
+import com.jd.genie.service.ICheckpointService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 本地文件检查点存储
+ * 1、每个请求一个 json 文件，文件名为请求ID的 SHA-256，每轮保存时写临时文件后原子替换，只保留最新快照，中断不会留下残缺文件
+ * 2、任务成功结束时删除；失败、异常或进程退出留下的检查点保留供恢复，超过 ttl 未更新时由后台清理
+ * 3、同一请求的读写按请求ID哈希分段加锁，锁对象固定，不随请求数增长
+ */
+@Slf4j
+@Service
+public class CheckpointServiceImpl implements ICheckpointService {
+    @Autowired
+    private GenieConfig genieConfig;
+
+    /**
+     * 检查点锁分段，按请求ID哈希取锁
+     */
+    private final Object[] locks = new Object[64];
+    private final ScheduledExecutorService cleaner = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder().namingPattern("checkpoint-cleaner-%d").daemon(true).build());
+
+    {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (!isEnabled()) {
+            return;
+        }
+        long interval = Math.max(Math.min(genieConfig.getCheckpointTtlMs(), TimeUnit.HOURS.toMillis(1)), 1000L);
+        cleaner.scheduleWithFixedDelay(this::cleanExpired, 0, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        cleaner.shutdownNow();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return Boolean.TRUE.equals(genieConfig.getCheckpointEnable());
+    }
+
+    @Override
+    public void save(AgentCheckpoint checkpoint) {
+        if (!isEnabled() || StringUtils.isEmpty(checkpoint.getRequestId())) {
+            return;
+        }
+        checkpoint.setTimestamp(System.currentTimeMillis());
+        Path path = getPath(checkpoint.getRequestId());
+        byte[] data = JSON.toJSONString(checkpoint).getBytes(StandardCharsets.UTF_8);
+        synchronized (lock(checkpoint.getRequestId())) {
+            try {
+                Files.createDirectories(path.getParent());
+                Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+                Files.write(tmp, data);
+                Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                log.info("{} checkpoint saved, step: {}, size: {}", checkpoint.getRequestId(), checkpoint.getStepIdx(), data.length);
+            } catch (IOException e) {
+                log.error("{} checkpoint save error", checkpoint.getRequestId(), e);
+            }
+        }
+    }
+
+    @Override
+    public AgentCheckpoint loadLatest(String requestId) {
+        if (StringUtils.isEmpty(requestId)) {
+            return null;
+        }
+        Path path = getPath(requestId);
+        synchronized (lock(requestId)) {
+            if (!Files.exists(path)) {
+                return null;
+            }
+            try {
+                return JSON.parseObject(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), AgentCheckpoint.class);
+            } catch (Exception e) {
+                log.error("{} checkpoint load error", requestId, e);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void remove(String requestId) {
+        if (StringUtils.isEmpty(requestId)) {
+            return;
+        }
+        synchronized (lock(requestId)) {
+            try {
+                Files.deleteIfExists(getPath(requestId));
+            } catch (IOException e) {
+                log.error("{} checkpoint remove error", requestId, e);
+            }
+        }
+    }
+
+    /**
+     * 删除超过 ttl 未更新的检查点和残留的临时文件
+     */
+    private void cleanExpired() {
+        Path dir = Paths.get(genieConfig.getCheckpointDir());
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        long expireTime = System.currentTimeMillis() - genieConfig.getCheckpointTtlMs();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.{json,jsonl,tmp}")) {
+            for (Path file : files) {
+                try {
+                    if (Files.getLastModifiedTime(file).toMillis() < expireTime) {
+                        Files.deleteIfExists(file);
+                        log.info("expired checkpoint removed: {}", file.getFileName());
+                    }
+                } catch (IOException e) {
+                    log.warn("checkpoint clean error {}: {}", file.getFileName(), e.getMessage());
+                }
+            }
+        } catch (Exception e) {
+            log.error("checkpoint clean error", e);
+        }
+    }
+
+    private Object lock(String requestId) {
+        return locks[Math.floorMod(requestId.hashCode(), locks.length)];
+    }
+
+    private Path getPath(String requestId) {
+        // requestId 来自请求，取 SHA-256 作为文件名，保证安全且不同请求不会映射到同一文件
+        return Paths.get(genieConfig.getCheckpointDir(), StringUtil.sha256Hex(requestId) + ".json");
+    }
+}
@@ -4,8 +4,10 @@ import com.jd.genie.model.req.GptQueryReq;
 import com.jd.genie.service.IGptProcessService;
 import com.jd.genie.service.IMultiAgentService;
 import com.jd.genie.util.ChateiUtils;
+import com.jd.genie.util.SseReplayBuffer;
 import com.jd.genie.util.SseUtil;
 import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
@@ -18,15 +20,34 @@ public class GptProcessServiceImpl implements IGptProcessService {
     private IMultiAgentService multiAgentService;
 
     @Override
-    public SseEmitter queryMultiAgentIncrStream(GptQueryReq req) {
+    public SseEmitter queryMultiAgentIncrStream(GptQueryReq req, String lastEventId) {
         long timeoutMillis = TimeUnit.HOURS.toMillis(1);
         req.setUser("genie");
         req.setDeepThink(req.getDeepThink() == null ? 0: req.getDeepThink());
         String traceId = ChateiUtils.getRequestId(req);
         req.setTraceId(traceId);
+        // 客户端自动重试时会携带 Last-Event-ID
+        if (StringUtils.isNotEmpty(lastEventId)) {
+            SseEmitter resumed = reconnectMultiAgentIncrStream(traceId, lastEventId);
+            if (resumed != null) {
+                return resumed;
+            }
+        }
         final SseEmitter emitter = SseUtil.build(timeoutMillis, req.getTraceId());
         multiAgentService.searchForAgentRequest(req, emitter);
         log.info("queryMultiAgentIncrStream GptQueryReq request:{}", req);
         return emitter;
     }
+
+    @Override
+    public SseEmitter reconnectMultiAgentIncrStream(String traceId, String lastEventId) {
+        SseReplayBuffer replayBuffer = SseReplayBuffer.get(traceId);
+        if (replayBuffer == null) {
+            log.info("{} no replay buffer to reconnect", traceId);
+            return null;
+        }
+        final SseEmitter emitter = SseUtil.build(TimeUnit.HOURS.toMillis(1), traceId);
+        replayBuffer.attach(emitter, SseReplayBuffer.parseLastEventId(lastEventId));
+        return emitter;
+    }
 }
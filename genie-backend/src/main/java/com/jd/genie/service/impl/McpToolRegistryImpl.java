@@ -0,0 +1,187 @@
+package com.jd.genie.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.alibaba.fastjson.JSONArray;
+import com.alibaba.fastjson.JSONObject;
+import com.jd.genie.agent.dto.tool.McpToolInfo;
+import com.jd.genie.agent.tool.mcp.McpTool;
+import com.jd.genie.config.GenieConfig;
+import com.jd.genie.service.IMcpToolRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 进程级 MCP 工具注册表
+ * 1、启动时并行请求所有 MCP 服务的工具列表，解析一次后生成只读快照，请求构建工具集合时直接引用快照
+ * 2、后台按 TTL 并行刷新，工具列表无变化时不替换快照；某个服务刷新失败时保留其上次成功的工具
+ * 3、从未发现成功的服务每个检查周期都会重试
+ */
+@Slf4j
+@Service
+public class McpToolRegistryImpl implements IMcpToolRegistry {
+    /**
+     * 后台检查周期上限，TTL 更短时按 TTL 检查
+     */
+    private static final long CHECK_INTERVAL_MS = 30_000L;
+
+    @Autowired
+    private GenieConfig genieConfig;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder().namingPattern("mcp-registry-%d").daemon(true).build());
+    private final ExecutorService discoveryPool = Executors.newCachedThreadPool(
+            new BasicThreadFactory.Builder().namingPattern("mcp-discovery-%d").daemon(true).build());
+    private final Map<String, ServerTools> serverTools = new ConcurrentHashMap<>();
+    private volatile Map<String, McpToolInfo> snapshot = Collections.emptyMap();
+
+    /**
+     * 单个 MCP 服务最近一次成功发现的工具
+     */
+    private static class ServerTools {
+        private final String fingerprint;
+        private final List<McpToolInfo> tools;
+        private final long discoverTime;
+
+        private ServerTools(String fingerprint, List<McpToolInfo> tools, long discoverTime) {
+            this.fingerprint = fingerprint;
+            this.tools = tools;
+            this.discoverTime = discoverTime;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        if (getServers().isEmpty()) {
+            return;
+        }
+        // 首次发现在启动时完成（并行，耗时取决于最慢的服务），之后后台刷新
+        discover(true);
+        long interval = Math.min(Math.max(genieConfig.getMcpToolTtlMs(), 1000L), CHECK_INTERVAL_MS);
+        scheduler.scheduleWithFixedDelay(() -> discover(false), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+        discoveryPool.shutdownNow();
+    }
+
+    @Override
+    public Map<String, McpToolInfo> getTools() {
+        return snapshot;
+    }
+
+    @Override
+    public void refresh() {
+        discover(true);
+    }
+
+    /**
+     * 并行发现到期（或从未成功）的服务，有变化时重建快照
+     */
+    private synchronized void discover(boolean force) {
+        long now = System.currentTimeMillis();
+        List<String> servers = getServers();
+        List<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (String server : servers) {
+            ServerTools current = serverTools.get(server);
+            if (!force && Objects.nonNull(current) && now - current.discoverTime < genieConfig.getMcpToolTtlMs()) {
+                continue;
+            }
+            futures.add(CompletableFuture.supplyAsync(() -> discoverServer(server), discoveryPool));
+        }
+        if (futures.isEmpty()) {
+            return;
+        }
+        boolean changed = false;
+        for (CompletableFuture<Boolean> future : futures) {
+            changed |= future.join();
+        }
+        if (changed || snapshot.isEmpty()) {
+            Map<String, McpToolInfo> tools = new LinkedHashMap<>();
+            for (String server : servers) {
+                ServerTools discovered = serverTools.get(server);
+                if (Objects.nonNull(discovered)) {
+                    for (McpToolInfo tool : discovered.tools) {
+                        tools.put(tool.getName(), tool);
+                    }
+                }
+            }
+            snapshot = Collections.unmodifiableMap(tools);
+            log.info("mcp tool snapshot updated, servers: {}, tools: {}, cost: {}ms",
+                    servers.size(), tools.size(), System.currentTimeMillis() - now);
+        }
+    }
+
+    /**
+     * @return 工具列表是否有变化
+     */
+    private boolean discoverServer(String server) {
+        try {
+            // @PostConstruct 阶段 SpringContextHolder 可能尚未注入上下文，使用本服务注入的配置
+            String listToolResult = new McpTool().listTool(genieConfig, server);
+            if (StringUtils.isEmpty(listToolResult)) {
+                log.error("mcp server {} invalid", server);
+                return false;
+            }
+            JSONObject resp = JSON.parseObject(listToolResult);
+            JSONArray data = resp.getJSONArray("data");
+            if (resp.getIntValue("code") != 200 || Objects.isNull(data) || data.isEmpty()) {
+                log.error("mcp serve {} code: {}, message: {}", server, resp.getIntValue("code"), resp.getString("message"));
+                return false;
+            }
+            String fingerprint = data.toJSONString();
+            ServerTools previous = serverTools.get(server);
+            if (Objects.nonNull(previous) && previous.fingerprint.equals(fingerprint)) {
+                serverTools.put(server, new ServerTools(fingerprint, previous.tools, System.currentTimeMillis()));
+                return false;
+            }
+            List<McpToolInfo> tools = new ArrayList<>();
+            for (int i = 0; i < data.size(); i++) {
+                JSONObject tool = data.getJSONObject(i);
+                tools.add(McpToolInfo.builder()
+                        .name(tool.getString("name"))
+                        .desc(tool.getString("description"))
+                        .parameters(tool.getString("inputSchema"))
+                        .mcpServerUrl(server)
+                        .build());
+            }
+            serverTools.put(server, new ServerTools(fingerprint, Collections.unmodifiableList(tools), System.currentTimeMillis()));
+            log.info("mcp server {} tools {}: {}", server, Objects.isNull(previous) ? "discovered" : "changed", tools.size());
+            return true;
+        } catch (Exception e) {
+            log.error("mcp server {} discover error", server, e);
+            return false;
+        }
+    }
+
+    private List<String> getServers() {
+        List<String> servers = new ArrayList<>();
+        if (Objects.nonNull(genieConfig.getMcpServerUrlArr())) {
+            for (String server : genieConfig.getMcpServerUrlArr()) {
+                if (StringUtils.isNotBlank(server) && !servers.contains(server.trim())) {
+                    servers.add(server.trim());
+                }
+            }
+        }
+        return servers;
+    }
+}
@@ -1,10 +1,10 @@
 package com.jd.genie.service.impl;
 
 import com.alibaba.fastjson.JSON;
-import com.alibaba.fastjson.JSONObject;
 import com.jd.genie.agent.enums.AgentType;
 import com.jd.genie.agent.enums.AutoBotsResultStatus;
 import com.jd.genie.agent.enums.ResponseTypeEnum;
+import com.jd.genie.agent.printer.SSEPrinter;
 import com.jd.genie.config.GenieConfig;
 import com.jd.genie.handler.AgentResponseHandler;
 import com.jd.genie.model.dto.AutoBotsResult;
@@ -13,19 +13,35 @@ import com.jd.genie.model.req.AgentRequest;
 import com.jd.genie.model.req.GptQueryReq;
 import com.jd.genie.model.response.AgentResponse;
 import com.jd.genie.model.response.GptProcessResult;
+import com.jd.genie.service.IAutoAgentService;
 import com.jd.genie.service.IMultiAgentService;
+import com.jd.genie.service.IWorkerPoolService;
 import com.jd.genie.util.ChateiUtils;
+import com.jd.genie.util.SseEventQueue;
+import com.jd.genie.util.SseFrameSerializer;
+import com.jd.genie.util.SpillableFrameLog;
+import com.jd.genie.util.SseReplayBuffer;
+import jakarta.annotation.PostConstruct;
 import lombok.extern.slf4j.Slf4j;
-import okhttp3.*;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.beans.BeanUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @Slf4j
 @Component
@@ -34,13 +50,53 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
     private GenieConfig genieConfig;
     @Autowired
     private Map<AgentType, AgentResponseHandler> handlerMap;
+    @Autowired
+    private IAutoAgentService autoAgentService;
+    @Autowired
+    private IWorkerPoolService workerPoolService;
+
+    /**
+     * 远程派发共用的 HTTP 客户端（连接池复用，响应体异步推送）
+     */
+    private final HttpClient upstreamClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(60))
+            .build();
+
+    /**
+     * 上游事件流的空闲检查线程，HttpRequest.timeout 只限制等待响应头
+     */
+    private static final ScheduledExecutorService UPSTREAM_WATCHDOG = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder().namingPattern("upstream-watchdog-%d").daemon(true).build());
+
+    @PostConstruct
+    public void init() {
+        SpillableFrameLog.setGlobalSpillMaxBytes(genieConfig.getSseReplaySpillGlobalMaxBytes());
+    }
 
     @Override
     public AutoBotsResult searchForAgentRequest(GptQueryReq gptQueryReq, SseEmitter sseEmitter) {
         AgentRequest agentRequest = buildAgentRequest(gptQueryReq);
         log.info("{} start handle Agent request: {}", gptQueryReq.getRequestId(), JSON.toJSONString(agentRequest));
+        // 重复提交或超时重试（traceId 相同）时加入执行中的运行，从头回放事件
+        // attach 立即返回，回放在 emitter 交给 Spring 后异步进行，不会把整段输出堆积在 emitter 的早期发送缓存中
+        SseReplayBuffer running = SseReplayBuffer.get(agentRequest.getRequestId());
+        if (Objects.nonNull(running) && !running.isCompleted()) {
+            return joinRunning(agentRequest, running, sseEmitter);
+        }
+        // 事件经回放缓冲写出，断线后可携带 Last-Event-ID 重连
+        SseReplayBuffer replayBuffer = SseReplayBuffer.create(agentRequest.getRequestId(),
+                genieConfig.getSseReplayMemoryBytes(), Paths.get(genieConfig.getSseReplaySpillDir()),
+                genieConfig.getSseReplaySpillMaxBytes(), genieConfig.getSseReplayRetainMs())
+                .withSubscriberQueue(genieConfig.getSseQueueCapacity(), genieConfig.getSseLagThresholdMs());
+        // 并发的重复提交以登记结果为准
+        running = replayBuffer.register();
+        if (running != replayBuffer) {
+            return joinRunning(agentRequest, running, sseEmitter);
+        }
+        replayBuffer.attach(sseEmitter, 0);
         try {
-            handleMultiAgentRequest(agentRequest, sseEmitter);
+            handleMultiAgentRequest(agentRequest, replayBuffer, Boolean.TRUE.equals(gptQueryReq.getCompactEnvelope()));
         } catch (Exception e) {
             log.error("{}, error in requestMultiAgent, deepThink: {}, errorMsg: {}", gptQueryReq.getRequestId(), gptQueryReq.getDeepThink(), e.getMessage(), e);
             throw e;
@@ -51,91 +107,271 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
         return ChateiUtils.toAutoBotsResult(agentRequest, AutoBotsResultStatus.loading.name());
     }
 
-    public void handleMultiAgentRequest(AgentRequest autoReq,SseEmitter sseEmitter) {
-        long startTime = System.currentTimeMillis();
-        Request request = buildHttpRequest(autoReq);
-        log.info("{} agentRequest:{}", autoReq.getRequestId(), JSON.toJSONString(request));
-        OkHttpClient client = new OkHttpClient.Builder()
-                .connectTimeout(60, TimeUnit.SECONDS) // 设置连接超时时间为 60 秒
-                .readTimeout(genieConfig.getSseClientReadTimeout(), TimeUnit.SECONDS)    // 设置读取超时时间为 60 秒
-                .writeTimeout(1800, TimeUnit.SECONDS)   // 设置写入超时时间为 60 秒
-                .callTimeout(genieConfig.getSseClientConnectTimeout(), TimeUnit.SECONDS)    // 设置调用超时时间为 60 秒
-                .build();
+    /**
+     * 加入执行中的运行，不再启动新的运行
+     */
+    private AutoBotsResult joinRunning(AgentRequest agentRequest, SseReplayBuffer running, SseEmitter sseEmitter) {
+        log.info("{} duplicate submission, join running agent", agentRequest.getRequestId());
+        running.attach(sseEmitter, 0);
+        return ChateiUtils.toAutoBotsResult(agentRequest, AutoBotsResultStatus.loading.name());
+    }
 
-        client.newCall(request).enqueue(new Callback() {
-            @Override
-            public void onFailure(Call call, IOException e) {
-                log.error("onFailure {}", e.getMessage(), e);
+    /**
+     * 派发智能体请求：默认同进程派发，配置了工作节点时经共享的非阻塞 HTTP 客户端转发到负载最低的节点
+     */
+    public void handleMultiAgentRequest(AgentRequest autoReq, SseReplayBuffer replayBuffer, boolean compactEnvelope) {
+        SseEventQueue.Sink sink = buildResponseSink(autoReq, replayBuffer, compactEnvelope);
+        if (workerPoolService.isEnabled()) {
+            dispatchToWorker(autoReq, replayBuffer, compactEnvelope, sink, 0);
+            return;
+        }
+        // 同进程派发：智能体输出的 AgentResponse 经写队列直接交给响应处理链，不再经过 HTTP 回环和 SSE 文本解析
+        // 智能体侧会改写 query 等字段，使用副本与处理链隔离
+        AgentRequest agentRequest = new AgentRequest();
+        BeanUtils.copyProperties(autoReq, agentRequest);
+        agentRequest.setQuery(autoAgentService.handleOutputStyle(agentRequest));
+        log.info("{} agentRequest:{}", autoReq.getRequestId(), JSON.toJSONString(agentRequest));
+        autoAgentService.startAgent(agentRequest, null, new SSEPrinter(sink, agentRequest, agentRequest.getAgentType()));
+    }
+
+    /**
+     * 选择工作节点并派发，节点排空中（503）或连接失败时改派其他节点，每个节点最多尝试一次
+     */
+    private void dispatchToWorker(AgentRequest autoReq, SseReplayBuffer replayBuffer, boolean compactEnvelope,
+                                  SseEventQueue.Sink sink, int attempt) {
+        String workerUrl = attempt < workerPoolService.listWorkers().size() ? workerPoolService.acquire(autoReq.getRequestId()) : null;
+        if (Objects.isNull(workerUrl)) {
+            replayBuffer.send(SseFrameSerializer.serialize(buildDefaultAutobotsResult(autoReq, "no available agent worker"), compactEnvelope), true);
+            sink.complete();
+            return;
+        }
+        dispatchRemote(workerUrl, autoReq, replayBuffer, compactEnvelope, sink, (started, failed) -> {
+            workerPoolService.release(workerUrl, failed);
+            if (!started) {
+                dispatchToWorker(autoReq, replayBuffer, compactEnvelope, sink, attempt + 1);
             }
+        });
+    }
 
+    /**
+     * 智能体事件处理链：AgentResponse 经响应处理器转换后写入回放缓冲
+     */
+    private SseEventQueue.Sink buildResponseSink(AgentRequest autoReq, SseReplayBuffer replayBuffer, boolean compactEnvelope) {
+        long startTime = System.currentTimeMillis();
+        AgentResponseHandler handler = handlerMap.get(AgentType.fromCode(autoReq.getAgentType()));
+        List<AgentResponse> agentRespList = new ArrayList<>();
+        EventResult eventResult = new EventResult();
+        // 全量结果按请求限制内存，超出部分转存；最终结果必须完整，转存文件不淘汰
+        eventResult.setReplayLog(new SpillableFrameLog("event-result-" + autoReq.getRequestId(),
+                genieConfig.getSseReplayMemoryBytes(), Paths.get(genieConfig.getSseReplaySpillDir()),
+                Long.MAX_VALUE));
+        return new SseEventQueue.Sink() {
             @Override
-            public void onResponse(Call call, Response response) {
-                List<AgentResponse> agentRespList = new ArrayList<>();
-                EventResult eventResult = new EventResult();
-                ResponseBody responseBody = response.body();
-                if (responseBody == null) {
-                    log.error("{} auto agent empty response body", autoReq.getRequestId());
+            public void write(Object event) {
+                if (SSEPrinter.isHeartbeat(event)) {
+                    replayBuffer.sendTransient(SseFrameSerializer.serialize(buildHeartbeatData(autoReq.getRequestId()), compactEnvelope));
+                    return;
+                }
+                AgentResponse agentResponse = (AgentResponse) event;
+                GptProcessResult result = handler.handle(autoReq, agentResponse, agentRespList, eventResult);
+                if (Objects.isNull(result)) {
                     return;
                 }
+                // 仅显式标记为非最终的增量帧在慢连接上可被丢弃
+                boolean isFinal = result.isFinished() || !Boolean.FALSE.equals(agentResponse.getIsFinal());
+                replayBuffer.send(SseFrameSerializer.serialize(result, compactEnvelope), isFinal);
+                if (result.isFinished()) {
+                    // 记录任务执行时间
+                    log.info("{} task total cost time:{}ms", autoReq.getRequestId(), System.currentTimeMillis() - startTime);
+                    replayBuffer.complete();
+                }
+            }
+
+            @Override
+            public void complete() {
+                replayBuffer.complete();
+                eventResult.closeReplay();
+            }
+
+            @Override
+            public void completeWithError(Throwable e) {
+                log.error("{} auto agent stream error", autoReq.getRequestId(), e);
+                replayBuffer.complete();
+                eventResult.closeReplay();
+            }
+        };
+    }
+
+    /**
+     * 派发结束回调
+     */
+    private interface DispatchCallback {
+        /**
+         * @param started 节点是否已接收请求，未接收时可改派其他节点
+         * @param failed  节点是否不可用
+         */
+        void onFinish(boolean started, boolean failed);
+    }
 
-                try {
-                    if (!response.isSuccessful()) {
-                        log.error("{}, response body is failed: {}", autoReq.getRequestId(), responseBody.string());
-                        return;
-                    }
-
-                    String line;
-                    BufferedReader reader = new BufferedReader(
-                            new InputStreamReader(responseBody.byteStream())
-                    );
-
-                    while ((line = reader.readLine()) != null) {
-                        if (!line.startsWith("data:")) {
-                            continue;
-                        }
-
-                        String data = line.substring(5);
-                        if (data.equals("[DONE]")) {
-                            log.info("{} data equals with [DONE] {}:", autoReq.getRequestId(), data);
-                            break;
-                        }
-
-                        if (data.startsWith("heartbeat")) {
-                            GptProcessResult result = buildHeartbeatData(autoReq.getRequestId());
-                            sseEmitter.send(result);
-                            log.info("{} heartbeat-data: {}", autoReq.getRequestId(), data);
-                            continue;
-                        }
-
-                        log.info("{} recv from autocontroller: {}", autoReq.getRequestId(), data);
-                        AgentResponse agentResponse = JSON.parseObject(data, AgentResponse.class);
-                        AgentType agentType = AgentType.fromCode(autoReq.getAgentType());
-                        AgentResponseHandler handler = handlerMap.get(agentType);
-                        GptProcessResult result = handler.handle(autoReq, agentResponse,agentRespList, eventResult);
-                        sseEmitter.send(result);
-                        if (result.isFinished()) {
-                            // 记录任务执行时间
-                            log.info("{} task total cost time:{}ms", autoReq.getRequestId(), System.currentTimeMillis() - startTime);
-                            sseEmitter.complete();
-                        }
-                    }
-                }catch (Exception e) {
-                    log.error("", e);
+    /**
+     * 远程派发：共享客户端复用连接池，SSE 响应按行异步推送给订阅者，不为每个流占用阻塞读线程
+     */
+    private void dispatchRemote(String workerUrl, AgentRequest autoReq, SseReplayBuffer replayBuffer, boolean compactEnvelope,
+                                SseEventQueue.Sink sink, DispatchCallback callback) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(workerUrl + "/AutoAgent"))
+                .timeout(Duration.ofSeconds(genieConfig.getSseClientConnectTimeout()))
+                .header("Content-Type", "application/json")
+                .header("Accept", "text/event-stream")
+                .POST(HttpRequest.BodyPublishers.ofString(JSON.toJSONString(autoReq)))
+                .build();
+        log.info("{} agentRequest:{}", autoReq.getRequestId(), request.uri());
+        // 上游停滞超过读取超时：发送失败结果后结束，客户端不会一直等待无结论的流
+        UpstreamLineSubscriber subscriber = new UpstreamLineSubscriber(autoReq.getRequestId(), sink,
+                TimeUnit.SECONDS.toNanos(genieConfig.getSseClientReadTimeout()), () -> {
+            replayBuffer.send(SseFrameSerializer.serialize(
+                    buildDefaultAutobotsResult(autoReq, "agent worker read timeout"), compactEnvelope), true);
+            sink.complete();
+        });
+        upstreamClient.sendAsync(request, responseInfo -> {
+            if (responseInfo.statusCode() != 200) {
+                log.error("{}, upstream response status: {}", autoReq.getRequestId(), responseInfo.statusCode());
+                return HttpResponse.BodySubscribers.replacing(null);
+            }
+            return HttpResponse.BodySubscribers.fromLineSubscriber(subscriber);
+        }).whenComplete((response, e) -> {
+            if (Objects.nonNull(e)) {
+                log.error("{} upstream request failed {}", autoReq.getRequestId(), e.getMessage(), e);
+                if (subscriber.isSubscribed()) {
+                    sink.completeWithError(e);
+                    callback.onFinish(true, true);
+                } else {
+                    // 节点未接收请求（连接失败等），改派其他节点
+                    callback.onFinish(false, true);
                 }
+            } else if (response.statusCode() == 503) {
+                // 节点排空中，下一次探活前不再派发到该节点
+                callback.onFinish(false, true);
+            } else if (response.statusCode() != 200) {
+                // 没有事件流可转发，发送失败结果后结束，客户端不会收到无结论的空流
+                replayBuffer.send(SseFrameSerializer.serialize(
+                        buildDefaultAutobotsResult(autoReq, "agent worker error " + response.statusCode()), compactEnvelope), true);
+                sink.complete();
+                callback.onFinish(true, true);
+            } else {
+                callback.onFinish(true, false);
             }
         });
     }
 
-    private Request buildHttpRequest(AgentRequest autoReq) {
-        String reqId = autoReq.getRequestId();
-        autoReq.setRequestId(autoReq.getRequestId());
-        String url = "http://127.0.0.1:8080/AutoAgent";
-        RequestBody body = RequestBody.create(
-                MediaType.parse("application/json"),
-                JSONObject.toJSONString(autoReq)
-        );
-        autoReq.setRequestId(reqId);
-        return new Request.Builder().url(url).post(body).build();
+    /**
+     * 解析上游 SSE 文本行并交给事件处理链
+     * 开始接收后超过读取超时没有新行时取消订阅并执行超时回调，检查方式与 LLM 流式读取一致
+     */
+    private static class UpstreamLineSubscriber implements Flow.Subscriber<String> {
+        private final String requestId;
+        private final SseEventQueue.Sink sink;
+        private final long readTimeoutNanos;
+        private final Runnable onReadTimeout;
+        private final AtomicBoolean done = new AtomicBoolean(false);
+        private volatile Flow.Subscription subscription;
+        private volatile boolean subscribed = false;
+        private volatile long lastReadNanos;
+        private volatile ScheduledFuture<?> watchdog;
+
+        private UpstreamLineSubscriber(String requestId, SseEventQueue.Sink sink, long readTimeoutNanos, Runnable onReadTimeout) {
+            this.requestId = requestId;
+            this.sink = sink;
+            this.readTimeoutNanos = readTimeoutNanos;
+            this.onReadTimeout = onReadTimeout;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            this.subscribed = true;
+            this.lastReadNanos = System.nanoTime();
+            armWatchdog(readTimeoutNanos);
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        private boolean isSubscribed() {
+            return subscribed;
+        }
+
+        @Override
+        public void onNext(String line) {
+            lastReadNanos = System.nanoTime();
+            if (done.get() || !line.startsWith("data:")) {
+                return;
+            }
+            String data = line.substring(5);
+            try {
+                if (data.equals("[DONE]")) {
+                    log.info("{} data equals with [DONE] {}:", requestId, data);
+                    finish(null);
+                    subscription.cancel();
+                    return;
+                }
+                sink.write(data.startsWith("heartbeat") ? data : JSON.parseObject(data, AgentResponse.class));
+            } catch (Exception e) {
+                log.error("{} upstream event handle error", requestId, e);
+                finish(e);
+                subscription.cancel();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            finish(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            finish(null);
+        }
+
+        private void finish(Throwable e) {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            cancelWatchdog();
+            if (Objects.isNull(e)) {
+                sink.complete();
+            } else {
+                sink.completeWithError(e);
+            }
+        }
+
+        /**
+         * 到期时检查距上一行的时间，未超时则按剩余时间重新计时，每个流只有一个待执行的检查
+         */
+        private void armWatchdog(long delayNanos) {
+            watchdog = UPSTREAM_WATCHDOG.schedule(this::checkIdle, delayNanos, TimeUnit.NANOSECONDS);
+        }
+
+        private void checkIdle() {
+            if (done.get()) {
+                return;
+            }
+            long idleNanos = System.nanoTime() - lastReadNanos;
+            if (idleNanos < readTimeoutNanos) {
+                armWatchdog(readTimeoutNanos - idleNanos);
+                return;
+            }
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            subscription.cancel();
+            log.error("{} upstream stream idle for {}s, cancelled", requestId, TimeUnit.NANOSECONDS.toSeconds(idleNanos));
+            onReadTimeout.run();
+        }
+
+        private void cancelWatchdog() {
+            ScheduledFuture<?> current = watchdog;
+            if (current != null) {
+                current.cancel(false);
+            }
+        }
     }
 
     private GptProcessResult buildDefaultAutobotsResult(AgentRequest autoReq, String errMsg) {
@@ -158,6 +394,7 @@ public class MultiAgentServiceImpl implements IMultiAgentService {
     private AgentRequest buildAgentRequest(GptQueryReq req) {
         AgentRequest request = new AgentRequest();
         request.setRequestId(req.getTraceId());
+        request.setSessionId(req.getSessionId());
         request.setErp(req.getUser());
         request.setQuery(req.getQuery());
         request.setAgentType(req.getDeepThink() == 0 ? 5: 3);
@@ -6,21 +6,28 @@ import com.jd.genie.agent.agent.ExecutorAgent;
 import com.jd.genie.agent.agent.PlanningAgent;
 import com.jd.genie.agent.agent.SummaryAgent;
 import com.jd.genie.agent.dto.File;
+import com.jd.genie.agent.dto.Plan;
 import com.jd.genie.agent.dto.TaskSummaryResult;
 import com.jd.genie.agent.enums.AgentState;
 import com.jd.genie.agent.enums.AgentType;
+import com.jd.genie.agent.printer.Printer;
 import com.jd.genie.agent.util.ThreadUtil;
 import com.jd.genie.config.GenieConfig;
+import com.jd.genie.model.dto.AgentCheckpoint;
 import com.jd.genie.model.req.AgentRequest;
 import com.jd.genie.service.AgentHandlerService;
+import com.jd.genie.service.ICheckpointService;
+import com.jd.genie.service.ISessionService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
 
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -30,6 +37,12 @@ public class PlanSolveHandlerImpl implements AgentHandlerService {
     @Autowired
     private GenieConfig genieConfig;
 
+    @Autowired
+    private ICheckpointService checkpointService;
+
+    @Autowired
+    private ISessionService sessionService;
+
 
     @Override
     public String handle(AgentContext agentContext, AgentRequest request) {
@@ -37,10 +50,25 @@ public class PlanSolveHandlerImpl implements AgentHandlerService {
         PlanningAgent planning = new PlanningAgent(agentContext);
         ExecutorAgent executor = new ExecutorAgent(agentContext);
         SummaryAgent summary = new SummaryAgent(agentContext);
-        summary.setSystemPrompt(summary.getSystemPrompt().replace("{{query}}", request.getQuery()));
 
-        String planningResult = planning.run(agentContext.getQuery());
+        String planningResult;
         int stepIdx = 0;
+        AgentCheckpoint checkpoint = agentContext.getResumeCheckpoint();
+        if (Objects.nonNull(checkpoint)) {
+            // 从检查点恢复计划、历史与文件，跳过已完成的轮次
+            restoreCheckpoint(checkpoint, planning, executor);
+            planningResult = checkpoint.getPlanningResult();
+            stepIdx = Objects.isNull(checkpoint.getStepIdx()) ? 0 : checkpoint.getStepIdx();
+            log.info("{} resume from checkpoint, step: {}", agentContext.getRequestId(), stepIdx);
+        } else {
+            planningResult = planning.run(agentContext.getQuery());
+            saveCheckpoint(agentContext, request, planning, executor, planningResult, stepIdx);
+        }
+        // 计划声明了步骤依赖时，按依赖关系调度执行
+        Plan plan = planning.getPlanningTool().getPlan();
+        if (Objects.nonNull(plan) && plan.hasDependencies()) {
+            return handleByDependencies(agentContext, request, planning, executor, summary, stepIdx);
+        }
         int maxStepNum = genieConfig.getPlannerMaxSteps();
         while (stepIdx <= maxStepNum) {
             List<String> planningResults = Arrays.stream(planningResult.split("<sep>"))
@@ -53,12 +81,13 @@ public class PlanSolveHandlerImpl implements AgentHandlerService {
             } else {
                 Map<String, String> tmpTaskResult = new ConcurrentHashMap<>();
                 CountDownLatch taskCount = ThreadUtil.getCountDownLatch(planningResults.size());
-                int memoryIndex = executor.getMemory().size();
                 List<ExecutorAgent> slaveExecutors = new ArrayList<>();
                 for (String task : planningResults) {
-                    ExecutorAgent slaveExecutor = new ExecutorAgent(agentContext);
+                    // 每个并行任务使用独立的子上下文，结束后统一合并
+                    ExecutorAgent slaveExecutor = new ExecutorAgent(agentContext.fork());
                     slaveExecutor.setState(executor.getState());
-                    slaveExecutor.getMemory().addMessages(executor.getMemory().getMessages());
+                    // 共享主执行器的历史，不复制消息
+                    slaveExecutor.setMemory(executor.getMemory().fork());
                     slaveExecutors.add(slaveExecutor);
                     ThreadUtil.execute(() -> {
                         String taskResult = slaveExecutor.run(task);
@@ -68,9 +97,8 @@ public class PlanSolveHandlerImpl implements AgentHandlerService {
                 }
                 ThreadUtil.await(taskCount);
                 for (ExecutorAgent slaveExecutor : slaveExecutors) {
-                    for (int i = memoryIndex; i < slaveExecutor.getMemory().size(); i++) {
-                        executor.getMemory().addMessage(slaveExecutor.getMemory().get(i));
-                    }
+                    agentContext.join(slaveExecutor.getContext());
+                    executor.getMemory().addMessages(slaveExecutor.getMemory().getForkedMessages());
                     slaveExecutor.getMemory().clear();
                     executor.setState(slaveExecutor.getState());
                 }
@@ -79,26 +107,7 @@ public class PlanSolveHandlerImpl implements AgentHandlerService {
             planningResult = planning.run(executorResult);
             if ("finish".equals(planningResult)) {
                 //任务成功结束，总结任务
-                TaskSummaryResult result = summary.summaryTaskResult(executor.getMemory().getMessages(), request.getQuery());
-
-                Map<String, Object> taskResult = new HashMap<>();
-                taskResult.put("taskSummary", result.getTaskSummary());
-
-                if (CollectionUtils.isEmpty(result.getFiles())) {
-                    if (!CollectionUtils.isEmpty(agentContext.getProductFiles())) {
-                        List<File> fileResponses = agentContext.getProductFiles();
-                        // 过滤中间搜索结果文件
-                        fileResponses.removeIf(file -> Objects.nonNull(file) && file.getIsInternalFile());
-                        Collections.reverse(fileResponses);
-                        taskResult.put("fileList", fileResponses);
-                    }
-                } else {
-                    taskResult.put("fileList", result.getFiles());
-                }
-
-                agentContext.getPrinter().send("result", taskResult);
-
-
+                sendTaskResult(agentContext, request, executor, summary);
                 break;
             }
             if (planning.getState() == AgentState.IDLE || executor.getState() == AgentState.IDLE) {
@@ -110,11 +119,211 @@ public class PlanSolveHandlerImpl implements AgentHandlerService {
                 break;
             }
             stepIdx++;
+            saveCheckpoint(agentContext, request, planning, executor, planningResult, stepIdx);
         }
 
         return "";
     }
 
+    /**
+     * 按步骤依赖调度执行计划：前置步骤全部完成的步骤立即启动，并行数受 max_parallel 限制
+     * 步骤失败或达到最大步数时标记为 blocked，不依赖它的步骤继续执行；全部可执行步骤结束后：
+     * 开启了动态更新计划时重新调用规划，否则与按顺序执行一致，直接总结已完成的步骤，没有任何步骤完成时才终止
+     */
+    private String handleByDependencies(AgentContext agentContext, AgentRequest request, PlanningAgent planning,
+                                        ExecutorAgent executor, SummaryAgent summary, int startStepIdx) {
+        int maxParallel = Math.max(1, genieConfig.getPlannerMaxParallel());
+        int maxStepNum = genieConfig.getPlannerMaxSteps();
+        for (int stepIdx = startStepIdx; stepIdx <= maxStepNum; stepIdx++) {
+            int round = stepIdx;
+            // 每个步骤完成后保存检查点，恢复时已完成的步骤不再执行
+            Runnable onStepFinished = () -> saveCheckpoint(agentContext, request, planning, executor, null, round);
+            String failure = executePlanSteps(agentContext, planning.getPlanningTool().getPlan(), executor, maxParallel, onStepFinished);
+            if (Objects.isNull(failure)) {
+                sendTaskResult(agentContext, request, executor, summary);
+                return "";
+            }
+            if (Boolean.TRUE.equals(planning.getIsColseUpdate())) {
+                Plan plan = planning.getPlanningTool().getPlan();
+                if (plan.getStepStatus().stream().anyMatch("completed"::equals)) {
+                    sendTaskResult(agentContext, request, executor, summary);
+                } else {
+                    agentContext.getPrinter().send("result", "任务执行异常，请联系管理员，任务终止。");
+                }
+                return "";
+            }
+            // 步骤失败，由规划调整计划后继续调度
+            String planningResult = planning.run(failure);
+            if ("finish".equals(planningResult)) {
+                sendTaskResult(agentContext, request, executor, summary);
+                return "";
+            }
+            if (planning.getState() == AgentState.IDLE) {
+                agentContext.getPrinter().send("result", "达到最大迭代次数，任务终止。");
+                return "";
+            }
+            if (planning.getState() == AgentState.ERROR) {
+                agentContext.getPrinter().send("result", "任务执行异常，请联系管理员，任务终止。");
+                return "";
+            }
+        }
+        agentContext.getPrinter().send("result", "达到最大迭代次数，任务终止。");
+        return "";
+    }
+
+    /**
+     * 执行计划中所有可达的步骤
+     *
+     * @return 全部步骤完成返回 null，否则返回失败信息
+     */
+    private String executePlanSteps(AgentContext agentContext, Plan plan, ExecutorAgent executor, int maxParallel,
+                                    Runnable onStepFinished) {
+        Printer printer = agentContext.getPrinter();
+        BlockingQueue<Integer> finishedSteps = new LinkedBlockingQueue<>();
+        Map<Integer, ExecutorAgent> runningSteps = new HashMap<>();
+        Map<Integer, String> stepResults = new ConcurrentHashMap<>();
+        List<Integer> failedSteps = new ArrayList<>();
+        agentContext.getTaskProductFiles().clear();
+
+        while (true) {
+            // 失败步骤为 blocked，依赖它的步骤不会就绪，其余步骤继续调度
+            for (int i = 0; i < plan.getSteps().size() && runningSteps.size() < maxParallel; i++) {
+                if (runningSteps.containsKey(i) || !plan.isStepReady(i)) {
+                    continue;
+                }
+                String step = plan.getSteps().get(i);
+                if (!"in_progress".equals(plan.getStepStatus().get(i))) {
+                    plan.updateStepStatus(i, "in_progress", null);
+                    printer.send("plan", plan);
+                    printer.send("task", step);
+                }
+                // 每个步骤使用独立的子上下文，并共享已完成步骤的历史
+                ExecutorAgent stepExecutor = new ExecutorAgent(agentContext.fork());
+                stepExecutor.setMemory(executor.getMemory().fork());
+                runningSteps.put(i, stepExecutor);
+                int stepIndex = i;
+                boolean submitted = ThreadUtil.tryExecute(() -> {
+                    try {
+                        stepResults.put(stepIndex, stepExecutor.run("你的任务是：" + step));
+                    } catch (Exception e) {
+                        log.error("{} plan step {} execute error", agentContext.getRequestId(), stepIndex, e);
+                    } finally {
+                        finishedSteps.add(stepIndex);
+                    }
+                });
+                // 线程池已满时任务被丢弃，不会有完成通知，直接标记为失败
+                if (!submitted) {
+                    log.error("{} plan step {} rejected by thread pool", agentContext.getRequestId(), stepIndex);
+                    runningSteps.remove(stepIndex);
+                    plan.updateStepStatus(stepIndex, "blocked", "执行失败");
+                    failedSteps.add(stepIndex);
+                    printer.send("plan", plan);
+                }
+            }
+            if (runningSteps.isEmpty()) {
+                break;
+            }
+
+            Integer stepIndex;
+            try {
+                stepIndex = finishedSteps.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return "任务执行被中断";
+            }
+            ExecutorAgent stepExecutor = runningSteps.remove(stepIndex);
+            agentContext.join(stepExecutor.getContext());
+            executor.getMemory().addMessages(stepExecutor.getMemory().getForkedMessages());
+            executor.setState(stepExecutor.getState());
+            // 达到最大步数（IDLE）的步骤未完成，与失败一样标记为 blocked，已有结果随失败信息交给规划
+            if (stepExecutor.getState() == AgentState.ERROR || !stepResults.containsKey(stepIndex)) {
+                plan.updateStepStatus(stepIndex, "blocked", "执行失败");
+                failedSteps.add(stepIndex);
+            } else if (stepExecutor.getState() == AgentState.IDLE) {
+                plan.updateStepStatus(stepIndex, "blocked", "达到最大步数");
+                failedSteps.add(stepIndex);
+            } else {
+                plan.updateStepStatus(stepIndex, "completed", null);
+            }
+            printer.send("plan", plan);
+            onStepFinished.run();
+        }
+
+        if (failedSteps.isEmpty() && plan.getStepStatus().stream().allMatch("completed"::equals)) {
+            return null;
+        }
+        StringBuilder failure = new StringBuilder();
+        for (Map.Entry<Integer, String> entry : new TreeMap<>(stepResults).entrySet()) {
+            failure.append(plan.getSteps().get(entry.getKey())).append("：").append(entry.getValue()).append("\n");
+        }
+        for (Integer stepIndex : failedSteps) {
+            failure.append("子任务执行失败：").append(plan.getSteps().get(stepIndex)).append("\n");
+        }
+        return failure.toString();
+    }
+
+    /**
+     * 任务成功结束，总结任务并输出结果
+     */
+    private void sendTaskResult(AgentContext agentContext, AgentRequest request, ExecutorAgent executor, SummaryAgent summary) {
+        TaskSummaryResult result = summary.summaryTaskResult(executor.getMemory().getMessages(), request.getQuery());
+        // 保存本轮压缩后的历史，供同一会话的下一轮对话使用
+        sessionService.saveTurn(agentContext, request.getQuery(), executor.getMemory().getMessages(), result.getTaskSummary());
+
+        Map<String, Object> taskResult = new HashMap<>();
+        taskResult.put("taskSummary", result.getTaskSummary());
+
+        if (CollectionUtils.isEmpty(result.getFiles())) {
+            if (!CollectionUtils.isEmpty(agentContext.getProductFiles())) {
+                List<File> fileResponses = agentContext.getProductFiles();
+                // 过滤中间搜索结果文件
+                fileResponses.removeIf(file -> Objects.nonNull(file) && file.getIsInternalFile());
+                Collections.reverse(fileResponses);
+                taskResult.put("fileList", fileResponses);
+            }
+        } else {
+            taskResult.put("fileList", result.getFiles());
+        }
+
+        // 流式总结时复用增量消息的ID，前端以最终结果覆盖
+        agentContext.getPrinter().send(result.getMessageId(), "result", taskResult, true);
+        // 任务成功结束，检查点不再需要
+        checkpointService.remove(agentContext.getRequestId());
+    }
+
+    /**
+     * 保存当前轮次的检查点：计划、规划与执行历史、产出文件和下一轮任务
+     */
+    private void saveCheckpoint(AgentContext agentContext, AgentRequest request, PlanningAgent planning,
+                                ExecutorAgent executor, String planningResult, int stepIdx) {
+        if (!checkpointService.isEnabled()) {
+            return;
+        }
+        checkpointService.save(AgentCheckpoint.builder()
+                .requestId(agentContext.getRequestId())
+                .request(request)
+                .stepIdx(stepIdx)
+                .planningResult(planningResult)
+                .plan(planning.getPlanningTool().getPlan())
+                .planningMessages(new ArrayList<>(planning.getMemory().getMessages()))
+                .executorMessages(new ArrayList<>(executor.getMemory().getMessages()))
+                .productFiles(new ArrayList<>(agentContext.getProductFiles()))
+                .build());
+    }
+
+    private void restoreCheckpoint(AgentCheckpoint checkpoint, PlanningAgent planning, ExecutorAgent executor) {
+        // 中断时执行中（in_progress）的步骤仍视为可执行，恢复后重新执行
+        if (Objects.nonNull(checkpoint.getPlan())) {
+            planning.getPlanningTool().setPlan(checkpoint.getPlan());
+        }
+        if (!CollectionUtils.isEmpty(checkpoint.getPlanningMessages())) {
+            planning.getMemory().addMessages(checkpoint.getPlanningMessages());
+        }
+        if (!CollectionUtils.isEmpty(checkpoint.getExecutorMessages())) {
+            executor.getMemory().addMessages(checkpoint.getExecutorMessages());
+        }
+    }
+
     @Override
     public Boolean support(AgentContext agentContext, AgentRequest request) {
         return AgentType.PLAN_SOLVE.getValue().equals(request.getAgentType());
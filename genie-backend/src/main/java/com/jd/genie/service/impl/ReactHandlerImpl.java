@@ -10,6 +10,7 @@ import com.jd.genie.agent.enums.AgentType;
 import com.jd.genie.config.GenieConfig;
 import com.jd.genie.model.req.AgentRequest;
 import com.jd.genie.service.AgentHandlerService;
+import com.jd.genie.service.ISessionService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 import org.springframework.util.CollectionUtils;
@@ -22,16 +23,20 @@ public class ReactHandlerImpl implements AgentHandlerService {
     @Autowired
     private GenieConfig genieConfig;
 
+    @Autowired
+    private ISessionService sessionService;
+
 
     @Override
     public String handle(AgentContext agentContext, AgentRequest request) {
 
         ReActAgent executor = new ReactImplAgent(agentContext);
         SummaryAgent summary = new SummaryAgent(agentContext);
-        summary.setSystemPrompt(summary.getSystemPrompt().replace("{{query}}", request.getQuery()));
 
         executor.run(request.getQuery());
         TaskSummaryResult result = summary.summaryTaskResult(executor.getMemory().getMessages(), request.getQuery());
+        // 保存本轮压缩后的历史，供同一会话的下一轮对话使用
+        sessionService.saveTurn(agentContext, request.getQuery(), executor.getMemory().getMessages(), result.getTaskSummary());
 
         Map<String, Object> taskResult = new HashMap<>();
         taskResult.put("taskSummary", result.getTaskSummary());
@@ -48,7 +53,8 @@ public class ReactHandlerImpl implements AgentHandlerService {
             taskResult.put("fileList", result.getFiles());
         }
 
-        agentContext.getPrinter().send("result", taskResult);
+        // 流式总结时复用增量消息的ID，前端以最终结果覆盖
+        agentContext.getPrinter().send(result.getMessageId(), "result", taskResult, true);
 
         return "";
     }
@@ -0,0 +1,241 @@
+package com.jd.genie.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.jd.genie.agent.agent.AgentContext;
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.enums.RoleType;
+import com.jd.genie.agent.util.StringUtil;
+import com.jd.genie.config.GenieConfig;
+import com.jd.genie.model.dto.AgentSession;
+import com.jd.genie.service.ISessionService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 本地文件会话存储
+ * 1、每个会话一个 json 文件，按需加载，不常驻内存
+ * 2、内存中只维护 会话 -> 文件大小 的 LRU 索引，总大小超过上限时淘汰最久未使用的会话
+ * 3、保存时先写临时文件再原子替换，避免读到写了一半的会话
+ * 4、同一会话的轮次保存（读取、追加、写回）按会话加锁串行，文件名为会话ID的 SHA-256，不同会话不会映射到同一文件
+ */
+@Slf4j
+@Service
+public class SessionServiceImpl implements ISessionService {
+    @Autowired
+    private GenieConfig genieConfig;
+
+    private final LinkedHashMap<String, Long> index = new LinkedHashMap<>(16, 0.75f, true);
+    private long totalBytes = 0;
+    private boolean indexLoaded = false;
+
+    /**
+     * 会话锁分段，按会话ID哈希取锁，不随会话数增长
+     */
+    private final Object[] sessionLocks = new Object[64];
+
+    {
+        for (int i = 0; i < sessionLocks.length; i++) {
+            sessionLocks[i] = new Object();
+        }
+    }
+
+    @Override
+    public AgentSession load(String sessionId) {
+        if (StringUtils.isEmpty(sessionId)) {
+            return null;
+        }
+        Path path = getPath(sessionId);
+        synchronized (this) {
+            loadIndex();
+            // get 同时刷新 LRU 顺序
+            if (Objects.isNull(index.get(toFileName(sessionId)))) {
+                return null;
+            }
+        }
+        try {
+            AgentSession session = JSON.parseObject(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), AgentSession.class);
+            log.info("{} session loaded, turns: {}", sessionId, Objects.isNull(session) ? 0 : session.getTurns());
+            return session;
+        } catch (Exception e) {
+            log.error("{} session load error", sessionId, e);
+            return null;
+        }
+    }
+
+    @Override
+    public void saveTurn(AgentContext agentContext, String query, List<Message> messages, String answer) {
+        String sessionId = agentContext.getSessionId();
+        // 未传入会话ID时会话ID即请求ID，不需要保存
+        if (StringUtils.isEmpty(sessionId) || sessionId.equals(agentContext.getRequestId())) {
+            return;
+        }
+        List<Message> turnMessages = compact(messages);
+        synchronized (sessionLocks[Math.floorMod(sessionId.hashCode(), sessionLocks.length)]) {
+            AgentSession session = load(sessionId);
+            if (Objects.isNull(session)) {
+                session = AgentSession.builder().sessionId(sessionId).messages(new ArrayList<>()).turns(0).build();
+            }
+            List<Message> history = Objects.isNull(session.getMessages()) ? new ArrayList<>() : new ArrayList<>(session.getMessages());
+            history.add(Message.userMessage(query, null));
+            history.addAll(turnMessages);
+            if (StringUtils.isNotEmpty(answer)) {
+                history.add(Message.assistantMessage(answer, null));
+            }
+            session.setMessages(trim(history, genieConfig.getSessionMaxHistoryChars()));
+            session.setProductFiles(new ArrayList<>(agentContext.getProductFiles()));
+            session.setTurns((Objects.isNull(session.getTurns()) ? 0 : session.getTurns()) + 1);
+            session.setUpdateTime(System.currentTimeMillis());
+            save(session);
+        }
+    }
+
+    @Override
+    public String formatHistory(AgentSession session) {
+        if (Objects.isNull(session) || Objects.isNull(session.getMessages())) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (Message message : session.getMessages()) {
+            sb.append(String.format("role:%s content:%s\n", message.getRole(), message.getContent()));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 压缩本轮历史：丢弃下一步提示词和工具调用决策，工具结果与任务结论按长度截断
+     */
+    private List<Message> compact(List<Message> messages) {
+        int limit = genieConfig.getMessageSizeLimit();
+        List<Message> result = new ArrayList<>();
+        for (Message message : messages) {
+            String content = message.getContent();
+            if (StringUtils.isBlank(content)) {
+                continue;
+            }
+            if (message.getRole() == RoleType.TOOL) {
+                result.add(Message.assistantMessage("工具结果：" + StringUtils.left(content, limit), null));
+            } else if (message.getRole() == RoleType.ASSISTANT
+                    && (Objects.isNull(message.getToolCalls()) || message.getToolCalls().isEmpty())) {
+                result.add(Message.assistantMessage(StringUtils.left(content, limit), null));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 历史超过长度上限时从最早的消息开始丢弃
+     */
+    private List<Message> trim(List<Message> history, int maxChars) {
+        int total = history.stream().mapToInt(m -> m.getContent().length()).sum();
+        int start = 0;
+        while (total > maxChars && start < history.size() - 1) {
+            total -= history.get(start).getContent().length();
+            start++;
+        }
+        return new ArrayList<>(history.subList(start, history.size()));
+    }
+
+    private void save(AgentSession session) {
+        Path path = getPath(session.getSessionId());
+        byte[] data = JSON.toJSONString(session).getBytes(StandardCharsets.UTF_8);
+        try {
+            Files.createDirectories(path.getParent());
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(tmp, data);
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("{} session save error", session.getSessionId(), e);
+            return;
+        }
+        synchronized (this) {
+            loadIndex();
+            String key = toFileName(session.getSessionId());
+            Long previous = index.put(key, (long) data.length);
+            totalBytes += data.length - (Objects.isNull(previous) ? 0 : previous);
+            evict(key);
+        }
+        log.info("{} session saved, turns: {}, size: {}", session.getSessionId(), session.getTurns(), data.length);
+    }
+
+    /**
+     * 总大小超过上限时按最久未使用淘汰，当前会话不淘汰
+     */
+    private void evict(String current) {
+        long maxBytes = genieConfig.getSessionMaxBytes();
+        Iterator<Map.Entry<String, Long>> iterator = index.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> eldest = iterator.next();
+            if (eldest.getKey().equals(current)) {
+                continue;
+            }
+            try {
+                Files.deleteIfExists(getPathByKey(eldest.getKey()));
+            } catch (IOException e) {
+                log.warn("{} session evict error {}", eldest.getKey(), e.getMessage());
+            }
+            totalBytes -= eldest.getValue();
+            iterator.remove();
+            log.info("{} session evicted, total bytes: {}", eldest.getKey(), totalBytes);
+        }
+    }
+
+    /**
+     * 首次使用时扫描目录建立索引，按修改时间由旧到新加入
+     */
+    private void loadIndex() {
+        if (indexLoaded) {
+            return;
+        }
+        indexLoaded = true;
+        Path dir = Paths.get(genieConfig.getSessionDir());
+        if (!Files.isDirectory(dir)) {
+            return;
+        }
+        try (Stream<Path> files = Files.list(dir)) {
+            List<Path> sessions = files.filter(p -> p.getFileName().toString().endsWith(".json"))
+                    .sorted(Comparator.comparingLong(p -> p.toFile().lastModified()))
+                    .collect(Collectors.toList());
+            for (Path p : sessions) {
+                String fileName = p.getFileName().toString();
+                long size = p.toFile().length();
+                index.put(fileName.substring(0, fileName.length() - ".json".length()), size);
+                totalBytes += size;
+            }
+        } catch (IOException e) {
+            log.error("session index load error", e);
+        }
+    }
+
+    private Path getPath(String sessionId) {
+        return getPathByKey(toFileName(sessionId));
+    }
+
+    private Path getPathByKey(String key) {
+        return Paths.get(genieConfig.getSessionDir(), key + ".json");
+    }
+
+    /**
+     * 会话ID来自请求，取 SHA-256 十六进制作为文件名，保证安全且一一对应
+     */
+    private static String toFileName(String sessionId) {
+        return StringUtil.sha256Hex(sessionId);
+    }
+}
@@ -0,0 +1,191 @@
+package com.jd.genie.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.jd.genie.config.GenieConfig;
+import com.jd.genie.model.dto.WorkerStatus;
+import com.jd.genie.service.IWorkerPoolService;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 智能体工作节点池
+ * 1、节点来自 autobots.multiagent.workers（逗号分隔），未配置时使用 autobots.multiagent.agentUrl 作为单节点
+ * 2、后台定时请求各节点 /worker/status，获取执行中和排队的智能体数，探活失败或排空中的节点不参与派发
+ * 3、派发时选择负载最低的节点，负载 = 上报的执行数 + 排队数 + 上次上报后本网关新派发的请求数，避免两次探活之间集中派发到同一节点
+ */
+@Slf4j
+@Service
+public class WorkerPoolServiceImpl implements IWorkerPoolService {
+    @Autowired
+    private GenieConfig genieConfig;
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder().namingPattern("worker-health-%d").daemon(true).build());
+    private final HttpClient healthClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(Duration.ofSeconds(5))
+            .build();
+    private List<Worker> workers = Collections.emptyList();
+
+    private static class Worker {
+        private final String url;
+        private boolean healthy = true;
+        private boolean draining = false;
+        private int activeRuns = 0;
+        private int queueDepth = 0;
+        private int inFlight = 0;
+        private int dispatchedSinceReport = 0;
+        private long lastCheckTime = 0;
+
+        private Worker(String url) {
+            this.url = url;
+        }
+
+        private int load() {
+            return activeRuns + queueDepth + dispatchedSinceReport;
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        String config = StringUtils.isNotEmpty(genieConfig.getMultiAgentWorkers())
+                ? genieConfig.getMultiAgentWorkers() : genieConfig.getMultiAgentUrl();
+        if (StringUtils.isEmpty(config)) {
+            return;
+        }
+        workers = Arrays.stream(config.split(","))
+                .map(String::trim)
+                .filter(StringUtils::isNotEmpty)
+                .map(url -> StringUtils.removeEnd(url, "/"))
+                .distinct()
+                .map(Worker::new)
+                .collect(Collectors.toList());
+        log.info("agent worker pool: {}", workers.stream().map(w -> w.url).collect(Collectors.toList()));
+        scheduler.scheduleWithFixedDelay(this::checkAll, 0, genieConfig.getWorkerHealthIntervalMs(), TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return !workers.isEmpty();
+    }
+
+    @Override
+    public synchronized String acquire(String requestId) {
+        Worker selected = null;
+        for (Worker worker : workers) {
+            if (!worker.healthy || worker.draining) {
+                continue;
+            }
+            if (selected == null || worker.load() < selected.load()) {
+                selected = worker;
+            }
+        }
+        if (selected == null) {
+            log.error("{} no available agent worker", requestId);
+            return null;
+        }
+        selected.inFlight++;
+        selected.dispatchedSinceReport++;
+        log.info("{} dispatch to agent worker {}, load: {}", requestId, selected.url, selected.load());
+        return selected.url;
+    }
+
+    @Override
+    public synchronized void release(String workerUrl, boolean failed) {
+        for (Worker worker : workers) {
+            if (worker.url.equals(workerUrl)) {
+                worker.inFlight = Math.max(worker.inFlight - 1, 0);
+                if (failed) {
+                    worker.healthy = false;
+                    log.warn("agent worker {} marked unavailable until next health check", workerUrl);
+                }
+                return;
+            }
+        }
+    }
+
+    @Override
+    public synchronized List<WorkerStatus> listWorkers() {
+        List<WorkerStatus> result = new ArrayList<>();
+        for (Worker worker : workers) {
+            result.add(WorkerStatus.builder()
+                    .workerUrl(worker.url)
+                    .healthy(worker.healthy)
+                    .draining(worker.draining)
+                    .activeRuns(worker.activeRuns)
+                    .queueDepth(worker.queueDepth)
+                    .inFlight(worker.inFlight)
+                    .lastCheckTime(worker.lastCheckTime)
+                    .build());
+        }
+        return result;
+    }
+
+    /**
+     * 并发探活所有节点，探活请求不阻塞调度线程
+     */
+    private void checkAll() {
+        for (Worker worker : workers) {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(worker.url + "/worker/status"))
+                    .timeout(Duration.ofMillis(genieConfig.getWorkerHealthTimeoutMs()))
+                    .GET()
+                    .build();
+            healthClient.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+                    .whenComplete((response, e) -> onStatus(worker, response, e));
+        }
+    }
+
+    private synchronized void onStatus(Worker worker, HttpResponse<String> response, Throwable e) {
+        boolean wasHealthy = worker.healthy;
+        worker.lastCheckTime = System.currentTimeMillis();
+        WorkerStatus status = null;
+        if (Objects.isNull(e) && response.statusCode() == 200) {
+            try {
+                status = JSON.parseObject(response.body(), WorkerStatus.class);
+            } catch (Exception parseError) {
+                log.warn("agent worker {} status parse error: {}", worker.url, parseError.getMessage());
+            }
+        }
+        if (Objects.isNull(status)) {
+            worker.healthy = false;
+            if (wasHealthy) {
+                log.warn("agent worker {} unhealthy: {}", worker.url,
+                        Objects.nonNull(e) ? e.getMessage() : "status " + response.statusCode());
+            }
+            return;
+        }
+        worker.healthy = true;
+        worker.draining = Boolean.TRUE.equals(status.getDraining());
+        worker.activeRuns = Objects.isNull(status.getActiveRuns()) ? 0 : status.getActiveRuns();
+        worker.queueDepth = Objects.isNull(status.getQueueDepth()) ? 0 : status.getQueueDepth();
+        worker.dispatchedSinceReport = 0;
+        if (!wasHealthy) {
+            log.info("agent worker {} healthy, active runs: {}, queue depth: {}", worker.url, worker.activeRuns, worker.queueDepth);
+        }
+    }
+}
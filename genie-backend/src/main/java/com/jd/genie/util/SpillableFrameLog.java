@@ -0,0 +1,412 @@
+package com.jd.genie.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.NavigableSet;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 内存有上限的追加日志
+ * 1、记录以序列化后的字节保存并分配递增 id，内存中总字节数超过上限时，最早的记录依次转存到本地分段文件
+ * 2、读取时先读分段文件再读内存，分段文件逐条惰性读取，不整体加载到堆上
+ * 3、分段文件总大小超过上限时删除最早的分段（上限为 Long.MAX_VALUE 时不淘汰）；关闭时删除全部分段文件
+ * 4、不再追加时可将内存中的记录全部转存，之后只占用磁盘
+ * 5、所有日志的分段文件合计不超过进程级上限，超过时先淘汰本日志可淘汰的分段，仍超过则该记录不转存
+ * 6、转存失败时分段回滚到最后一条完整记录，未能转存的记录登记为缺失，读取经过缺失记录时抛出异常，不静默跳过
+ */
+@Slf4j
+public class SpillableFrameLog implements Closeable {
+    /**
+     * 单个分段文件大小，超过后新建分段
+     */
+    private static final long SEGMENT_BYTES = 8L * 1024 * 1024;
+
+    /**
+     * 进程内所有日志的分段文件总字节数及其上限
+     */
+    private static final AtomicLong GLOBAL_SPILLED_BYTES = new AtomicLong(0);
+    private static volatile long globalSpillMaxBytes = Long.MAX_VALUE;
+
+    /**
+     * 记录读取回调，返回 false 时停止读取
+     */
+    public interface RecordConsumer {
+        boolean accept(long id, byte[] data) throws Exception;
+    }
+
+    private static class Record {
+        private final long id;
+        private final byte[] data;
+
+        private Record(long id, byte[] data) {
+            this.id = id;
+            this.data = data;
+        }
+    }
+
+    private static class Segment {
+        private final Path path;
+        private long lastId;
+        private long bytes;
+
+        private Segment(Path path) {
+            this.path = path;
+        }
+    }
+
+    /**
+     * 某一时刻的日志视图，读取不持有日志的锁
+     */
+    public static class Snapshot {
+        private final List<Path> segments;
+        private final List<Record> memory;
+        private final NavigableSet<Long> lostIds;
+        private final long lastId;
+
+        private Snapshot(List<Path> segments, List<Record> memory, NavigableSet<Long> lostIds, long lastId) {
+            this.segments = segments;
+            this.memory = memory;
+            this.lostIds = lostIds;
+            this.lastId = lastId;
+        }
+
+        public long getLastId() {
+            return lastId;
+        }
+
+        /**
+         * 按 id 顺序读取 id 大于 afterId 的记录
+         *
+         * @return 最后读取的记录 id，回调中止时返回已成功读取的最后一条
+         * @throws IllegalStateException 读取范围内有未能转存的记录
+         */
+        public long read(long afterId, RecordConsumer consumer) throws Exception {
+            long last = afterId;
+            for (Path path : segments) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+                    while (true) {
+                        long id;
+                        byte[] data;
+                        try {
+                            id = in.readLong();
+                            data = new byte[in.readInt()];
+                            in.readFully(data);
+                        } catch (EOFException e) {
+                            break;
+                        }
+                        if (id > lastId) {
+                            return last;
+                        }
+                        if (id <= last) {
+                            continue;
+                        }
+                        checkLost(last, id);
+                        if (!consumer.accept(id, data)) {
+                            return last;
+                        }
+                        last = id;
+                    }
+                } catch (IOException e) {
+                    // 分段已被淘汰或清理，跳过
+                    log.warn("read spilled segment {} failed: {}", path, e.getMessage());
+                }
+            }
+            for (Record record : memory) {
+                if (record.id <= last) {
+                    continue;
+                }
+                checkLost(last, record.id);
+                if (!consumer.accept(record.id, record.data)) {
+                    return last;
+                }
+                last = record.id;
+            }
+            checkLost(last, lastId + 1);
+            return last;
+        }
+
+        /**
+         * (last, next) 之间有缺失记录时抛出异常
+         */
+        private void checkLost(long last, long next) {
+            Long lost = lostIds.higher(last);
+            if (lost != null && lost < next) {
+                throw new IllegalStateException("replay log record " + lost + " was lost");
+            }
+        }
+    }
+
+    private final String name;
+    private final long memoryBytes;
+    private final long spillMaxBytes;
+    private final Path spillDir;
+    private final Deque<Record> memory = new ArrayDeque<>();
+    private final List<Segment> segments = new ArrayList<>();
+    private final NavigableSet<Long> lostIds = new TreeSet<>();
+    private DataOutputStream segmentOut;
+    private long memoryUsed = 0;
+    private long spilledBytes = 0;
+    private long lastId = 0;
+    private long firstId = 1;
+    private boolean closed = false;
+
+    /**
+     * @param name          名称，用于分段文件名前缀和日志
+     * @param memoryBytes   内存中保留的最大字节数
+     * @param spillDir      分段文件目录
+     * @param spillMaxBytes 分段文件总大小上限
+     */
+    public SpillableFrameLog(String name, long memoryBytes, Path spillDir, long spillMaxBytes) {
+        this.name = name.replaceAll("[^A-Za-z0-9_\\-]", "_");
+        this.memoryBytes = Math.max(memoryBytes, 0);
+        this.spillDir = spillDir;
+        this.spillMaxBytes = spillMaxBytes;
+    }
+
+    /**
+     * 设置进程内所有日志分段文件的总大小上限
+     */
+    public static void setGlobalSpillMaxBytes(long maxBytes) {
+        globalSpillMaxBytes = maxBytes;
+    }
+
+    public static long getGlobalSpilledBytes() {
+        return GLOBAL_SPILLED_BYTES.get();
+    }
+
+    /**
+     * 追加一条记录
+     *
+     * @return 记录 id
+     */
+    public synchronized long append(byte[] data) {
+        long id = ++lastId;
+        if (closed) {
+            return id;
+        }
+        memory.addLast(new Record(id, data));
+        memoryUsed += data.length;
+        while (memoryUsed > memoryBytes && !memory.isEmpty()) {
+            Record eldest = memory.pollFirst();
+            memoryUsed -= eldest.data.length;
+            spill(eldest);
+        }
+        return id;
+    }
+
+    /**
+     * 获取当前日志视图，之后追加的记录不在视图内
+     */
+    public synchronized Snapshot snapshot() {
+        List<Path> paths = new ArrayList<>();
+        if (segmentOut != null) {
+            try {
+                segmentOut.flush();
+            } catch (IOException e) {
+                log.warn("{} flush spilled segment failed: {}", name, e.getMessage());
+            }
+        }
+        for (Segment segment : segments) {
+            paths.add(segment.path);
+        }
+        return new Snapshot(paths, new ArrayList<>(memory), new TreeSet<>(lostIds), lastId);
+    }
+
+    /**
+     * 将内存中的记录全部转存到分段文件，释放堆内存
+     */
+    public synchronized void spillAll() {
+        if (closed) {
+            return;
+        }
+        while (!memory.isEmpty()) {
+            Record eldest = memory.pollFirst();
+            memoryUsed -= eldest.data.length;
+            spill(eldest);
+        }
+        if (segmentOut != null) {
+            try {
+                segmentOut.flush();
+            } catch (IOException e) {
+                log.warn("{} flush spilled segment failed: {}", name, e.getMessage());
+            }
+        }
+    }
+
+    private void spill(Record record) {
+        int size = 12 + record.data.length;
+        if (!reserveGlobal(size)) {
+            lose(record, "global spill limit " + globalSpillMaxBytes + " reached");
+            return;
+        }
+        Segment current = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        try {
+            if (current == null || segmentOut == null || current.bytes >= SEGMENT_BYTES) {
+                current = newSegment();
+            }
+            segmentOut.writeLong(record.id);
+            segmentOut.writeInt(record.data.length);
+            segmentOut.write(record.data);
+            current.lastId = record.id;
+            current.bytes += size;
+            spilledBytes += size;
+            evictSegments();
+        } catch (IOException e) {
+            GLOBAL_SPILLED_BYTES.addAndGet(-size);
+            rollback(current);
+            // 丢弃该记录保证堆内存有界，读取经过该记录时报错
+            lose(record, e.getMessage());
+        }
+    }
+
+    /**
+     * 占用进程级转存额度，超过上限时先淘汰本日志较早的分段
+     */
+    private boolean reserveGlobal(int size) {
+        if (GLOBAL_SPILLED_BYTES.addAndGet(size) <= globalSpillMaxBytes) {
+            return true;
+        }
+        if (spillMaxBytes != Long.MAX_VALUE) {
+            evictSegments();
+            if (GLOBAL_SPILLED_BYTES.get() <= globalSpillMaxBytes) {
+                return true;
+            }
+        }
+        GLOBAL_SPILLED_BYTES.addAndGet(-size);
+        return false;
+    }
+
+    private void lose(Record record, String reason) {
+        lostIds.add(record.id);
+        log.error("{} spill record {} failed, marked as lost: {}", name, record.id, reason);
+    }
+
+    /**
+     * 写入失败后将分段截断到最后一条完整记录，之后继续追加；截断失败时后续记录写入新分段
+     */
+    private void rollback(Segment current) {
+        closeSegmentOut();
+        if (current == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(current.path, StandardOpenOption.WRITE)) {
+            channel.truncate(current.bytes);
+        } catch (IOException e) {
+            log.warn("{} truncate spilled segment {} failed: {}", name, current.path, e.getMessage());
+            return;
+        }
+        try {
+            segmentOut = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(current.path, StandardOpenOption.APPEND)));
+        } catch (IOException e) {
+            log.warn("{} reopen spilled segment {} failed: {}", name, current.path, e.getMessage());
+        }
+    }
+
+    private Segment newSegment() throws IOException {
+        closeSegmentOut();
+        Files.createDirectories(spillDir);
+        Segment segment = new Segment(Files.createTempFile(spillDir, name + "-", ".seg"));
+        segmentOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(segment.path)));
+        segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * 分段总大小超过本日志或进程级上限时淘汰最早的分段（当前写入的分段不淘汰，上限为 Long.MAX_VALUE 的日志不淘汰）
+     */
+    private void evictSegments() {
+        boolean evictable = spillMaxBytes != Long.MAX_VALUE;
+        while ((spilledBytes > spillMaxBytes || (evictable && GLOBAL_SPILLED_BYTES.get() > globalSpillMaxBytes))
+                && segments.size() > 1) {
+            Segment eldest = segments.remove(0);
+            spilledBytes -= eldest.bytes;
+            GLOBAL_SPILLED_BYTES.addAndGet(-eldest.bytes);
+            firstId = eldest.lastId + 1;
+            deleteQuietly(eldest.path);
+            log.warn("{} spilled segment evicted, earliest id: {}", name, firstId);
+        }
+    }
+
+    private void closeSegmentOut() {
+        if (segmentOut == null) {
+            return;
+        }
+        try {
+            segmentOut.close();
+        } catch (IOException e) {
+            log.warn("{} close spilled segment failed: {}", name, e.getMessage());
+        }
+        segmentOut = null;
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            log.warn("{} delete spilled segment {} failed: {}", name, path, e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        closeSegmentOut();
+        for (Segment segment : segments) {
+            deleteQuietly(segment.path);
+        }
+        if (!segments.isEmpty()) {
+            log.info("{} replay log closed, records: {}, spilled bytes: {}", name, lastId, spilledBytes);
+        }
+        segments.clear();
+        memory.clear();
+        memoryUsed = 0;
+        GLOBAL_SPILLED_BYTES.addAndGet(-spilledBytes);
+        spilledBytes = 0;
+    }
+
+    public synchronized long getLastId() {
+        return lastId;
+    }
+
+    /**
+     * 仍可读取的最早记录 id，小于该 id 的记录已被淘汰
+     */
+    public synchronized long getFirstId() {
+        return firstId;
+    }
+
+    public synchronized long getMemoryUsed() {
+        return memoryUsed;
+    }
+
+    public synchronized long getSpilledBytes() {
+        return spilledBytes;
+    }
+
+    /**
+     * 未能转存而缺失的记录数
+     */
+    public synchronized int getLostCount() {
+        return lostIds.size();
+    }
+}
@@ -8,14 +8,44 @@ import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import java.nio.charset.StandardCharsets;
 
 public class SseEmitterUTF8 extends SseEmitter {
+    private Runnable initCallback;
+    private boolean initialized = false;
+
     public SseEmitterUTF8(Long timeout) {
         super(timeout);
     }
+
+    /**
+     * emitter 交给 Spring 后执行回调；在此之前发送的事件会全部缓存在堆上，大量回放应在回调中进行
+     */
+    public void onInit(Runnable callback) {
+        boolean run;
+        synchronized (this) {
+            run = initialized;
+            if (!run) {
+                initCallback = callback;
+            }
+        }
+        if (run) {
+            callback.run();
+        }
+    }
+
     @Override
     protected void extendResponse(ServerHttpResponse outputMessage) {
         HttpHeaders headers = outputMessage.getHeaders();
         if (headers.getContentType() == null) {
             headers.setContentType(new MediaType("text", "event-stream", StandardCharsets.UTF_8));
         }
+        // Spring 在控制器返回后、初始化 emitter 前调用
+        Runnable callback;
+        synchronized (this) {
+            initialized = true;
+            callback = initCallback;
+            initCallback = null;
+        }
+        if (callback != null) {
+            callback.run();
+        }
     }
 }
@@ -0,0 +1,376 @@
+package com.jd.genie.util;
+
+import com.jd.genie.agent.util.GenieMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BinaryOperator;
+
+/**
+ * SSE 单写者事件队列
+ * 1、生产者线程（LLM 回调、并行执行器、心跳）只入队，不直接写网络
+ * 2、每个请求同一时刻只有一个写线程在消费队列，保证写入顺序且不争用 emitter
+ * 3、队列满时：最终消息（isFinal）始终保留，中间增量消息尽量合并，无法合并则丢弃
+ * 4、写出延迟（队首等待时长）超过阈值时，即使队列未满也按第 3 条处理中间增量，慢连接不会无限积压
+ */
+@Slf4j
+public class SseEventQueue {
+    private static final ExecutorService WRITER_POOL = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            new BasicThreadFactory.Builder().namingPattern("sse-writer-%d").daemon(true).build());
+
+    /**
+     * 当前活跃的队列，用于导出积压与延迟
+     */
+    private static final Set<SseEventQueue> ACTIVE_QUEUES = ConcurrentHashMap.newKeySet();
+
+    /**
+     * 所有队列合计的事件数
+     */
+    private static final GenieMetrics.CounterChild SENT_EVENTS = GenieMetrics.SSE_QUEUE_EVENTS.labels("sent");
+    private static final GenieMetrics.CounterChild COALESCED_EVENTS = GenieMetrics.SSE_QUEUE_EVENTS.labels("coalesced");
+    private static final GenieMetrics.CounterChild DROPPED_EVENTS = GenieMetrics.SSE_QUEUE_EVENTS.labels("dropped");
+    private static final GenieMetrics.CounterChild LAG_DROPPED_EVENTS = GenieMetrics.SSE_QUEUE_EVENTS.labels("lag_dropped");
+
+    /**
+     * 事件写出端
+     */
+    public interface Sink {
+        void write(Object event) throws Exception;
+
+        void complete();
+
+        void completeWithError(Throwable e);
+    }
+
+    private static class Entry {
+        private Object event;
+        private final String mergeKey;
+        private final boolean isFinal;
+        private final long enqueueTime;
+
+        private Entry(Object event, String mergeKey, boolean isFinal) {
+            this.event = event;
+            this.mergeKey = mergeKey;
+            this.isFinal = isFinal;
+            this.enqueueTime = System.currentTimeMillis();
+        }
+    }
+
+    private final String requestId;
+    private final int capacity;
+    private final Sink sink;
+    private final BinaryOperator<Object> merger;
+    private final Deque<Entry> queue = new ArrayDeque<>();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private volatile long lagThresholdMs = 0;
+    private volatile boolean closed = false;
+    private volatile boolean broken = false;
+    private boolean completed = false;
+
+    // 统计
+    private final AtomicLong sentCount = new AtomicLong(0);
+    private final AtomicLong coalescedCount = new AtomicLong(0);
+    private final AtomicLong droppedCount = new AtomicLong(0);
+    private final AtomicLong lagDroppedCount = new AtomicLong(0);
+    private volatile long lastLagMs = 0;
+    private volatile long maxLagMs = 0;
+
+    /**
+     * @param requestId 请求ID
+     * @param capacity  队列容量
+     * @param sink      写出端
+     * @param merger    增量合并函数，返回 null 表示两个事件不可合并
+     */
+    public SseEventQueue(String requestId, int capacity, Sink sink, BinaryOperator<Object> merger) {
+        this.requestId = requestId;
+        this.capacity = Math.max(capacity, 1);
+        this.sink = sink;
+        this.merger = merger;
+        ACTIVE_QUEUES.add(this);
+    }
+
+    /**
+     * 基于 SseEmitter 创建队列
+     */
+    public static SseEventQueue forEmitter(SseEmitter emitter, String requestId, int capacity, BinaryOperator<Object> merger) {
+        return new SseEventQueue(requestId, capacity, emitterSink(emitter), merger);
+    }
+
+    /**
+     * 写入 SseEmitter 的写出端
+     */
+    public static Sink emitterSink(SseEmitter emitter) {
+        return new Sink() {
+            @Override
+            public void write(Object event) throws Exception {
+                emitter.send(event);
+            }
+
+            @Override
+            public void complete() {
+                emitter.complete();
+            }
+
+            @Override
+            public void completeWithError(Throwable e) {
+                emitter.completeWithError(e);
+            }
+        };
+    }
+
+    /**
+     * 事件入队，生产者线程不会阻塞
+     *
+     * @param event    事件
+     * @param mergeKey 增量合并键（同一条流式消息使用同一个键），为空则不合并
+     * @param isFinal  是否最终消息，最终消息不会被丢弃
+     * @return 事件被保留（入队或合并）返回 true，被丢弃返回 false
+     */
+    public boolean offer(Object event, String mergeKey, boolean isFinal) {
+        synchronized (queue) {
+            // 在锁内检查：关闭与写线程判断队列已空在同一把锁下进行，通过检查的事件一定会被写出
+            if (broken || closed || completed) {
+                droppedCount.incrementAndGet();
+                DROPPED_EVENTS.increment(1);
+                return false;
+            }
+            if (!isFinal && mergeKey != null && merger != null) {
+                // 写线程落后时，新增量直接合并到尚未写出的同一条消息上
+                Entry tail = queue.peekLast();
+                if (tail != null && !tail.isFinal && mergeKey.equals(tail.mergeKey) && tryMerge(tail, event)) {
+                    return true;
+                }
+            }
+            boolean lagging = !isFinal && isLagging();
+            if (!isFinal && (queue.size() >= capacity || lagging)) {
+                if (mergeKey != null && merger != null) {
+                    Entry target = findLastPending(mergeKey);
+                    if (target != null && tryMerge(target, event)) {
+                        return true;
+                    }
+                }
+                droppedCount.incrementAndGet();
+                DROPPED_EVENTS.increment(1);
+                if (lagging) {
+                    lagDroppedCount.incrementAndGet();
+                    LAG_DROPPED_EVENTS.increment(1);
+                }
+                return false;
+            }
+            queue.addLast(new Entry(event, mergeKey, isFinal));
+        }
+        scheduleDrain();
+        return true;
+    }
+
+    /**
+     * 所有已入队事件写出后关闭连接
+     */
+    public void close() {
+        synchronized (queue) {
+            closed = true;
+        }
+        scheduleDrain();
+    }
+
+    /**
+     * 设置写出延迟阈值（毫秒），0 表示不按延迟限流
+     */
+    public void setLagThresholdMs(long lagThresholdMs) {
+        this.lagThresholdMs = Math.max(lagThresholdMs, 0);
+    }
+
+    /**
+     * 队首事件等待时间超过阈值视为下游消费过慢，调用方需持有 queue 锁
+     */
+    private boolean isLagging() {
+        if (lagThresholdMs <= 0) {
+            return false;
+        }
+        Entry head = queue.peekFirst();
+        return head != null && System.currentTimeMillis() - head.enqueueTime > lagThresholdMs;
+    }
+
+    private Entry findLastPending(String mergeKey) {
+        Iterator<Entry> iterator = queue.descendingIterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (mergeKey.equals(entry.mergeKey)) {
+                return entry.isFinal ? null : entry;
+            }
+        }
+        return null;
+    }
+
+    private boolean tryMerge(Entry target, Object event) {
+        Object merged = merger.apply(target.event, event);
+        if (Objects.isNull(merged)) {
+            return false;
+        }
+        target.event = merged;
+        coalescedCount.incrementAndGet();
+        COALESCED_EVENTS.increment(1);
+        return true;
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                WRITER_POOL.execute(this::drain);
+            } catch (Exception e) {
+                draining.set(false);
+                log.error("{} sse writer schedule failed", requestId, e);
+            }
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Entry entry;
+            boolean finishing;
+            synchronized (queue) {
+                entry = queue.pollFirst();
+                finishing = entry == null && closed;
+            }
+            if (entry == null) {
+                if (finishing) {
+                    finish(null);
+                }
+                draining.set(false);
+                // 释放写权限后再检查一次，避免丢失并发入队的事件
+                synchronized (queue) {
+                    if (queue.isEmpty() && !closed) {
+                        return;
+                    }
+                    if (queue.isEmpty() && completed) {
+                        return;
+                    }
+                }
+                if (!draining.compareAndSet(false, true)) {
+                    return;
+                }
+                continue;
+            }
+            if (broken) {
+                continue;
+            }
+            long lag = System.currentTimeMillis() - entry.enqueueTime;
+            lastLagMs = lag;
+            if (lag > maxLagMs) {
+                maxLagMs = lag;
+            }
+            try {
+                sink.write(entry.event);
+                sentCount.incrementAndGet();
+                SENT_EVENTS.increment(1);
+            } catch (Exception e) {
+                log.error("{} sse write error, discard pending events", requestId, e);
+                broken = true;
+                synchronized (queue) {
+                    droppedCount.addAndGet(queue.size());
+                    DROPPED_EVENTS.increment(queue.size());
+                    queue.clear();
+                }
+                finish(e);
+            }
+        }
+    }
+
+    private void finish(Throwable error) {
+        synchronized (queue) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+        }
+        ACTIVE_QUEUES.remove(this);
+        log.info("{} sse queue closed, sent: {}, coalesced: {}, dropped: {}, lag dropped: {}, max lag: {}ms",
+                requestId, sentCount.get(), coalescedCount.get(), droppedCount.get(), lagDroppedCount.get(), maxLagMs);
+        try {
+            if (error == null) {
+                sink.complete();
+            } else {
+                sink.completeWithError(error);
+            }
+        } catch (Exception e) {
+            log.warn("{} sse complete error {}", requestId, e.getMessage());
+        }
+    }
+
+    /**
+     * 当前积压事件数
+     */
+    public int size() {
+        synchronized (queue) {
+            return queue.size();
+        }
+    }
+
+    /**
+     * 当前队首事件的等待时长（毫秒），即写出延迟
+     */
+    public long currentLagMs() {
+        synchronized (queue) {
+            Entry head = queue.peekFirst();
+            return head == null ? 0 : System.currentTimeMillis() - head.enqueueTime;
+        }
+    }
+
+    public long getLastLagMs() {
+        return lastLagMs;
+    }
+
+    public long getMaxLagMs() {
+        return maxLagMs;
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getLagDroppedCount() {
+        return lagDroppedCount.get();
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    /**
+     * 写线程池当前线程数
+     */
+    public static int getWriterPoolSize() {
+        return ((ThreadPoolExecutor) WRITER_POOL).getPoolSize();
+    }
+
+    public static int getWriterActiveCount() {
+        return ((ThreadPoolExecutor) WRITER_POOL).getActiveCount();
+    }
+
+    public static Set<SseEventQueue> getActiveQueues() {
+        return Collections.unmodifiableSet(ACTIVE_QUEUES);
+    }
+}
@@ -0,0 +1,50 @@
+package com.jd.genie.util;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.jd.genie.model.response.GptProcessResult;
+
+/**
+ * SSE 增量帧序列化
+ * 处理链中的事件保持类型化对象，写出前由预先构建的 ObjectWriter 一次序列化为 JSON 文本，
+ * 回放缓冲直接保存该文本，重连回放时不再重复序列化
+ * 紧凑格式下省略与默认值相同的固定字段，客户端按默认值补全
+ */
+public class SseFrameSerializer {
+    private static final ObjectWriter RESULT_WRITER = JsonMapper.builder()
+            // 结果中可能携带智能体侧的任意对象，没有可序列化属性时输出空对象
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+            .build()
+            .writerFor(GptProcessResult.class);
+
+    private static final ObjectWriter COMPACT_RESULT_WRITER = JsonMapper.builder()
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS)
+            .addMixIn(GptProcessResult.class, CompactEnvelope.class)
+            .build()
+            .writerFor(GptProcessResult.class);
+
+    /**
+     * 与 new GptProcessResult() 默认值相同的字段不输出
+     */
+    @JsonInclude(JsonInclude.Include.NON_DEFAULT)
+    private abstract static class CompactEnvelope {
+    }
+
+    private SseFrameSerializer() {
+    }
+
+    public static String serialize(GptProcessResult result) {
+        return serialize(result, false);
+    }
+
+    public static String serialize(GptProcessResult result, boolean compact) {
+        try {
+            return (compact ? COMPACT_RESULT_WRITER : RESULT_WRITER).writeValueAsString(result);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("serialize sse frame failed: " + e.getOriginalMessage(), e);
+        }
+    }
+}
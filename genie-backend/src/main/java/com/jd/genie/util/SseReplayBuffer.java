@@ -0,0 +1,311 @@
+package com.jd.genie.util;
+
+import com.jd.genie.agent.util.GenieMetrics;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.concurrent.BasicThreadFactory;
+import org.springframework.http.MediaType;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SSE 断线重连回放缓冲
+ * 1、每个请求发出的事件分配单调递增的 id，以序列化后的字节保存，内存超过上限时转存到本地分段文件
+ * 2、客户端断线后携带 Last-Event-ID 重连，先回放缺失的事件（分段文件惰性读取）再接入实时流；
+ *    回放在 emitter 交给 Spring 之后由回放线程执行，不在请求线程上把事件堆积到 emitter 的早期发送缓存
+ * 3、连接断开不影响任务执行和事件缓存，请求结束后内存中的事件全部转存，缓冲保留一段时间供重连，之后清理分段文件
+ * 4、每个连接有独立的写队列并统计写出延迟，慢连接延迟超过阈值时丢弃其非最终的增量帧，最终帧始终送达，不拖慢其他连接和智能体
+ * 5、同时作为执行中请求的登记表：同一请求ID重复提交时加入已有运行并从头回放，不再启动新的运行
+ */
+@Slf4j
+public class SseReplayBuffer {
+    private static final String HEARTBEAT_KEY = "heartbeat";
+    private static final Map<String, SseReplayBuffer> BUFFERS = new ConcurrentHashMap<>();
+    private static final ScheduledExecutorService CLEANER = Executors.newSingleThreadScheduledExecutor(
+            new BasicThreadFactory.Builder().namingPattern("sse-replay-cleaner-%d").daemon(true).build());
+    private static final ExecutorService REPLAY_POOL = new ThreadPoolExecutor(0, Integer.MAX_VALUE,
+            60L, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            new BasicThreadFactory.Builder().namingPattern("sse-replay-%d").daemon(true).build());
+    /**
+     * 锁外回放后剩余未回放的事件不超过该数量时，才在锁内补发并接入实时流，避免长时间阻塞生产者
+     */
+    private static final long CATCH_UP_FRAMES = 64;
+    private static final int MAX_CATCH_UP_ROUNDS = 8;
+
+    private final String requestId;
+    private final long retainMs;
+    private final SpillableFrameLog frameLog;
+    private final List<SseEventQueue> subscribers = new CopyOnWriteArrayList<>();
+    private int queueCapacity = 1024;
+    private long lagThresholdMs = 0;
+    private long frameBytes = 0;
+    private boolean completed = false;
+
+    /**
+     * 已序列化的帧，心跳等不需要回放的帧 id 为 0
+     */
+    private static class Frame {
+        private final long id;
+        private final String json;
+
+        private Frame(long id, String json) {
+            this.id = id;
+            this.json = json;
+        }
+    }
+
+    private SseReplayBuffer(String requestId, SpillableFrameLog frameLog, long retainMs) {
+        this.requestId = requestId;
+        this.frameLog = frameLog;
+        this.retainMs = Math.max(retainMs, 0);
+    }
+
+    /**
+     * 创建请求的回放缓冲，调用 register 后生效
+     *
+     * @param memoryBytes   内存中保留的事件字节数上限
+     * @param spillDir      超出内存上限的事件转存目录
+     * @param spillMaxBytes 转存文件总大小上限
+     * @param retainMs      请求结束后缓冲保留时长
+     */
+    public static SseReplayBuffer create(String requestId, long memoryBytes, Path spillDir, long spillMaxBytes, long retainMs) {
+        SpillableFrameLog frameLog = new SpillableFrameLog("sse-" + requestId, memoryBytes, spillDir, spillMaxBytes);
+        return new SseReplayBuffer(requestId, frameLog, retainMs);
+    }
+
+    /**
+     * 登记为该请求的执行中缓冲：同一请求ID已有未结束的缓冲时不替换，返回已有缓冲（重复提交加入已有运行）；
+     * 已结束的旧缓冲被替换
+     *
+     * @return 当前生效的缓冲，不是本缓冲时调用方不应再启动新的运行
+     */
+    public SseReplayBuffer register() {
+        SseReplayBuffer running = BUFFERS.compute(requestId, (key, existing) ->
+                existing != null && !existing.isCompleted() ? existing : this);
+        if (running != this) {
+            frameLog.close();
+        }
+        return running;
+    }
+
+    /**
+     * 设置每个连接的写队列容量和写出延迟阈值
+     */
+    public SseReplayBuffer withSubscriberQueue(int queueCapacity, long lagThresholdMs) {
+        this.queueCapacity = queueCapacity;
+        this.lagThresholdMs = lagThresholdMs;
+        return this;
+    }
+
+    public static SseReplayBuffer get(String requestId) {
+        return requestId == null ? null : BUFFERS.get(requestId);
+    }
+
+    /**
+     * 接入一个连接：回放 id 大于 lastEventId 的事件，请求未结束时继续接收实时事件
+     * 调用立即返回，回放在 emitter 交给 Spring 后由回放线程执行
+     */
+    public void attach(SseEmitter emitter, long lastEventId) {
+        Runnable start = () -> REPLAY_POOL.execute(() -> replayAndSubscribe(emitter, lastEventId));
+        if (emitter instanceof SseEmitterUTF8) {
+            ((SseEmitterUTF8) emitter).onInit(start);
+        } else {
+            start.run();
+        }
+    }
+
+    private void replayAndSubscribe(SseEmitter emitter, long lastEventId) {
+        long firstId = frameLog.getFirstId();
+        if (lastEventId + 1 < firstId) {
+            log.warn("{} sse replay gap, last event id: {}, earliest buffered: {}", requestId, lastEventId, firstId);
+        }
+        // 先在锁外回放已转存和已缓存的事件，直到剩余的事件很少，避免读文件时阻塞实时写出
+        long replayed = lastEventId;
+        for (int round = 0; round < MAX_CATCH_UP_ROUNDS; round++) {
+            replayed = replay(emitter, frameLog.snapshot(), replayed);
+            if (replayed < 0) {
+                return;
+            }
+            if (frameLog.getLastId() - replayed <= CATCH_UP_FRAMES) {
+                break;
+            }
+        }
+        synchronized (this) {
+            // 补发回放期间新产生的事件后接入实时流
+            replayed = replay(emitter, frameLog.snapshot(), replayed);
+            if (replayed < 0) {
+                return;
+            }
+            if (lastEventId > 0) {
+                log.info("{} sse reconnected, last event id: {}, replayed to: {}, completed: {}", requestId, lastEventId, replayed, completed);
+            }
+            if (completed) {
+                emitter.complete();
+                return;
+            }
+            subscribers.add(subscribe(emitter));
+        }
+    }
+
+    /**
+     * 为连接创建独立写队列，写失败时移除该连接（不覆盖 emitter 已注册的回调）
+     */
+    private SseEventQueue subscribe(SseEmitter emitter) {
+        SseEventQueue[] holder = new SseEventQueue[1];
+        holder[0] = new SseEventQueue(requestId, queueCapacity, new SseEventQueue.Sink() {
+            @Override
+            public void write(Object event) throws Exception {
+                Frame frame = (Frame) event;
+                send(emitter, frame.id, frame.json);
+            }
+
+            @Override
+            public void complete() {
+                subscribers.remove(holder[0]);
+                emitter.complete();
+            }
+
+            @Override
+            public void completeWithError(Throwable e) {
+                log.info("{} sse subscriber detached: {}", requestId, e.getMessage());
+                subscribers.remove(holder[0]);
+                emitter.completeWithError(e);
+            }
+        }, SseReplayBuffer::mergeTransient);
+        holder[0].setLagThresholdMs(lagThresholdMs);
+        return holder[0];
+    }
+
+    /**
+     * 积压时多个心跳合并为一个，其余帧不合并
+     */
+    private static Object mergeTransient(Object pending, Object incoming) {
+        return ((Frame) pending).id == 0 && ((Frame) incoming).id == 0 ? incoming : null;
+    }
+
+    /**
+     * @return 最后回放的事件 id，写失败返回 -1
+     */
+    private long replay(SseEmitter emitter, SpillableFrameLog.Snapshot snapshot, long afterId) {
+        boolean[] failed = {false};
+        try {
+            long last = snapshot.read(afterId, (id, data) -> {
+                failed[0] = !write(emitter, id, new String(data, StandardCharsets.UTF_8));
+                return !failed[0];
+            });
+            return failed[0] ? -1 : last;
+        } catch (Exception e) {
+            // 回放日志有缺失记录时明确以错误结束该连接，不静默跳过
+            log.warn("{} sse replay error {}", requestId, e.getMessage());
+            emitter.completeWithError(e);
+            return -1;
+        }
+    }
+
+    /**
+     * 发送需要回放的事件
+     *
+     * @param frame   已序列化的 JSON 帧
+     * @param isFinal 是否最终帧，非最终的增量帧在连接写出延迟过高时可被丢弃
+     * @return 事件 id
+     */
+    public synchronized long send(String frame, boolean isFinal) {
+        byte[] data = frame.getBytes(StandardCharsets.UTF_8);
+        long id = frameLog.append(data);
+        frameBytes += data.length;
+        GenieMetrics.SSE_FRAMES.increment(1);
+        GenieMetrics.SSE_FRAME_BYTES.increment(data.length);
+        Frame event = new Frame(id, frame);
+        for (SseEventQueue subscriber : subscribers) {
+            subscriber.offer(event, null, isFinal);
+        }
+        return id;
+    }
+
+    /**
+     * 发送不需要回放的事件（如心跳），不分配 id
+     */
+    public synchronized void sendTransient(String frame) {
+        Frame event = new Frame(0, frame);
+        for (SseEventQueue subscriber : subscribers) {
+            subscriber.offer(event, HEARTBEAT_KEY, false);
+        }
+    }
+
+    /**
+     * 请求结束，关闭所有连接，缓冲转存到磁盘后保留 retainMs 再清理
+     * 保留期间不占用堆内存，已结束请求的数量不影响堆大小
+     */
+    public synchronized void complete() {
+        if (completed) {
+            return;
+        }
+        completed = true;
+        // 单次运行输出的帧字节数（压缩前），用于评估紧凑格式和压缩的收益
+        log.info("{} sse stream completed, frames: {}, bytes: {}", requestId, frameLog.getLastId(), frameBytes);
+        // 各连接写完已入队的帧后关闭
+        for (SseEventQueue subscriber : subscribers) {
+            subscriber.close();
+        }
+        frameLog.spillAll();
+        CLEANER.schedule(() -> {
+            BUFFERS.remove(requestId, this);
+            frameLog.close();
+        }, retainMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 回放时直接写出单个事件，写失败只放弃该连接，不影响缓存和其他连接
+     */
+    private boolean write(SseEmitter emitter, long id, String frame) {
+        try {
+            send(emitter, id, frame);
+            return true;
+        } catch (Exception e) {
+            log.info("{} sse replay to subscriber failed: {}", requestId, e.getMessage());
+            return false;
+        }
+    }
+
+    private static void send(SseEmitter emitter, long id, String frame) throws Exception {
+        // 已序列化的 JSON 帧按原文写出
+        if (id > 0) {
+            emitter.send(SseEmitter.event().id(String.valueOf(id)).data(frame, MediaType.APPLICATION_JSON));
+        } else {
+            emitter.send(frame, MediaType.APPLICATION_JSON);
+        }
+    }
+
+    /**
+     * 解析 Last-Event-ID，非法或为空时返回 0（从头回放）
+     */
+    public static long parseLastEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.trim().isEmpty()) {
+            return 0;
+        }
+        try {
+            return Math.max(Long.parseLong(lastEventId.trim()), 0);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    public long getLastId() {
+        return frameLog.getLastId();
+    }
+
+    public synchronized boolean isCompleted() {
+        return completed;
+    }
+}
@@ -0,0 +1,66 @@
+package com.jd.genie.agent.agent;
+
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.dto.tool.ToolCall;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class StuckDetectorTest {
+
+    private static List<Message> toolStep(String name, String arguments) {
+        ToolCall toolCall = ToolCall.builder()
+                .id("call-" + System.nanoTime())
+                .type("function")
+                .function(ToolCall.Function.builder().name(name).arguments(arguments).build())
+                .build();
+        return List.of(Message.fromToolCalls(null, List.of(toolCall)),
+                Message.toolMessage("result", toolCall.getId(), null));
+    }
+
+    private static List<Message> thoughtStep(String thought) {
+        return List.of(Message.assistantMessage(thought, null));
+    }
+
+    @Test
+    public void repeatedToolCallIsCorrectedThenTerminated() {
+        StuckDetector detector = new StuckDetector(2);
+
+        assertEquals(StuckDetector.Action.NONE, detector.record(toolStep("deep_search", "{\"query\":\"a\",\"page\":1}")));
+        // 参数字段顺序不同视为相同调用
+        assertEquals(StuckDetector.Action.NONE, detector.record(toolStep("deep_search", "{\"page\":1, \"query\":\"a\"}")));
+        assertEquals(StuckDetector.Action.CORRECT, detector.record(toolStep("deep_search", "{\"query\":\"a\",\"page\":1}")));
+        assertEquals(StuckDetector.Action.TERMINATE, detector.record(toolStep("deep_search", "{\"query\":\"a\",\"page\":1}")));
+    }
+
+    @Test
+    public void differentArgumentsAreNotRepeats() {
+        StuckDetector detector = new StuckDetector(1);
+
+        assertEquals(StuckDetector.Action.NONE, detector.record(toolStep("deep_search", "{\"query\":\"a\"}")));
+        assertEquals(StuckDetector.Action.NONE, detector.record(toolStep("deep_search", "{\"query\":\"b\"}")));
+        assertEquals(StuckDetector.Action.NONE, detector.record(toolStep("file_tool", "{\"query\":\"a\"}")));
+        assertEquals(StuckDetector.Action.CORRECT, detector.record(toolStep("deep_search", "{\"query\":\"b\"}")));
+    }
+
+    @Test
+    public void similarThoughtsAreRepeats() {
+        StuckDetector detector = new StuckDetector(1);
+
+        assertEquals(StuckDetector.Action.NONE, detector.record(thoughtStep("我需要先搜索京东的最新财报数据，然后整理成表格。")));
+        assertEquals(StuckDetector.Action.NONE, detector.record(thoughtStep("接下来生成最终的 HTML 报告。")));
+        // 仅标点和空白不同
+        assertEquals(StuckDetector.Action.CORRECT, detector.record(thoughtStep("我需要先搜索京东的最新财报数据 然后整理成表格")));
+    }
+
+    @Test
+    public void savedCharsAreEstimatedFromAverageStep() {
+        StuckDetector detector = new StuckDetector(3);
+        detector.record(thoughtStep("1234"));
+        detector.record(thoughtStep("123456"));
+
+        assertEquals(15, detector.recordSaved(3));
+    }
+}
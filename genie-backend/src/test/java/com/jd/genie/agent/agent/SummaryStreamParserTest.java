@@ -0,0 +1,81 @@
+package com.jd.genie.agent.agent;
+
+import com.jd.genie.agent.enums.AgentType;
+import com.jd.genie.agent.printer.Printer;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SummaryStreamParserTest {
+
+    /**
+     * 只记录 result 增量的文本
+     */
+    private static class RecordingPrinter implements Printer {
+        private final List<String> sent = new ArrayList<>();
+
+        @Override
+        public void send(String messageId, String messageType, Object message, String digitalEmployee, Boolean isFinal) {
+            assertEquals("m1", messageId);
+            assertEquals("result", messageType);
+            assertEquals(Boolean.FALSE, isFinal);
+            sent.add((String) message);
+        }
+
+        @Override
+        public void send(String messageType, Object message) {
+            send(null, messageType, message, null, true);
+        }
+
+        @Override
+        public void send(String messageType, Object message, String digitalEmployee) {
+            send(null, messageType, message, digitalEmployee, true);
+        }
+
+        @Override
+        public void send(String messageId, String messageType, Object message, Boolean isFinal) {
+            send(messageId, messageType, message, null, isFinal);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void updateAgentType(AgentType agentType) {
+        }
+    }
+
+    private static List<String> parse(String... deltas) {
+        RecordingPrinter printer = new RecordingPrinter();
+        SummaryStreamParser parser = new SummaryStreamParser(printer, "m1");
+        for (String delta : deltas) {
+            parser.accept(delta);
+        }
+        return printer.sent;
+    }
+
+    @Test
+    public void summaryBeforeSeparatorIsStreamed() {
+        assertEquals(List.of("结论", "第二句"), parse("结论", "第二句$$$报告.html", "、数据.csv"));
+    }
+
+    @Test
+    public void separatorSplitAcrossDeltasIsNotLeaked() {
+        assertEquals(List.of("结论"), parse("结论$", "$", "$文件.html"));
+        assertEquals(List.of("结论。"), parse("结论。$$", "$文件.html"));
+    }
+
+    @Test
+    public void heldDollarIsReleasedWhenNotSeparator() {
+        assertEquals(List.of("价格", "$$5"), parse("价格$$", "5"));
+    }
+
+    @Test
+    public void summaryWithoutSeparatorIsFullyStreamed() {
+        assertEquals(List.of("只有", "结论"), parse("只有", "", "结论"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.jd.genie.agent.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class MemoryTest {
+
+    private static List<String> contents(List<Message> messages) {
+        List<String> result = new ArrayList<>();
+        for (Message message : messages) {
+            result.add(message.getContent());
+        }
+        return result;
+    }
+
+    private static Memory memoryOf(String... contents) {
+        Memory memory = new Memory();
+        for (String content : contents) {
+            memory.addMessage(Message.userMessage(content, null));
+        }
+        return memory;
+    }
+
+    @Test
+    public void forkSharesHistoryAndCollectsOnlyNewMessages() {
+        Memory parent = memoryOf("a", "b");
+        Memory child = parent.fork();
+        child.addMessage(Message.assistantMessage("c", null));
+        parent.addMessage(Message.userMessage("p", null));
+
+        assertEquals(List.of("a", "b", "c"), contents(child.getMessages()));
+        assertSame(parent.get(0), child.get(0));
+        assertEquals(List.of("c"), contents(child.getForkedMessages()));
+        assertEquals(List.of("a", "b", "p"), contents(parent.getMessages()));
+    }
+
+    @Test
+    public void nestedForksBuildSegmentChain() {
+        Memory root = memoryOf("a");
+        Memory first = root.fork();
+        first.addMessage(Message.userMessage("b", null));
+        Memory second = first.fork();
+        second.addMessage(Message.userMessage("c", null));
+        second.addMessage(Message.userMessage("d", null));
+
+        assertEquals(4, second.size());
+        assertEquals("b", second.get(1).getContent());
+        assertEquals(List.of("a", "b", "c", "d"), contents(second.getMessages()));
+        assertEquals(List.of("c", "d"), contents(second.getForkedMessages()));
+        assertEquals("d", second.getLastMessage().getContent());
+    }
+
+    @Test
+    public void viewReflectsLaterAppends() {
+        Memory memory = memoryOf("a");
+        List<Message> view = memory.getMessages();
+        memory.fork();
+        memory.addMessage(Message.userMessage("b", null));
+
+        assertEquals(List.of("a", "b"), contents(view));
+        assertThrows(UnsupportedOperationException.class, () -> view.add(Message.userMessage("x", null)));
+    }
+
+    @Test
+    public void rewriteFallsBackToIdentityMatching() {
+        Memory parent = memoryOf("a");
+        parent.addMessage(Message.toolMessage("tool result", "call-1", null));
+        Memory child = parent.fork();
+        child.addMessage(Message.assistantMessage("c", null));
+        child.addMessage(Message.toolMessage("child tool", "call-2", null));
+
+        child.clearToolContext();
+
+        assertEquals(1, child.getRewriteCount());
+        assertEquals(List.of("a", "c"), contents(child.getMessages()));
+        assertEquals(List.of("c"), contents(child.getForkedMessages()));
+        // 改写只作用于子记忆，父记忆的共享段不变
+        assertEquals(List.of("a", "tool result"), contents(parent.getMessages()));
+    }
+
+    @Test
+    public void clearDropsSharedHistory() {
+        Memory parent = memoryOf("a", "b");
+        Memory child = parent.fork();
+        child.addMessage(Message.userMessage("c", null));
+
+        child.clear();
+        child.addMessage(Message.userMessage("d", null));
+
+        assertEquals(List.of("d"), contents(child.getMessages()));
+        assertEquals(List.of("d"), contents(child.getForkedMessages()));
+        assertEquals(2, parent.size());
+    }
+}
@@ -0,0 +1,97 @@
+package com.jd.genie.agent.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PlanTest {
+
+    private static final List<String> STEPS = Arrays.asList("搜索资料", "分析数据", "撰写报告");
+
+    @Test
+    public void dependenciesAreOneBased() {
+        Plan plan = Plan.create("plan", STEPS, Arrays.asList(
+                Collections.emptyList(), Collections.singletonList(1), Arrays.asList(1, 2, 2)));
+
+        assertEquals(Arrays.asList(Collections.emptyList(), Collections.singletonList(0), Arrays.asList(0, 1)),
+                plan.getDependencies());
+        assertTrue(plan.format().contains("Depends on: [1, 2]"));
+    }
+
+    @Test
+    public void missingDependenciesAreFilledAsEmpty() {
+        Plan plan = Plan.create("plan", STEPS, Collections.singletonList(null));
+
+        assertEquals(Arrays.asList(Collections.emptyList(), Collections.emptyList(), Collections.emptyList()),
+                plan.getDependencies());
+        assertNull(Plan.create("plan", STEPS, Collections.emptyList()).getDependencies());
+    }
+
+    @Test
+    public void cyclicDependenciesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> Plan.create("plan", STEPS, Arrays.asList(
+                Collections.singletonList(3), Collections.singletonList(1), Collections.singletonList(2))));
+    }
+
+    @Test
+    public void outOfRangeDependenciesAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> Plan.create("plan", STEPS,
+                Arrays.asList(Collections.emptyList(), Collections.singletonList(0))));
+        assertThrows(IllegalArgumentException.class, () -> Plan.create("plan", STEPS,
+                Arrays.asList(Collections.emptyList(), Collections.singletonList(4))));
+        assertThrows(IllegalArgumentException.class, () -> Plan.create("plan", STEPS,
+                Arrays.asList(Collections.emptyList(), Collections.singletonList(2))));
+    }
+
+    @Test
+    public void stepIsReadyWhenDependenciesCompleted() {
+        Plan plan = Plan.create("plan", STEPS, Arrays.asList(
+                Collections.emptyList(), Collections.emptyList(), Arrays.asList(1, 2)));
+
+        assertTrue(plan.isStepReady(0));
+        assertTrue(plan.isStepReady(1));
+        assertFalse(plan.isStepReady(2));
+
+        plan.updateStepStatus(0, "completed", "");
+        plan.updateStepStatus(1, "in_progress", "");
+        assertFalse(plan.isStepReady(0));
+        assertTrue(plan.isStepReady(1));
+        assertFalse(plan.isStepReady(2));
+
+        plan.updateStepStatus(1, "blocked", "");
+        assertFalse(plan.isStepReady(2));
+
+        plan.updateStepStatus(1, "completed", "");
+        plan.updateStepStatus(2, "in_progress", "");
+        assertTrue(plan.isStepReady(2));
+    }
+
+    @Test
+    public void stepsRunInOrderWithoutDependencies() {
+        Plan plan = Plan.create("plan", STEPS);
+
+        assertTrue(plan.isStepReady(0));
+        assertFalse(plan.isStepReady(1));
+        plan.updateStepStatus(0, "completed", "");
+        assertTrue(plan.isStepReady(1));
+        assertFalse(plan.isStepReady(2));
+    }
+
+    @Test
+    public void updateWithoutDependenciesFallsBackToOrder() {
+        Plan plan = Plan.create("plan", STEPS, Arrays.asList(
+                Collections.emptyList(), Collections.emptyList(), Collections.singletonList(1)));
+
+        plan.update(null, Arrays.asList("搜索资料", "分析数据"));
+        assertFalse(plan.hasDependencies());
+        assertFalse(plan.isStepReady(1));
+    }
+}
@@ -0,0 +1,135 @@
+package com.jd.genie.agent.printer;
+
+import com.jd.genie.agent.enums.AgentType;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CoalescingPrinterTest {
+
+    /**
+     * 按 messageId|messageType|message|isFinal 记录下发的消息
+     */
+    private static class RecordingPrinter implements Printer {
+        private final List<String> sent = new CopyOnWriteArrayList<>();
+        private volatile boolean closed = false;
+
+        @Override
+        public void send(String messageId, String messageType, Object message, String digitalEmployee, Boolean isFinal) {
+            sent.add(messageId + "|" + messageType + "|" + message + "|" + isFinal);
+        }
+
+        @Override
+        public void send(String messageType, Object message) {
+            send(null, messageType, message, null, true);
+        }
+
+        @Override
+        public void send(String messageType, Object message, String digitalEmployee) {
+            send(null, messageType, message, digitalEmployee, true);
+        }
+
+        @Override
+        public void send(String messageId, String messageType, Object message, Boolean isFinal) {
+            send(messageId, messageType, message, null, isFinal);
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+        @Override
+        public void updateAgentType(AgentType agentType) {
+        }
+    }
+
+    private static CoalescingPrinter printer(RecordingPrinter delegate, int intervalMs, int maxBytes, boolean sentenceBoundary) {
+        return new CoalescingPrinter(delegate, Map.of("default", new StreamCoalescePolicy(intervalMs, maxBytes, sentenceBoundary)));
+    }
+
+    @Test
+    public void deltasAreMergedUntilMaxBytes() {
+        RecordingPrinter delegate = new RecordingPrinter();
+        CoalescingPrinter printer = printer(delegate, 60_000, 6, false);
+
+        printer.send("m1", "tool_thought", "ab", false);
+        printer.send("m1", "tool_thought", "cd", false);
+        assertTrue(delegate.sent.isEmpty());
+        // 中文按 UTF-8 计 3 字节
+        printer.send("m1", "tool_thought", "中", false);
+
+        assertEquals(List.of("m1|tool_thought|abcd中|false"), delegate.sent);
+    }
+
+    @Test
+    public void sentenceBoundaryFlushesImmediately() {
+        RecordingPrinter delegate = new RecordingPrinter();
+        CoalescingPrinter printer = printer(delegate, 60_000, 1024, true);
+
+        printer.send("m1", "tool_thought", "你好", false);
+        printer.send("m1", "tool_thought", "。", false);
+        printer.send("m1", "tool_thought", "再见", false);
+
+        assertEquals(List.of("m1|tool_thought|你好。|false"), delegate.sent);
+    }
+
+    @Test
+    public void finalMessageFlushesPendingDeltasFirst() {
+        RecordingPrinter delegate = new RecordingPrinter();
+        CoalescingPrinter printer = printer(delegate, 60_000, 1024, false);
+
+        printer.send("m1", "tool_thought", "a", false);
+        printer.send("m2", "task_summary", "b", false);
+        printer.send("m1", "tool_thought", "a-final", true);
+        printer.send("plan", "plan-data");
+
+        assertEquals(List.of(
+                "m1|tool_thought|a|false",
+                "m2|task_summary|b|false",
+                "m1|tool_thought|a-final|true",
+                "null|plan|plan-data|true"), delegate.sent);
+    }
+
+    @Test
+    public void intervalFlushesPendingDeltas() throws Exception {
+        RecordingPrinter delegate = new RecordingPrinter();
+        CoalescingPrinter printer = printer(delegate, 20, 1024, false);
+
+        printer.send("m1", "tool_thought", "a", false);
+        printer.send("m1", "tool_thought", "b", false);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (delegate.sent.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+
+        assertEquals(List.of("m1|tool_thought|ab|false"), delegate.sent);
+    }
+
+    @Test
+    public void closeFlushesBeforeClosingDelegate() {
+        RecordingPrinter delegate = new RecordingPrinter();
+        CoalescingPrinter printer = printer(delegate, 60_000, 1024, false);
+
+        printer.send("m1", "tool_thought", "tail", false);
+        printer.close();
+
+        assertEquals(List.of("m1|tool_thought|tail|false"), delegate.sent);
+        assertTrue(delegate.closed);
+    }
+
+    @Test
+    public void nonTextMessagesAreNotMerged() {
+        RecordingPrinter delegate = new RecordingPrinter();
+        CoalescingPrinter printer = printer(delegate, 60_000, 1024, false);
+
+        printer.send("m1", "plan", List.of("step"), false);
+
+        assertEquals(List.of("m1|plan|[step]|false"), delegate.sent);
+    }
+}
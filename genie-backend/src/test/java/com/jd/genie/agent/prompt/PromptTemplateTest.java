@@ -0,0 +1,51 @@
+package com.jd.genie.agent.prompt;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class PromptTemplateTest {
+
+    @Test
+    public void missingVariablesAreKept() {
+        PromptTemplate template = PromptTemplate.compile("query: {{query}}, files: {{files}}");
+
+        assertEquals("query: hi, files: {{files}}", template.render("query", "hi"));
+        assertEquals("query: {{query}}, files: {{files}}", template.toString());
+    }
+
+    @Test
+    public void replacedValuesAreNotRendered() {
+        PromptTemplate template = PromptTemplate.compile("{{a}}-{{b}}");
+        Map<String, String> variables = new HashMap<>();
+        variables.put("a", "{{b}}");
+        variables.put("b", "B");
+
+        assertEquals("{{b}}-B", template.render(variables));
+    }
+
+    @Test
+    public void bindLeavesUnboundVariables() {
+        PromptTemplate template = PromptTemplate.compile("date: {{date}}\nquery: {{query}}\nfiles: {{files}}\nend");
+        Map<String, String> variables = new HashMap<>();
+        variables.put("date", "2025-01-01");
+        variables.put("query", "{{files}}");
+
+        PromptTemplate bound = template.bind(variables);
+        assertEquals("date: 2025-01-01\nquery: {{files}}\nfiles: {{files}}\nend", bound.toString());
+        assertEquals("date: 2025-01-01\nquery: {{files}}\nfiles: a.txt\nend", bound.render("files", "a.txt"));
+        // 原模板不受绑定影响
+        assertEquals("date: {{date}}\nquery: {{query}}\nfiles: a.txt\nend", template.render("files", "a.txt"));
+    }
+
+    @Test
+    public void compileIsCached() {
+        assertSame(PromptTemplate.compile("cached {{x}}"), PromptTemplate.compile("cached {{x}}"));
+        assertEquals("", PromptTemplate.compile(null).toString());
+        assertEquals("unclosed {{x", PromptTemplate.compile("unclosed {{x").render("x", "1"));
+    }
+}
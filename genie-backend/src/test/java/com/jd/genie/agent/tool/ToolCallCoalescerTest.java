@@ -0,0 +1,169 @@
+package com.jd.genie.agent.tool;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ToolCallCoalescerTest {
+
+    @Test
+    public void buildKeyIgnoresFieldOrder() {
+        Map<String, Object> inner1 = new LinkedHashMap<>();
+        inner1.put("y", 2);
+        inner1.put("x", 1);
+        Map<String, Object> input1 = new LinkedHashMap<>();
+        input1.put("query", "genie");
+        input1.put("options", inner1);
+
+        Map<String, Object> inner2 = new LinkedHashMap<>();
+        inner2.put("x", 1);
+        inner2.put("y", 2);
+        Map<String, Object> input2 = new LinkedHashMap<>();
+        input2.put("options", inner2);
+        input2.put("query", "genie");
+
+        assertEquals(ToolCallCoalescer.buildKey("deep_search", input1), ToolCallCoalescer.buildKey("deep_search", input2));
+        assertNotEquals(ToolCallCoalescer.buildKey("deep_search", input1), ToolCallCoalescer.buildKey("other", input1));
+    }
+
+    @Test
+    public void resultIsReusedWithinTtl() throws Exception {
+        ToolCallCoalescer coalescer = new ToolCallCoalescer("ttl", 100, null);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertEquals("r1", coalescer.execute("k", () -> "r" + calls.incrementAndGet()));
+        assertEquals("r1", coalescer.execute("k", () -> "r" + calls.incrementAndGet()));
+        assertEquals(1, calls.get());
+        assertEquals(1, coalescer.getCoalescedCount());
+
+        Thread.sleep(200);
+        assertEquals("r2", coalescer.execute("k", () -> "r" + calls.incrementAndGet()));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void zeroTtlOnlySharesInFlightCalls() {
+        ToolCallCoalescer coalescer = new ToolCallCoalescer("zero", 0, null);
+        AtomicInteger calls = new AtomicInteger();
+
+        coalescer.execute("k", calls::incrementAndGet);
+        coalescer.execute("k", calls::incrementAndGet);
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void concurrentCallsShareOneExecution() throws Exception {
+        ToolCallCoalescer coalescer = new ToolCallCoalescer("flight", 0, null);
+        AtomicInteger calls = new AtomicInteger();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+
+        CompletableFuture<Object> first = CompletableFuture.supplyAsync(() -> coalescer.execute("k", () -> {
+            calls.incrementAndGet();
+            entered.countDown();
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return "shared";
+        }));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Object> second = CompletableFuture.supplyAsync(() -> coalescer.execute("k", () -> {
+            calls.incrementAndGet();
+            return "own";
+        }));
+        while (coalescer.getCoalescedCount() == 0) {
+            Thread.sleep(5);
+        }
+        gate.countDown();
+
+        assertEquals("shared", first.get(5, TimeUnit.SECONDS));
+        assertEquals("shared", second.get(5, TimeUnit.SECONDS));
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void nullResultIsNotCached() {
+        ToolCallCoalescer coalescer = new ToolCallCoalescer("null", 60_000, null);
+        AtomicInteger calls = new AtomicInteger();
+
+        assertNull(coalescer.execute("k", () -> {
+            calls.incrementAndGet();
+            return null;
+        }));
+        assertEquals("ok", coalescer.execute("k", () -> {
+            calls.incrementAndGet();
+            return "ok";
+        }));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void failedCallIsNotCached() {
+        ToolCallCoalescer coalescer = new ToolCallCoalescer("fail", 60_000, null);
+
+        assertThrows(IllegalStateException.class, () -> coalescer.execute("k", () -> {
+            throw new IllegalStateException("boom");
+        }));
+        assertEquals("ok", coalescer.execute("k", () -> "ok"));
+    }
+
+    @Test
+    public void errorIsPropagatedToWaiters() throws Exception {
+        ToolCallCoalescer coalescer = new ToolCallCoalescer("error", 60_000, null);
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+
+        CompletableFuture<Object> first = CompletableFuture.supplyAsync(() -> coalescer.execute("k", () -> {
+            entered.countDown();
+            try {
+                gate.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            throw new OutOfMemoryError("boom");
+        }));
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        CompletableFuture<Throwable> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                coalescer.execute("k", () -> "own");
+                return null;
+            } catch (Throwable e) {
+                return e;
+            }
+        });
+        while (coalescer.getCoalescedCount() == 0) {
+            Thread.sleep(5);
+        }
+        gate.countDown();
+
+        assertTrue(second.get(5, TimeUnit.SECONDS) instanceof OutOfMemoryError);
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> first.get(5, TimeUnit.SECONDS));
+        assertTrue(failure.getCause() instanceof OutOfMemoryError);
+        assertEquals("ok", coalescer.execute("k", () -> "ok"));
+    }
+
+    @Test
+    public void onlyAllowedMcpToolsAreCoalesced() {
+        ToolCallCoalescer coalescer = new ToolCallCoalescer("mcp", 60_000, Set.of("get_current_time"));
+
+        assertTrue(coalescer.isMcpToolAllowed("get_current_time"));
+        assertFalse(coalescer.isMcpToolAllowed("send_email"));
+        assertFalse(new ToolCallCoalescer("mcp", 60_000, null).isMcpToolAllowed("get_current_time"));
+    }
+}
@@ -0,0 +1,58 @@
+package com.jd.genie.agent.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GenieMetricsTest {
+
+    @Test
+    public void counterIsExportedPerLabelValue() {
+        GenieMetrics.Counter counter = GenieMetrics.counter("test_requests_total", "测试计数", "model");
+        counter.increment(1, "a");
+        counter.increment(2.5, "a");
+        counter.increment(1, "b\"x");
+
+        String text = GenieMetrics.scrape();
+        assertTrue(text.contains("# HELP test_requests_total 测试计数\n# TYPE test_requests_total counter\n"));
+        assertTrue(text.contains("test_requests_total{model=\"a\"} 3.5\n"));
+        assertTrue(text.contains("test_requests_total{model=\"b\\\"x\"} 1\n"));
+        assertSame(counter, GenieMetrics.counter("test_requests_total", "测试计数", "model"));
+    }
+
+    @Test
+    public void histogramBucketsAreCumulative() {
+        GenieMetrics.Histogram histogram = GenieMetrics.histogram("test_latency_seconds", "测试耗时",
+                new double[]{0.1, 1}, "tool");
+        histogram.observe(0.05, "t");
+        histogram.observe(0.5, "t");
+        histogram.observe(5, "t");
+
+        String text = GenieMetrics.scrape();
+        assertTrue(text.contains("# TYPE test_latency_seconds histogram\n"));
+        assertTrue(text.contains("test_latency_seconds_bucket{tool=\"t\",le=\"0.1\"} 1\n"
+                + "test_latency_seconds_bucket{tool=\"t\",le=\"1\"} 2\n"
+                + "test_latency_seconds_bucket{tool=\"t\",le=\"+Inf\"} 3\n"
+                + "test_latency_seconds_sum{tool=\"t\"} 5.55\n"
+                + "test_latency_seconds_count{tool=\"t\"} 3\n"));
+    }
+
+    @Test
+    public void gaugeReadsCurrentValue() {
+        int[] value = {1};
+        GenieMetrics.gauge("test_queue_size", "测试仪表", () -> value[0]);
+        value[0] = 7;
+
+        String text = GenieMetrics.scrape();
+        assertTrue(text.contains("# TYPE test_queue_size gauge\ntest_queue_size 7\n"));
+    }
+
+    @Test
+    public void labelCountMustMatch() {
+        GenieMetrics.Counter counter = GenieMetrics.counter("test_labels_total", "测试标签", "server", "tool");
+
+        assertThrows(IllegalArgumentException.class, () -> counter.increment(1, "only-server"));
+    }
+}
@@ -0,0 +1,107 @@
+package com.jd.genie.service.impl;
+
+import com.jd.genie.agent.util.StringUtil;
+import com.jd.genie.config.GenieConfig;
+import com.jd.genie.model.dto.AgentCheckpoint;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CheckpointServiceImplTest {
+
+    @TempDir
+    Path checkpointDir;
+
+    private GenieConfig genieConfig;
+    private CheckpointServiceImpl checkpointService;
+
+    @BeforeEach
+    public void setUp() {
+        genieConfig = new GenieConfig();
+        ReflectionTestUtils.setField(genieConfig, "checkpointEnable", true);
+        ReflectionTestUtils.setField(genieConfig, "checkpointDir", checkpointDir.toString());
+        ReflectionTestUtils.setField(genieConfig, "checkpointTtlMs", 60_000L);
+        checkpointService = new CheckpointServiceImpl();
+        ReflectionTestUtils.setField(checkpointService, "genieConfig", genieConfig);
+    }
+
+    private static AgentCheckpoint checkpoint(String requestId, int stepIdx) {
+        return AgentCheckpoint.builder().requestId(requestId).stepIdx(stepIdx).planningResult("task" + stepIdx).build();
+    }
+
+    private long fileCount() throws Exception {
+        try (Stream<Path> files = Files.list(checkpointDir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void saveOverwritesSingleFile() throws Exception {
+        checkpointService.save(checkpoint("req-1", 1));
+        checkpointService.save(checkpoint("req-1", 2));
+
+        assertEquals(1, fileCount());
+        AgentCheckpoint loaded = checkpointService.loadLatest("req-1");
+        assertEquals(2, loaded.getStepIdx());
+        assertEquals("task2", loaded.getPlanningResult());
+    }
+
+    @Test
+    public void similarRequestIdsDoNotShareFiles() throws Exception {
+        checkpointService.save(checkpoint("a.b", 1));
+        checkpointService.save(checkpoint("a_b", 2));
+        checkpointService.save(checkpoint("../a", 3));
+
+        assertEquals(3, fileCount());
+        assertEquals("a.b", checkpointService.loadLatest("a.b").getRequestId());
+        assertEquals("a_b", checkpointService.loadLatest("a_b").getRequestId());
+        assertEquals(3, checkpointService.loadLatest("../a").getStepIdx());
+    }
+
+    @Test
+    public void removeDeletesCheckpoint() throws Exception {
+        checkpointService.save(checkpoint("req-1", 1));
+        checkpointService.remove("req-1");
+
+        assertNull(checkpointService.loadLatest("req-1"));
+        assertEquals(0, fileCount());
+        checkpointService.save(checkpoint("req-1", 2));
+        assertEquals(2, checkpointService.loadLatest("req-1").getStepIdx());
+    }
+
+    @Test
+    public void disabledServiceDoesNotSave() throws Exception {
+        ReflectionTestUtils.setField(genieConfig, "checkpointEnable", false);
+        checkpointService.save(checkpoint("req-1", 1));
+
+        assertFalse(checkpointService.isEnabled());
+        assertEquals(0, fileCount());
+    }
+
+    @Test
+    public void expiredCheckpointsAreCleaned() throws Exception {
+        checkpointService.save(checkpoint("old", 1));
+        checkpointService.save(checkpoint("new", 1));
+        Path tmp = Files.writeString(checkpointDir.resolve("left.json.tmp"), "{");
+        FileTime expired = FileTime.fromMillis(System.currentTimeMillis() - 120_000L);
+        Files.setLastModifiedTime(tmp, expired);
+        Files.setLastModifiedTime(checkpointDir.resolve(StringUtil.sha256Hex("old") + ".json"), expired);
+
+        ReflectionTestUtils.invokeMethod(checkpointService, "cleanExpired");
+
+        assertNull(checkpointService.loadLatest("old"));
+        assertTrue(Files.notExists(tmp));
+        assertEquals(1, checkpointService.loadLatest("new").getStepIdx());
+    }
+}
@@ -0,0 +1,119 @@
+package com.jd.genie.service.impl;
+
+import com.alibaba.fastjson.JSON;
+import com.jd.genie.agent.dto.tool.McpToolInfo;
+import com.jd.genie.config.GenieConfig;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class McpToolRegistryImplTest {
+
+    private HttpServer server;
+    private McpToolRegistryImpl registry;
+    private final Map<String, String> responses = new ConcurrentHashMap<>();
+    private final AtomicInteger listCalls = new AtomicInteger();
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        // 模拟 genie-client 的 /v1/tool/list，按请求中的 server_url 返回工具列表
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/v1/tool/list", exchange -> {
+            listCalls.incrementAndGet();
+            String request = new String(exchange.getRequestBody().readAllBytes(), StandardCharsets.UTF_8);
+            String response = responses.getOrDefault(JSON.parseObject(request).getString("server_url"),
+                    "{\"code\": 500, \"message\": \"unavailable\"}");
+            byte[] body = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (registry != null) {
+            registry.destroy();
+        }
+        server.stop(0);
+    }
+
+    private static String tools(String... names) {
+        StringBuilder data = new StringBuilder();
+        for (String name : names) {
+            if (data.length() > 0) {
+                data.append(',');
+            }
+            data.append("{\"name\": \"").append(name).append("\", \"description\": \"").append(name)
+                    .append(" desc\", \"inputSchema\": {\"type\": \"object\"}}");
+        }
+        return "{\"code\": 200, \"data\": [" + data + "]}";
+    }
+
+    private void start(String... servers) {
+        GenieConfig genieConfig = new GenieConfig();
+        ReflectionTestUtils.setField(genieConfig, "mcpClientUrl", "http://127.0.0.1:" + server.getAddress().getPort());
+        ReflectionTestUtils.setField(genieConfig, "mcpServerUrlArr", servers);
+        ReflectionTestUtils.setField(genieConfig, "mcpToolTtlMs", 60_000L);
+        registry = new McpToolRegistryImpl();
+        ReflectionTestUtils.setField(registry, "genieConfig", genieConfig);
+        registry.init();
+    }
+
+    @Test
+    public void initDiscoversAllServersWithoutSpringContext() {
+        responses.put("s1", tools("search", "fetch"));
+        responses.put("s2", tools("time"));
+        start("s1", " s2 ", "s1");
+
+        Map<String, McpToolInfo> tools = registry.getTools();
+        assertEquals(List.of("search", "fetch", "time"), List.copyOf(tools.keySet()));
+        assertEquals("s2", tools.get("time").getMcpServerUrl());
+        assertEquals("search desc", tools.get("search").getDesc());
+        assertTrue(tools.get("search").getParameters().contains("object"));
+        assertEquals(2, listCalls.get());
+    }
+
+    @Test
+    public void unchangedRefreshKeepsSnapshot() {
+        responses.put("s1", tools("search"));
+        start("s1");
+        Map<String, McpToolInfo> first = registry.getTools();
+
+        registry.refresh();
+        assertSame(first, registry.getTools());
+
+        responses.put("s1", tools("search", "fetch"));
+        registry.refresh();
+        assertNotSame(first, registry.getTools());
+        assertEquals(2, registry.getTools().size());
+    }
+
+    @Test
+    public void failedServerKeepsLastTools() {
+        responses.put("s1", tools("search"));
+        responses.put("s2", tools("time"));
+        start("s1", "s2");
+
+        responses.remove("s2");
+        responses.put("s1", tools("search", "fetch"));
+        registry.refresh();
+
+        assertEquals(List.of("search", "fetch", "time"), List.copyOf(registry.getTools().keySet()));
+    }
+}
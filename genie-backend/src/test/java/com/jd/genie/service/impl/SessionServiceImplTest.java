@@ -0,0 +1,126 @@
+package com.jd.genie.service.impl;
+
+import com.jd.genie.agent.agent.AgentContext;
+import com.jd.genie.agent.dto.Message;
+import com.jd.genie.agent.dto.tool.ToolCall;
+import com.jd.genie.agent.util.StringUtil;
+import com.jd.genie.config.GenieConfig;
+import com.jd.genie.model.dto.AgentSession;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SessionServiceImplTest {
+
+    @TempDir
+    Path sessionDir;
+
+    private GenieConfig genieConfig;
+    private SessionServiceImpl sessionService;
+
+    @BeforeEach
+    public void setUp() {
+        genieConfig = new GenieConfig();
+        ReflectionTestUtils.setField(genieConfig, "sessionDir", sessionDir.toString());
+        ReflectionTestUtils.setField(genieConfig, "sessionMaxBytes", 1024L * 1024);
+        ReflectionTestUtils.setField(genieConfig, "sessionMaxHistoryChars", 20000);
+        ReflectionTestUtils.setField(genieConfig, "messageSizeLimit", 1000);
+        sessionService = newService();
+    }
+
+    private SessionServiceImpl newService() {
+        SessionServiceImpl service = new SessionServiceImpl();
+        ReflectionTestUtils.setField(service, "genieConfig", genieConfig);
+        return service;
+    }
+
+    private static AgentContext context(String sessionId) {
+        return AgentContext.builder()
+                .requestId("req-" + System.nanoTime())
+                .sessionId(sessionId)
+                .productFiles(new ArrayList<>())
+                .build();
+    }
+
+    private static List<String> contents(AgentSession session) {
+        List<String> result = new ArrayList<>();
+        for (Message message : session.getMessages()) {
+            result.add(message.getContent());
+        }
+        return result;
+    }
+
+    @Test
+    public void saveTurnCompactsAndAppendsHistory() {
+        ToolCall toolCall = ToolCall.builder().id("call-1").type("function")
+                .function(ToolCall.Function.builder().name("deep_search").arguments("{}").build()).build();
+        List<Message> messages = List.of(
+                Message.userMessage("根据当前状态和可用工具，确定下一步行动", null),
+                Message.fromToolCalls("调用搜索", List.of(toolCall)),
+                Message.toolMessage("搜索结果", "call-1", null),
+                Message.assistantMessage("结论", null));
+
+        sessionService.saveTurn(context("s1"), "问题1", messages, "总结1");
+        sessionService.saveTurn(context("s1"), "问题2", List.of(), "总结2");
+
+        AgentSession session = sessionService.load("s1");
+        assertEquals(2, session.getTurns());
+        assertEquals(List.of("问题1", "工具结果：搜索结果", "结论", "总结1", "问题2", "总结2"), contents(session));
+    }
+
+    @Test
+    public void requestWithoutSessionIsNotSaved() throws Exception {
+        AgentContext context = AgentContext.builder().requestId("same").sessionId("same").productFiles(new ArrayList<>()).build();
+        sessionService.saveTurn(context, "问题", List.of(), "总结");
+
+        assertNull(sessionService.load("same"));
+        assertTrue(Files.notExists(sessionDir.resolve(StringUtil.sha256Hex("same") + ".json")));
+    }
+
+    @Test
+    public void historyIsTrimmedFromOldest() {
+        ReflectionTestUtils.setField(genieConfig, "sessionMaxHistoryChars", 10);
+
+        sessionService.saveTurn(context("s1"), "aaaa", List.of(), "bbbb");
+        sessionService.saveTurn(context("s1"), "cccc", List.of(), "dddd");
+
+        assertEquals(List.of("cccc", "dddd"), contents(sessionService.load("s1")));
+    }
+
+    @Test
+    public void leastRecentlyUsedSessionIsEvicted() throws Exception {
+        sessionService.saveTurn(context("s1"), "问题", List.of(), "总结");
+        long size = Files.size(sessionDir.resolve(StringUtil.sha256Hex("s1") + ".json"));
+        // 上限只容纳两个会话
+        ReflectionTestUtils.setField(genieConfig, "sessionMaxBytes", size * 2 + size / 2);
+        sessionService.saveTurn(context("s2"), "问题", List.of(), "总结");
+        // 读取 s1 后 s2 成为最久未使用
+        assertNotNull(sessionService.load("s1"));
+        sessionService.saveTurn(context("s3"), "问题", List.of(), "总结");
+
+        assertNotNull(sessionService.load("s1"));
+        assertNull(sessionService.load("s2"));
+        assertNotNull(sessionService.load("s3"));
+        assertTrue(Files.notExists(sessionDir.resolve(StringUtil.sha256Hex("s2") + ".json")));
+    }
+
+    @Test
+    public void indexIsRebuiltFromDirectory() {
+        sessionService.saveTurn(context("s1"), "问题", List.of(), "总结");
+
+        AgentSession session = newService().load("s1");
+        assertEquals(1, session.getTurns());
+        assertNull(newService().load("missing"));
+    }
+}
@@ -0,0 +1,116 @@
+package com.jd.genie.service.impl;
+
+import com.jd.genie.config.GenieConfig;
+import com.jd.genie.model.dto.WorkerStatus;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkerPoolServiceImplTest {
+
+    private HttpServer server;
+    private String baseUrl;
+    private WorkerPoolServiceImpl workerPoolService;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (workerPoolService != null) {
+            workerPoolService.destroy();
+        }
+        server.stop(0);
+    }
+
+    /**
+     * 节点 name 的 /worker/status 返回固定的负载状态
+     */
+    private void worker(String name, String status) {
+        byte[] body = status.getBytes(StandardCharsets.UTF_8);
+        server.createContext("/" + name + "/worker/status", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+    }
+
+    private void start(String... names) throws Exception {
+        GenieConfig genieConfig = new GenieConfig();
+        StringBuilder workers = new StringBuilder();
+        for (String name : names) {
+            workers.append(baseUrl).append('/').append(name).append("/,");
+        }
+        ReflectionTestUtils.setField(genieConfig, "multiAgentWorkers", workers.toString());
+        ReflectionTestUtils.setField(genieConfig, "workerHealthIntervalMs", 60_000L);
+        ReflectionTestUtils.setField(genieConfig, "workerHealthTimeoutMs", 2_000L);
+        workerPoolService = new WorkerPoolServiceImpl();
+        ReflectionTestUtils.setField(workerPoolService, "genieConfig", genieConfig);
+        workerPoolService.init();
+
+        // 等待首次探活完成
+        long deadline = System.currentTimeMillis() + 5000;
+        while (System.currentTimeMillis() < deadline
+                && !workerPoolService.listWorkers().stream().allMatch(w -> w.getLastCheckTime() > 0)) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void acquireSelectsLeastLoadedWorker() throws Exception {
+        worker("a", "{\"activeRuns\": 2, \"queueDepth\": 1}");
+        worker("b", "{\"activeRuns\": 0, \"queueDepth\": 0}");
+        start("a", "b");
+
+        assertTrue(workerPoolService.isEnabled());
+        // 本网关新派发的请求计入负载，b 的负载追平 a 之前一直选择 b
+        assertEquals(baseUrl + "/b", workerPoolService.acquire("r1"));
+        assertEquals(baseUrl + "/b", workerPoolService.acquire("r2"));
+        assertEquals(baseUrl + "/b", workerPoolService.acquire("r3"));
+        assertEquals(baseUrl + "/a", workerPoolService.acquire("r4"));
+
+        List<WorkerStatus> statuses = workerPoolService.listWorkers();
+        assertEquals(1, statuses.get(0).getInFlight());
+        assertEquals(3, statuses.get(1).getInFlight());
+    }
+
+    @Test
+    public void drainingAndFailedWorkersAreSkipped() throws Exception {
+        worker("a", "{\"activeRuns\": 0, \"queueDepth\": 0, \"draining\": true}");
+        worker("b", "{\"activeRuns\": 5, \"queueDepth\": 0}");
+        start("a", "b");
+
+        assertEquals(baseUrl + "/b", workerPoolService.acquire("r1"));
+        workerPoolService.release(baseUrl + "/b", true);
+
+        assertFalse(workerPoolService.listWorkers().get(1).getHealthy());
+        assertEquals(0, workerPoolService.listWorkers().get(1).getInFlight());
+        assertNull(workerPoolService.acquire("r2"));
+    }
+
+    @Test
+    public void unreachableWorkerIsUnhealthy() throws Exception {
+        worker("a", "{\"activeRuns\": 0, \"queueDepth\": 0}");
+        start("a", "missing");
+
+        assertFalse(workerPoolService.listWorkers().get(1).getHealthy());
+        assertEquals(baseUrl + "/a", workerPoolService.acquire("r1"));
+        assertEquals(baseUrl + "/a", workerPoolService.acquire("r2"));
+    }
+}
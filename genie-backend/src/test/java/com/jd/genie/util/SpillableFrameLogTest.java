@@ -0,0 +1,143 @@
+package com.jd.genie.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SpillableFrameLogTest {
+
+    @TempDir
+    Path spillDir;
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static List<String> readAll(SpillableFrameLog frameLog, long afterId) throws Exception {
+        List<String> result = new ArrayList<>();
+        frameLog.snapshot().read(afterId, (id, data) -> result.add(id + ":" + new String(data, StandardCharsets.UTF_8)));
+        return result;
+    }
+
+    private long segmentCount() throws Exception {
+        try (Stream<Path> files = Files.list(spillDir)) {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void recordsOverMemoryLimitAreSpilledAndReadBack() throws Exception {
+        try (SpillableFrameLog frameLog = new SpillableFrameLog("spill", 8, spillDir, Long.MAX_VALUE)) {
+            for (int i = 1; i <= 5; i++) {
+                assertEquals(i, frameLog.append(bytes("f" + i + "xx")));
+            }
+            assertTrue(frameLog.getMemoryUsed() <= 8);
+            assertTrue(frameLog.getSpilledBytes() > 0);
+            assertEquals(1, segmentCount());
+
+            assertEquals(List.of("1:f1xx", "2:f2xx", "3:f3xx", "4:f4xx", "5:f5xx"), readAll(frameLog, 0));
+            assertEquals(List.of("4:f4xx", "5:f5xx"), readAll(frameLog, 3));
+        }
+        assertEquals(0, segmentCount());
+    }
+
+    @Test
+    public void snapshotExcludesLaterAppendsAndStopsOnConsumer() throws Exception {
+        try (SpillableFrameLog frameLog = new SpillableFrameLog("snapshot", 1024, spillDir, Long.MAX_VALUE)) {
+            frameLog.append(bytes("a"));
+            frameLog.append(bytes("b"));
+            SpillableFrameLog.Snapshot snapshot = frameLog.snapshot();
+            frameLog.append(bytes("c"));
+
+            List<Long> ids = new ArrayList<>();
+            assertEquals(2, snapshot.read(0, (id, data) -> ids.add(id)));
+            assertEquals(List.of(1L, 2L), ids);
+            assertEquals(1, frameLog.snapshot().read(0, (id, data) -> id < 2));
+        }
+    }
+
+    @Test
+    public void spillAllReleasesMemory() throws Exception {
+        try (SpillableFrameLog frameLog = new SpillableFrameLog("spill-all", 1024, spillDir, Long.MAX_VALUE)) {
+            frameLog.append(bytes("a"));
+            frameLog.append(bytes("b"));
+            frameLog.spillAll();
+
+            assertEquals(0, frameLog.getMemoryUsed());
+            assertEquals(List.of("1:a", "2:b"), readAll(frameLog, 0));
+        }
+    }
+
+    @Test
+    public void eldestSegmentIsEvictedOverSpillLimit() throws Exception {
+        byte[] frame = new byte[1024 * 1024];
+        try (SpillableFrameLog frameLog = new SpillableFrameLog("evict", 0, spillDir, 1)) {
+            // 8 条后首个分段写满，第 9 条写入新分段并淘汰首个分段
+            for (int i = 0; i < 9; i++) {
+                frameLog.append(frame);
+            }
+            assertEquals(9, frameLog.getFirstId());
+            assertEquals(1, segmentCount());
+
+            List<Long> ids = new ArrayList<>();
+            frameLog.snapshot().read(0, (id, data) -> ids.add(id));
+            assertEquals(List.of(9L), ids);
+        }
+    }
+
+    @Test
+    public void unlimitedSpillNeverEvicts() throws Exception {
+        byte[] frame = new byte[1024 * 1024];
+        try (SpillableFrameLog frameLog = new SpillableFrameLog("lossless", 0, spillDir, Long.MAX_VALUE)) {
+            for (int i = 0; i < 9; i++) {
+                frameLog.append(frame);
+            }
+            assertEquals(1, frameLog.getFirstId());
+            assertEquals(2, segmentCount());
+            assertEquals(9, frameLog.snapshot().read(0, (id, data) -> data.length == frame.length));
+        }
+    }
+
+    @Test
+    public void failedSpillIsReportedAsLost() throws Exception {
+        Path notADirectory = Files.writeString(spillDir.resolve("file"), "x");
+        try (SpillableFrameLog frameLog = new SpillableFrameLog("lost", 0, notADirectory, Long.MAX_VALUE)) {
+            frameLog.append(bytes("a"));
+            frameLog.append(bytes("b"));
+
+            assertEquals(2, frameLog.getLostCount());
+            assertEquals(0, frameLog.getMemoryUsed());
+            assertThrows(IllegalStateException.class, () -> readAll(frameLog, 0));
+        }
+    }
+
+    @Test
+    public void globalSpillLimitIsEnforced() throws Exception {
+        long baseline = SpillableFrameLog.getGlobalSpilledBytes();
+        SpillableFrameLog.setGlobalSpillMaxBytes(baseline + 250);
+        try (SpillableFrameLog frameLog = new SpillableFrameLog("global", 0, spillDir, Long.MAX_VALUE)) {
+            for (int i = 0; i < 3; i++) {
+                frameLog.append(new byte[100]);
+            }
+            assertEquals(baseline + 224, SpillableFrameLog.getGlobalSpilledBytes());
+            assertEquals(1, frameLog.getLostCount());
+
+            List<Long> ids = new ArrayList<>();
+            assertThrows(IllegalStateException.class, () -> frameLog.snapshot().read(0, (id, data) -> ids.add(id)));
+            assertEquals(List.of(1L, 2L), ids);
+        } finally {
+            SpillableFrameLog.setGlobalSpillMaxBytes(Long.MAX_VALUE);
+        }
+        assertEquals(baseline, SpillableFrameLog.getGlobalSpilledBytes());
+    }
+}
@@ -0,0 +1,186 @@
+package com.jd.genie.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SseEventQueueTest {
+
+    private static final BinaryOperator<Object> CONCAT = (a, b) -> (String) a + b;
+
+    /**
+     * 第一次写出时阻塞，模拟慢连接
+     */
+    private static class BlockingSink implements SseEventQueue.Sink {
+        private final List<Object> written = new CopyOnWriteArrayList<>();
+        private final CountDownLatch entered = new CountDownLatch(1);
+        private final CountDownLatch gate = new CountDownLatch(1);
+        private final CountDownLatch completed = new CountDownLatch(1);
+        private volatile boolean writeAfterComplete = false;
+
+        @Override
+        public void write(Object event) throws Exception {
+            if (completed.getCount() == 0) {
+                writeAfterComplete = true;
+            }
+            entered.countDown();
+            gate.await(5, TimeUnit.SECONDS);
+            written.add(event);
+        }
+
+        @Override
+        public void complete() {
+            completed.countDown();
+        }
+
+        @Override
+        public void completeWithError(Throwable e) {
+            completed.countDown();
+        }
+
+        private void awaitBlocked() throws InterruptedException {
+            assertTrue(entered.await(5, TimeUnit.SECONDS));
+        }
+
+        private void release() {
+            gate.countDown();
+        }
+
+        private void awaitCompleted() throws InterruptedException {
+            assertTrue(completed.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void finalEventIsKeptWhenQueueIsFull() throws Exception {
+        BlockingSink sink = new BlockingSink();
+        SseEventQueue queue = new SseEventQueue("full", 2, sink, CONCAT);
+        assertTrue(queue.offer("a", null, false));
+        sink.awaitBlocked();
+
+        assertTrue(queue.offer("b", null, false));
+        assertTrue(queue.offer("c", null, false));
+        assertFalse(queue.offer("d", null, false));
+        assertTrue(queue.offer("final", null, true));
+        assertEquals(1, queue.getDroppedCount());
+
+        sink.release();
+        queue.close();
+        sink.awaitCompleted();
+        assertEquals(List.of("a", "b", "c", "final"), sink.written);
+    }
+
+    @Test
+    public void deltasAreMergedWhenQueueIsFull() throws Exception {
+        BlockingSink sink = new BlockingSink();
+        SseEventQueue queue = new SseEventQueue("merge", 1, sink, CONCAT);
+        assertTrue(queue.offer("a", null, false));
+        sink.awaitBlocked();
+
+        assertTrue(queue.offer("x1", "k", false));
+        assertTrue(queue.offer("x2", "k", false));
+        assertFalse(queue.offer("y", "other", false));
+        assertTrue(queue.offer("x3", "k", false));
+        assertTrue(queue.offer("end", "k", true));
+        assertEquals(2, queue.getCoalescedCount());
+        assertEquals(1, queue.getDroppedCount());
+
+        sink.release();
+        queue.close();
+        sink.awaitCompleted();
+        assertEquals(List.of("a", "x1x2x3", "end"), sink.written);
+    }
+
+    @Test
+    public void deltasAreDroppedWhenWriterLags() throws Exception {
+        BlockingSink sink = new BlockingSink();
+        SseEventQueue queue = new SseEventQueue("lag", 100, sink, CONCAT);
+        queue.setLagThresholdMs(50);
+        assertTrue(queue.offer("a", null, false));
+        sink.awaitBlocked();
+
+        assertTrue(queue.offer("b", null, false));
+        Thread.sleep(100);
+        assertFalse(queue.offer("c", null, false));
+        assertTrue(queue.offer("final", null, true));
+        assertEquals(1, queue.getLagDroppedCount());
+
+        sink.release();
+        queue.close();
+        sink.awaitCompleted();
+        assertEquals(List.of("a", "b", "final"), sink.written);
+    }
+
+    @Test
+    public void closeCompletesAfterDrain() throws Exception {
+        BlockingSink sink = new BlockingSink();
+        SseEventQueue queue = new SseEventQueue("close", 10, sink, CONCAT);
+        assertTrue(queue.offer("a", null, false));
+        assertTrue(queue.offer("b", null, false));
+        assertTrue(queue.offer("c", null, true));
+        queue.close();
+        assertFalse(queue.offer("late", null, true));
+
+        sink.release();
+        sink.awaitCompleted();
+        assertEquals(List.of("a", "b", "c"), sink.written);
+        assertFalse(sink.writeAfterComplete);
+        assertEquals(3, queue.getSentCount());
+        assertEquals(0, queue.size());
+        assertFalse(SseEventQueue.getActiveQueues().contains(queue));
+    }
+
+    @Test
+    public void acceptedEventsAreWrittenWhenCloseRaces() throws Exception {
+        for (int round = 0; round < 200; round++) {
+            List<Object> written = new CopyOnWriteArrayList<>();
+            CountDownLatch completed = new CountDownLatch(1);
+            SseEventQueue queue = new SseEventQueue("race", 1024, new SseEventQueue.Sink() {
+                @Override
+                public void write(Object event) {
+                    written.add(event);
+                }
+
+                @Override
+                public void complete() {
+                    completed.countDown();
+                }
+
+                @Override
+                public void completeWithError(Throwable e) {
+                    completed.countDown();
+                }
+            }, null);
+            AtomicInteger accepted = new AtomicInteger();
+            CountDownLatch start = new CountDownLatch(1);
+            Thread producer = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 50; i++) {
+                    if (queue.offer(i, null, true)) {
+                        accepted.incrementAndGet();
+                    }
+                }
+            });
+            producer.start();
+            start.countDown();
+            queue.close();
+            producer.join(5000);
+
+            assertTrue(completed.await(5, TimeUnit.SECONDS));
+            assertEquals(accepted.get(), written.size());
+        }
+    }
+}
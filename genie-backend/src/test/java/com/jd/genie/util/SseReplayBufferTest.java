@@ -0,0 +1,193 @@
+package com.jd.genie.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.http.server.ServletServerHttpResponse;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SseReplayBufferTest {
+
+    private static final Pattern EVENT_ID = Pattern.compile("id:(\\d+)");
+
+    @TempDir
+    Path spillDir;
+
+    /**
+     * 记录写出的事件 id，不经过 Spring 的响应处理
+     */
+    private static class RecordingEmitter extends SseEmitter {
+        private final List<Long> ids = new CopyOnWriteArrayList<>();
+        private final CountDownLatch completed = new CountDownLatch(1);
+
+        private RecordingEmitter() {
+            super(0L);
+        }
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            ids.add(eventId(builder.build()));
+        }
+
+        @Override
+        public synchronized void complete() {
+            completed.countDown();
+        }
+
+        private void awaitIds(int count) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + 5000;
+            while (ids.size() < count && System.currentTimeMillis() < deadline) {
+                Thread.sleep(5);
+            }
+        }
+
+        private void awaitCompleted() throws InterruptedException {
+            assertTrue(completed.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    private static long eventId(Set<ResponseBodyEmitter.DataWithMediaType> items) {
+        StringBuilder sb = new StringBuilder();
+        for (ResponseBodyEmitter.DataWithMediaType item : items) {
+            sb.append(item.getData());
+        }
+        Matcher matcher = EVENT_ID.matcher(sb);
+        return matcher.find() ? Long.parseLong(matcher.group(1)) : 0;
+    }
+
+    private SseReplayBuffer create(String requestId) {
+        return SseReplayBuffer.create(requestId, 64, spillDir, Long.MAX_VALUE, 60_000)
+                .withSubscriberQueue(16, 0);
+    }
+
+    private static List<Long> range(long from, long to) {
+        List<Long> ids = new ArrayList<>();
+        for (long id = from; id <= to; id++) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    @Test
+    public void attachReplaysAfterLastEventIdThenStreams() throws Exception {
+        SseReplayBuffer buffer = create("replay-" + System.nanoTime());
+        assertSame(buffer, buffer.register());
+        for (int i = 1; i <= 5; i++) {
+            buffer.send("{\"frame\":" + i + "}", false);
+        }
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        buffer.attach(emitter, 2);
+        emitter.awaitIds(3);
+        buffer.send("{\"frame\":6}", true);
+        buffer.complete();
+
+        emitter.awaitCompleted();
+        assertEquals(List.of(3L, 4L, 5L, 6L), emitter.ids);
+    }
+
+    @Test
+    public void attachAfterCompleteReplaysFromDisk() throws Exception {
+        SseReplayBuffer buffer = create("completed-" + System.nanoTime());
+        buffer.register();
+        for (int i = 1; i <= 20; i++) {
+            buffer.send("{\"frame\":" + i + "}", i == 20);
+        }
+        buffer.complete();
+
+        RecordingEmitter emitter = new RecordingEmitter();
+        buffer.attach(emitter, 0);
+        emitter.awaitCompleted();
+        assertEquals(range(1, 20), emitter.ids);
+    }
+
+    @Test
+    public void replayWaitsForEmitterInit() throws Exception {
+        SseReplayBuffer buffer = create("init-" + System.nanoTime());
+        buffer.register();
+        buffer.send("{\"frame\":1}", false);
+        List<Long> ids = new CopyOnWriteArrayList<>();
+        SseEmitterUTF8 emitter = new SseEmitterUTF8(0L) {
+            @Override
+            public void send(SseEventBuilder builder) {
+                ids.add(eventId(builder.build()));
+            }
+        };
+
+        buffer.attach(emitter, 0);
+        Thread.sleep(100);
+        assertTrue(ids.isEmpty());
+
+        emitter.extendResponse(new ServletServerHttpResponse(new MockHttpServletResponse()));
+        long deadline = System.currentTimeMillis() + 5000;
+        while (ids.isEmpty() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(List.of(1L), ids);
+        buffer.complete();
+    }
+
+    @Test
+    public void parseLastEventIdFallsBackToZero() {
+        assertEquals(0, SseReplayBuffer.parseLastEventId(null));
+        assertEquals(0, SseReplayBuffer.parseLastEventId(" "));
+        assertEquals(0, SseReplayBuffer.parseLastEventId("abc"));
+        assertEquals(0, SseReplayBuffer.parseLastEventId("-3"));
+        assertEquals(42, SseReplayBuffer.parseLastEventId(" 42 "));
+    }
+
+    @Test
+    public void duplicateSubmissionJoinsRunningBuffer() throws Exception {
+        String requestId = "duplicate-" + System.nanoTime();
+        SseReplayBuffer running = create(requestId);
+        assertSame(running, running.register());
+        for (int i = 1; i <= 3; i++) {
+            running.send("{\"frame\":" + i + "}", false);
+        }
+
+        SseReplayBuffer duplicate = create(requestId);
+        assertSame(running, duplicate.register());
+        RecordingEmitter first = new RecordingEmitter();
+        RecordingEmitter second = new RecordingEmitter();
+        running.attach(first, 0);
+        running.attach(second, 0);
+        first.awaitIds(3);
+        second.awaitIds(3);
+        running.send("{\"frame\":4}", true);
+        running.complete();
+
+        first.awaitCompleted();
+        second.awaitCompleted();
+        assertEquals(range(1, 4), first.ids);
+        assertEquals(range(1, 4), second.ids);
+    }
+
+    @Test
+    public void registerReplacesCompletedBuffer() {
+        String requestId = "replace-" + System.nanoTime();
+        SseReplayBuffer first = create(requestId);
+        first.register();
+        first.complete();
+
+        SseReplayBuffer second = create(requestId);
+        assertNotSame(first, second.register());
+        assertSame(second, SseReplayBuffer.get(requestId));
+        second.complete();
+    }
+}
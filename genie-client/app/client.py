@@ -1,3 +1,4 @@
+import asyncio
 from contextlib import asynccontextmanager
 from typing import Optional, Any, List, Dict
 import httpx
@@ -334,6 +335,41 @@ class SseClient:
             logger.error(error_msg)
             raise Exception(error_msg) from e
 
+    async def call_tools(self, calls: List[Dict[str, Any]]) -> List[Any]:
+        """
+        在同一个会话内并发调用多个工具，只建立一次连接和初始化
+
+        Args:
+            calls: 调用列表，每项包含 name 和 arguments
+
+        Returns:
+            List[Any]: 与调用一一对应的执行结果，单个调用失败时对应位置为异常对象
+
+        Raises:
+            Exception: 当连接失败时抛出异常
+        """
+        for call in calls:
+            if not call.get("name") or not isinstance(call.get("name"), str):
+                raise ValueError("工具名称不能为空且必须是字符串类型")
+            if call.get("arguments") is not None and not isinstance(call.get("arguments"), dict):
+                raise ValueError("工具参数必须是字典类型")
+
+        try:
+            async with self._sse_connection() as session:
+                logger.info(f"正在批量调用 {len(calls)} 个工具: {[call['name'] for call in calls]}")
+                responses = await asyncio.gather(
+                    *[session.call_tool(name=call["name"], arguments=call.get("arguments") or {}) for call in calls],
+                    return_exceptions=True,
+                )
+                failed = sum(1 for response in responses if isinstance(response, Exception))
+                logger.info(f"批量调用完成，成功 {len(calls) - failed} 个，失败 {failed} 个")
+                return list(responses)
+
+        except Exception as e:
+            error_msg = f"批量调用工具失败: {str(e)}"
+            logger.error(error_msg)
+            raise Exception(error_msg) from e
+
     def __str__(self) -> str:
         """返回客户端的字符串表示"""
         return f"SseClient(server_url='{self.server_url}', timeout={self.timeout}s)"
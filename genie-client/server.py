@@ -1,4 +1,7 @@
+import asyncio
 from datetime import datetime
+from typing import Any, Dict, List, Optional
+
 from fastapi import FastAPI, Request, Body
 
 from app.client import SseClient
@@ -115,6 +118,58 @@ async def call_tool(
         }
 
 
+@app.post("/v1/tool/batch_call")
+async def batch_call_tool(
+        request: Request,
+        server_url: str = Body(..., description="mcp server url", alias="server_url"),
+        calls: List[dict] = Body(..., description="tool calls, each with name and arguments", alias="calls"),
+):
+    """
+    - 批量调用同一 server 上的多个工具，同一会话内并发执行
+    - 参数中的 Cookie 不同时分会话执行，结果与 calls 一一对应
+    """
+    logger.info(f"方法: /v1/tool/batch_call, {server_url}, {len(calls)} calls, request headers: {request.headers}")
+    groups: Dict[Optional[str], List[int]] = {}
+    for index, call in enumerate(calls):
+        arguments = call.get("arguments")
+        cookie = arguments.get("Cookie") if isinstance(arguments, dict) else None
+        groups.setdefault(cookie, []).append(index)
+
+    async def run_group(cookie: Optional[str], indexes: List[int]):
+        entity = HeaderEntity(request.headers)
+        if cookie is not None:
+            entity.append_cookie(cookie)
+        mcp_client = SseClient(server_url=server_url, entity=entity)
+        try:
+            return await mcp_client.call_tools([calls[i] for i in indexes])
+        except Exception as e:
+            return [e] * len(indexes)
+
+    group_results = await asyncio.gather(*[run_group(cookie, indexes) for cookie, indexes in groups.items()])
+    results: List[Any] = [None] * len(calls)
+    for indexes, responses in zip(groups.values(), group_results):
+        for i, response in zip(indexes, responses):
+            name = calls[i].get("name")
+            if isinstance(response, Exception):
+                logger.error(f"Error calling tool {name}: {str(response)}")
+                results[i] = {
+                    "code": 500,
+                    "message": f"Error calling tool {name}: {str(response)}",
+                    "data": None,
+                }
+            else:
+                results[i] = {
+                    "code": 200,
+                    "message": "success",
+                    "data": response,
+                }
+    return {
+        "code": 200,
+        "message": "success",
+        "data": results,
+    }
+
+
 if __name__ == "__main__":
     import uvicorn
 
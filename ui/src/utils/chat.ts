@@ -120,6 +120,9 @@ function handleTaskMessageByType(
     case "deep_search":
       handleDeepSearchMessage(eventData, currentChat, taskIndex, toolIndex);
       break;
+    case "result":
+      handleResultMessage(eventData, currentChat, taskIndex, toolIndex);
+      break;
     default:
       handleNonStreamingMessage(eventData, currentChat, taskIndex);
       break;
@@ -476,6 +479,36 @@ function handleNonStreamingMessage(
 
 }
 
+/**
+ * 处理结论消息，流式总结时增量追加，最终结果覆盖
+ * @param eventData 事件数据
+ * @param currentChat 当前聊天
+ * @param taskIndex 任务索引
+ * @param toolIndex 工具索引
+ */
+function handleResultMessage(
+  eventData: MESSAGE.EventData,
+  currentChat: CHAT.ChatItem,
+  taskIndex: number,
+  toolIndex: number
+) {
+  if (taskIndex === -1 || toolIndex === -1) {
+    handleNonStreamingMessage(eventData, currentChat, taskIndex);
+    return;
+  }
+  const { resultMap } = eventData;
+  const tasks = currentChat.multiAgent.tasks;
+  if (resultMap.isFinal) {
+    tasks[taskIndex][toolIndex] = {
+      taskId: eventData.taskId,
+      ...resultMap,
+    };
+  } else {
+    const tool = tasks[taskIndex][toolIndex];
+    tool.result = (tool.result || '') + (resultMap.result || '');
+  }
+}
+
 /**
  * 处理多智能体任务数据，整合聊天、计划和任务信息
  * @param currentChat 当前聊天对象